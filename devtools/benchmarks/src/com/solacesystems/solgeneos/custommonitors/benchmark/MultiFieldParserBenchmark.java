@@ -0,0 +1,84 @@
+package com.solacesystems.solgeneos.custommonitors.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solacesystems.solgeneos.custommonitors.MessageRatesMonitor;
+import com.solacesystems.solgeneos.custommonitors.SoftwareSystemHealthMonitor;
+import com.solacesystems.solgeneos.custommonitors.simulator.SimulatedBroker;
+import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.MultiFieldSEMPParser;
+
+/**
+ * MultiFieldSEMPParser picking its fields out of the system health response, configured the same as in
+ * SoftwareSystemHealthMonitor. The parser looks at every element of a response, so it is also run over the
+ * message VPN stats response to see how that cost grows with the size of the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MultiFieldParserBenchmark {
+
+    static final private  List<String> SYSTEM_HEALTH_RESPONSE_ELEMENTS = 
+    		Arrays.asList("last-clear-time",
+    				"disk-latency-minimum-value", "disk-latency-maximum-value", "disk-latency-average-value", "disk-latency-current-value", "disk-latency-high-threshold", "disk-latency-suppressed-events",
+    				"compute-latency-minimum-value", "compute-latency-maximum-value", "compute-latency-average-value", "compute-latency-current-value", "compute-latency-high-threshold", "compute-latency-suppressed-events",
+    				"network-latency-minimum-value", "network-latency-maximum-value", "network-latency-average-value", "network-latency-current-value", "network-latency-high-threshold", "network-latency-suppressed-events",
+    				"mate-link-latency-minimum-value", "mate-link-latency-maximum-value", "mate-link-latency-average-value", "mate-link-latency-current-value", "mate-link-latency-high-threshold", "mate-link-latency-suppressed-events"
+    				);
+
+	// How many message VPNs in the stats response, or a recorded response
+	@Param({ "10", "100", "1000" })
+	public String payload;
+
+	// The XML parser to compare
+	@Param({ "SAX", "STAX", "BYTES" })
+	public SampleSEMPParser.Engine engine;
+
+	private byte[] healthResponse;
+	private byte[] vpnStatsResponse;
+	private HashMap<String, String> interestedFields = new HashMap<String, String>();
+	private MultiFieldSEMPParser parser;
+
+	@Setup
+	public void setup() throws Exception {
+		healthResponse = SEMPPayloads.load("0", SoftwareSystemHealthMonitor.SHOW_SYSTEM_HEALTH_REQUEST,
+				size -> new SimulatedBroker(1, 0, 0, 0, 0, 1, 0, 0));
+		vpnStatsResponse = SEMPPayloads.load(payload, MessageRatesMonitor.SHOW_VPN_RATES_REQUEST,
+				vpns -> new SimulatedBroker(vpns, 0, 0, 0, 0, 5, 0, 0));
+		SYSTEM_HEALTH_RESPONSE_ELEMENTS.forEach(
+				field -> interestedFields.put(field, ""));
+		parser = new MultiFieldSEMPParser(interestedFields);
+		parser.setEngine(engine);
+	}
+
+	@Benchmark
+	public int parseSystemHealth() throws Exception {
+		parser.parse(new ByteArrayInputStream(healthResponse));
+		return interestedFields.size();
+	}
+
+	@Benchmark
+	public int parseVpnStats() throws Exception {
+		parser.parse(new ByteArrayInputStream(vpnStatsResponse));
+		return interestedFields.size();
+	}
+}
@@ -0,0 +1,58 @@
+package com.solacesystems.solgeneos.custommonitors.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solacesystems.solgeneos.custommonitors.UsersMonitor;
+import com.solacesystems.solgeneos.custommonitors.simulator.SimulatedBroker;
+import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.MultiRecordSEMPParser;
+
+/**
+ * MultiRecordSEMPParser parsing the username response, configured the same as in UsersMonitor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MultiRecordParserBenchmark {
+
+	// How many users, or a recorded response
+	@Param({ "100", "1000", "10000" })
+	public String payload;
+
+	// The XML parser to compare
+	@Param({ "SAX", "STAX", "BYTES" })
+	public SampleSEMPParser.Engine engine;
+
+	private byte[] response;
+	private MultiRecordSEMPParser parser;
+
+	@Setup
+	public void setup() throws Exception {
+		response = SEMPPayloads.load(payload, UsersMonitor.SHOW_USERS_REQUEST,
+				users -> new SimulatedBroker(1, 0, 0, 0, 0, 1, 0, users));
+		parser = new MultiRecordSEMPParser(UsersMonitor.RESPONSE_ELEMENT_NAME);
+		parser.setEngine(engine);
+	}
+
+	@Benchmark
+	public int parseUsers() throws Exception {
+		parser.parse(new ByteArrayInputStream(response));
+		return parser.getRowCount();
+	}
+}
@@ -0,0 +1,41 @@
+package com.solacesystems.solgeneos.custommonitors.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.IntFunction;
+
+import com.solacesystems.solgeneos.custommonitors.simulator.SEMPRequest;
+import com.solacesystems.solgeneos.custommonitors.simulator.SimulatedBroker;
+
+/**
+ * The SEMP responses the parser benchmarks parse.
+ *
+ * Each benchmark has a "payload" parameter, which is either a number of objects to generate a synthetic response
+ * for with the SEMP broker simulator, or the path of a file holding a response recorded from a real broker.
+ * e.g. -p payload=1000,10000 or -p payload=recorded/show-queue-detail.xml
+ */
+public class SEMPPayloads {
+
+	/**
+	 * @param payload The benchmark's payload parameter
+	 * @param request The SEMP request the response is for, as the monitor sends it
+	 * @param brokerOfSize Creates a simulated broker with the given number of the objects the request is for
+	 * @return The response
+	 */
+	public static byte[] load(String payload, String request, IntFunction<SimulatedBroker> brokerOfSize) throws Exception {
+
+		if (!payload.matches("\\d+")) {
+			return Files.readAllBytes(Paths.get(payload));
+		}
+		SimulatedBroker broker = brokerOfSize.apply(Integer.parseInt(payload));
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		Writer out = new OutputStreamWriter(response, StandardCharsets.UTF_8);
+		broker.writeResponse(SEMPRequest.parse(request.getBytes(StandardCharsets.UTF_8)), out);
+		out.flush();
+		return response.toByteArray();
+	}
+}
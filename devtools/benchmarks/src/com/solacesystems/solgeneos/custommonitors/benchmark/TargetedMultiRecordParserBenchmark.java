@@ -0,0 +1,72 @@
+package com.solacesystems.solgeneos.custommonitors.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solacesystems.solgeneos.custommonitors.QueuesExMonitor;
+import com.solacesystems.solgeneos.custommonitors.simulator.SimulatedBroker;
+import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
+
+/**
+ * TargetedMultiRecordSEMPParser parsing the queue detail response, with the bound flows as level 2 rows,
+ * configured by QueuesExMonitor the same as it parses it in single view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TargetedMultiRecordParserBenchmark {
+
+    // The maximum rows of the monitor's view, its default unless the config overrides it
+    static final private int MAX_ROWS = 200;
+
+	// How many queues, or a recorded response
+	@Param({ "100", "1000", "10000" })
+	public String payload;
+
+	// The XML parser to compare
+	@Param({ "SAX", "STAX", "BYTES" })
+	public SampleSEMPParser.Engine engine;
+
+	private byte[] response;
+	private TargetedMultiRecordSEMPParser parser;
+	// The same, parsing into typed columns as the monitor does
+	private TargetedMultiRecordSEMPParser columnarParser;
+
+	@Setup
+	public void setup() throws Exception {
+		response = SEMPPayloads.load(payload, QueuesExMonitor.SHOW_QUEUES_REQUEST,
+				queues -> new SimulatedBroker(10, queues, 0, queues, 2, 5, 0, 0));
+		parser = QueuesExMonitor.createParser(false, false, MAX_ROWS);
+		parser.setEngine(engine);
+		columnarParser = QueuesExMonitor.createParser(true, false, MAX_ROWS);
+		columnarParser.setEngine(engine);
+	}
+
+	@Benchmark
+	public int parseQueueDetail() throws Exception {
+		parser.parse(new ByteArrayInputStream(response));
+		return parser.getRowCount();
+	}
+
+	@Benchmark
+	public int parseQueueDetailColumnar() throws Exception {
+		columnarParser.parse(new ByteArrayInputStream(response));
+		return columnarParser.getRowCount();
+	}
+}
@@ -0,0 +1,72 @@
+package com.solacesystems.solgeneos.custommonitors.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solacesystems.solgeneos.custommonitors.MessageRatesMonitor;
+import com.solacesystems.solgeneos.custommonitors.simulator.SimulatedBroker;
+import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.VPNRecordSEMPParser;
+
+/**
+ * VPNRecordSEMPParser parsing the message VPN stats response, configured the same as in MessageRatesMonitor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class VPNRecordParserBenchmark {
+
+    static final private String RESPONSE_ELEMENT_NAME_ROWS = "vpn";
+    static final private  List<String> RESPONSE_COLUMNS = 
+    		Arrays.asList("name", 
+    				"client-data-messages-received", "client-data-messages-sent", "client-persistent-messages-received", "client-persistent-messages-sent", 
+    				"client-non-persistent-messages-received", "client-non-persistent-messages-sent", "client-direct-messages-received", "client-direct-messages-sent",
+    				"client-data-bytes-received", "client-data-bytes-sent", "client-persistent-bytes-received", "client-persistent-bytes-sent", 
+    				"client-non-persistent-bytes-received", "client-non-persistent-bytes-sent", "client-direct-bytes-received", "client-direct-bytes-sent",
+    				"current-ingress-rate-per-second", "current-egress-rate-per-second", "current-ingress-byte-rate-per-second", "current-egress-byte-rate-per-second",
+    				"average-ingress-rate-per-minute", "average-egress-rate-per-minute", "average-ingress-byte-rate-per-minute", "average-egress-byte-rate-per-minute",
+    				"locally-configured");
+    static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("authentication", "ingress-discards", "egress-discards", "certificate-revocation-check-stats");
+
+	// How many message VPNs, or a recorded response
+	@Param({ "10", "100", "1000" })
+	public String payload;
+
+	// The XML parser to compare
+	@Param({ "SAX", "STAX", "BYTES" })
+	public SampleSEMPParser.Engine engine;
+
+	private byte[] response;
+	private VPNRecordSEMPParser parser;
+
+	@Setup
+	public void setup() throws Exception {
+		response = SEMPPayloads.load(payload, MessageRatesMonitor.SHOW_VPN_RATES_REQUEST,
+				vpns -> new SimulatedBroker(vpns, 0, 0, 0, 0, 5, 0, 0));
+		parser = new VPNRecordSEMPParser(RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS, RESPONSE_ELEMENT_NAMES_IGNORE);
+		parser.setEngine(engine);
+	}
+
+	@Benchmark
+	public int parseVpnStats() throws Exception {
+		parser.parse(new ByteArrayInputStream(response));
+		return parser.getRowCount();
+	}
+}
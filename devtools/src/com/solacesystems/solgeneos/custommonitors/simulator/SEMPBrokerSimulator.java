@@ -0,0 +1,165 @@
+package com.solacesystems.solgeneos.custommonitors.simulator;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An offline stand-in for a broker's SEMP service, for measuring the custom monitors against object counts a
+ * lab broker does not have.
+ *
+ * It answers the show requests the monitors send with synthetic responses for the configured number of message
+ * VPNs, queues, topic endpoints, clients and flows, honouring the paging of the requests. The responses can be
+ * delayed and a share of them failed, to see how the monitors cope with a slow or struggling broker.
+ *
+ * Usage: java com.solacesystems.solgeneos.custommonitors.simulator.SEMPBrokerSimulator [--option value]...
+ * See {@link #usage()} for the options.
+ */
+public class SEMPBrokerSimulator {
+
+	private static final String SEMP_PATH = "/SEMP";
+
+	private final SimulatedBroker broker;
+	private final long latencyMs;
+	private final long jitterMs;
+	private final int errorRate;
+	private final Random random = new Random();
+
+	public SEMPBrokerSimulator(SimulatedBroker broker, long latencyMs, long jitterMs, int errorRate) {
+		this.broker = broker;
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+		this.errorRate = errorRate;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 >= args.length) {
+				usage();
+				return;
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+
+		int port = getIntOption(options, "port", 8080);
+		int queues = getIntOption(options, "queues", 1000);
+		SimulatedBroker broker = new SimulatedBroker(
+				getIntOption(options, "vpns", 10),
+				queues,
+				getIntOption(options, "topic-endpoints", queues / 10),
+				getIntOption(options, "clients", queues),
+				getIntOption(options, "flows-per-queue", 2),
+				getIntOption(options, "profiles-per-vpn", 5),
+				getIntOption(options, "bridges", 10),
+				getIntOption(options, "users", 20));
+		SEMPBrokerSimulator simulator = new SEMPBrokerSimulator(broker,
+				getIntOption(options, "latency-ms", 0),
+				getIntOption(options, "jitter-ms", 0),
+				getIntOption(options, "error-rate", 0));
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(SEMP_PATH, simulator.new SEMPHandler());
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		System.out.println("SEMP broker simulator listening on port " + port + ", with " + options);
+	}
+
+	private static int getIntOption(Map<String, String> options, String option, int defaultValue) {
+		String value = options.get(option);
+		return (value == null) ? defaultValue : Integer.parseInt(value);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: SEMPBrokerSimulator [--option value]...");
+		System.out.println("  --port             The port to listen on for SEMP requests (default 8080)");
+		System.out.println("  --vpns             How many message VPNs (default 10)");
+		System.out.println("  --queues           How many queues, spread across the message VPNs (default 1000)");
+		System.out.println("  --topic-endpoints  How many topic endpoints (default a tenth of the queues)");
+		System.out.println("  --clients          How many clients (default as many as the queues)");
+		System.out.println("  --flows-per-queue  How many flows are bound to each queue and topic endpoint (default 2)");
+		System.out.println("  --profiles-per-vpn How many client profiles in each message VPN (default 5)");
+		System.out.println("  --bridges          How many bridges (default 10)");
+		System.out.println("  --users            How many CLI and file transfer users (default 20)");
+		System.out.println("  --latency-ms       How long to delay each response (default 0)");
+		System.out.println("  --jitter-ms        Up to how much longer to delay each response at random (default 0)");
+		System.out.println("  --error-rate       The percentage of requests to fail with HTTP 500 (default 0)");
+	}
+
+	private class SEMPHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+
+			try {
+				if (!"POST".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				SEMPRequest request;
+				try {
+					request = SEMPRequest.parse(readFully(exchange.getRequestBody()));
+				}
+				catch (Exception e) {
+					exchange.sendResponseHeaders(400, -1);
+					return;
+				}
+
+				delay();
+				if (errorRate > 0 && random.nextInt(100) < errorRate) {
+					exchange.sendResponseHeaders(500, -1);
+					return;
+				}
+
+				// Streamed, as the responses for large object counts run to many megabytes
+				exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+				exchange.sendResponseHeaders(200, 0);
+				Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 65536);
+				broker.writeResponse(request, out);
+				out.flush();
+			}
+			catch (IOException e) {
+				// The monitor gave up on the request, e.g. at its read timeout
+			}
+			finally {
+				exchange.close();
+			}
+		}
+
+		private void delay() {
+			long delayMs = latencyMs + ((jitterMs > 0) ? (long) (random.nextDouble() * jitterMs) : 0);
+			if (delayMs > 0) {
+				try {
+					Thread.sleep(delayMs);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+}
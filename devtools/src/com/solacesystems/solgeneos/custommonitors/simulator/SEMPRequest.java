@@ -0,0 +1,110 @@
+package com.solacesystems.solgeneos.custommonitors.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A SEMP show request as received by the simulator, reduced to the command and its options.
+ * e.g. <rpc><show><queue><name>*</name><detail/></queue></show></rpc> is the command "queue" with the options
+ * "name" set to "*" and "detail" set to "".
+ */
+public class SEMPRequest {
+
+	// Not part of SEMP, the simulator puts it in the more-cookie to know where the next page starts
+	static final public String START_FROM_OPTION = "start-from";
+
+	private final String command;
+	private final LinkedHashMap<String, String> options = new LinkedHashMap<String, String>();
+
+	private SEMPRequest(String command) {
+		this.command = command;
+	}
+
+	/**
+	 * @param requestBody The body of the HTTP POST
+	 * @return The request
+	 * @throws IllegalArgumentException If the body is not a SEMP show request
+	 */
+	public static SEMPRequest parse(byte[] requestBody) throws Exception {
+
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(requestBody));
+		Element show = firstChildElement(document.getDocumentElement());
+		if (show == null || !"show".equals(show.getTagName())) {
+			throw new IllegalArgumentException("Only show requests are supported");
+		}
+		Element commandElement = firstChildElement(show);
+		if (commandElement == null) {
+			throw new IllegalArgumentException("Missing the command of the show request");
+		}
+
+		SEMPRequest request = new SEMPRequest(commandElement.getTagName());
+		for (Node child = commandElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				request.options.put(((Element) child).getTagName(), child.getTextContent().trim());
+			}
+		}
+		return request;
+	}
+
+	private static Element firstChildElement(Element parent) {
+		for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				return (Element) child;
+			}
+		}
+		return null;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public boolean hasOption(String option) {
+		return options.containsKey(option);
+	}
+
+	public String getOption(String option) {
+		return options.get(option);
+	}
+
+	public int getIntOption(String option, int defaultValue) {
+		String value = options.get(option);
+		return (value == null || value.isEmpty()) ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * @param startFrom Where the next page starts
+	 * @return The same request, for the page starting at the given position
+	 */
+	public String toNextPageRequest(int startFrom) {
+		StringBuilder request = new StringBuilder("<rpc><show><").append(command).append('>');
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (!START_FROM_OPTION.equals(option.getKey())) {
+				appendOption(request, option.getKey(), option.getValue());
+			}
+		}
+		appendOption(request, START_FROM_OPTION, Integer.toString(startFrom));
+		return request.append("</").append(command).append("></show></rpc>").toString();
+	}
+
+	private static void appendOption(StringBuilder request, String option, String value) {
+		if (value.isEmpty()) {
+			request.append('<').append(option).append("/>");
+		}
+		else {
+			request.append('<').append(option).append('>').append(value).append("</").append(option).append('>');
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "show " + command + " " + options;
+	}
+}
@@ -0,0 +1,635 @@
+package com.solacesystems.solgeneos.custommonitors.simulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The synthetic objects of the simulated broker, and the SEMP responses describing them.
+ *
+ * Nothing is held in memory per object. Each object is identified by its index, and its name, message VPN,
+ * relationships and statistics are all derived from that index when the response is written. So the responses
+ * for 100k queues are as cheap for the simulator to produce as the responses for 1k queues.
+ *
+ * The statistics change every {@link #SAMPLE_PERIOD_MS} and the message counters keep increasing, so rates and
+ * high water marks move between polls like they would on a real broker.
+ */
+public class SimulatedBroker {
+
+	static final public String SEMP_VERSION = "soltr/10_4";
+
+	static final public long SAMPLE_PERIOD_MS = 10000;
+
+	// How many objects of each type the broker has
+	private final int vpnCount;
+	private final int queueCount;
+	private final int topicEndpointCount;
+	private final int clientCount;
+	private final int flowsPerEndpoint;
+	private final int profilesPerVpn;
+	private final int bridgeCount;
+	private final int userCount;
+
+	// Every this many clients is a slow subscriber
+	static final private int SLOW_SUBSCRIBER_INTERVAL = 50;
+
+	private final long startTime = System.currentTimeMillis();
+
+	public SimulatedBroker(int vpnCount, int queueCount, int topicEndpointCount, int clientCount, int flowsPerEndpoint,
+			int profilesPerVpn, int bridgeCount, int userCount) {
+		this.vpnCount = Math.max(vpnCount, 1);
+		this.queueCount = queueCount;
+		this.topicEndpointCount = topicEndpointCount;
+		this.clientCount = Math.max(clientCount, 1);
+		this.flowsPerEndpoint = flowsPerEndpoint;
+		this.profilesPerVpn = Math.max(profilesPerVpn, 1);
+		this.bridgeCount = bridgeCount;
+		this.userCount = userCount;
+	}
+
+	/**
+	 * Write the response to a request.
+	 *
+	 * @param request The request
+	 * @param out Where to write the response body
+	 * @throws IOException If the response could not be written
+	 */
+	public void writeResponse(SEMPRequest request, Writer out) throws IOException {
+
+		switch (request.getCommand()) {
+		case "queue":
+			writeEndpoints(request, out, "queues", "queue", queueCount, "queue-");
+			break;
+		case "topic-endpoint":
+			writeEndpoints(request, out, "topic-endpoints", "topic-endpoint", topicEndpointCount, "te-");
+			break;
+		case "client":
+			if (request.hasOption("sorted-stats")) {
+				writeSortedClientStats(request, out);
+			}
+			else if (request.getOption("name") != null && request.getOption("name").startsWith("#bridge")) {
+				writeBridgeClients(request, out);
+			}
+			else {
+				writeClients(request, out);
+			}
+			break;
+		case "client-profile":
+			writeClientProfiles(request, out);
+			break;
+		case "message-vpn":
+			writeVpns(request, out);
+			break;
+		case "message-spool":
+			if (request.hasOption("vpn-name")) {
+				writeVpnSpools(request, out);
+			}
+			else {
+				writeSpool(request, out);
+			}
+			break;
+		case "service":
+			writeService(request, out);
+			break;
+		case "bridge":
+			writeBridges(request, out);
+			break;
+		case "config-sync":
+			writeConfigSync(request, out);
+			break;
+		case "system":
+			writeSystemHealth(request, out);
+			break;
+		case "username":
+			writeUsers(request, out);
+			break;
+		default:
+			writeError(out, "The simulator does not support: " + request);
+		}
+	}
+
+	/**
+	 * Write a failed response, as the broker does for a request it cannot execute.
+	 */
+	public void writeError(Writer out, String reason) throws IOException {
+		out.write("<rpc-reply semp-version=\"" + SEMP_VERSION + "\">");
+		out.write("<execute-result code=\"fail\" reason=\"" + escape(reason) + "\"/>");
+		out.write("</rpc-reply>");
+	}
+
+	// ==== Queues and topic endpoints ====
+
+	private void writeEndpoints(SEMPRequest request, Writer out, String listElement, String rowElement, int count,
+			String namePrefix) throws IOException {
+
+		Page page = new Page(request, count);
+		startReply(request, out);
+		out.write("<" + listElement + ">");
+		for (int i = page.start; i < page.end; i++) {
+			int bindCount = getBindCount(i);
+			boolean exclusive = (i % 3 == 0);
+			long spooled = value(i, 1, 100000);
+			long newestMsgId = 1000000 + getElapsedSecs() * (1 + value(i, 2, 50));
+
+			out.write("<" + rowElement + ">");
+			element(out, "name", namePrefix + pad(i, 6));
+			out.write("<info>");
+			element(out, "message-vpn", getVpnName(i));
+			element(out, "durable", "true");
+			element(out, "ingress-config-status", "Up");
+			element(out, "egress-config-status", (i % 97 == 0) ? "Down" : "Up");
+			element(out, "access-type", exclusive ? "exclusive" : "non-exclusive");
+			if (listElement.equals("topic-endpoints")) {
+				element(out, "destination", "sim/topic/" + i + "/>");
+			}
+			element(out, "owner", "");
+			element(out, "quota", 5000);
+			element(out, "respect-ttl", "false");
+			element(out, "max-ttl", 0);
+			element(out, "reject-msg-to-sender-on-discard", "true");
+			element(out, "num-messages-spooled", spooled);
+			element(out, "current-spool-usage-in-mb", String.format("%.4f", spooled / 1024.0));
+			element(out, "high-water-mark-in-mb", String.format("%.4f", spooled / 512.0));
+			element(out, "total-delivered-unacked-msgs", value(i, 3, 100));
+			element(out, "max-redelivery", 0);
+			if (spooled > 0) {
+				element(out, "oldest-msg-id", newestMsgId - spooled);
+				element(out, "newest-msg-id", newestMsgId);
+			}
+			element(out, "bind-count", bindCount);
+			element(out, "max-bind-count", 1000);
+			element(out, "dead-message-queue", "#DEAD_MSG_QUEUE");
+			out.write("<event><bind-count-thresholds><set-percentage>80</set-percentage><clear-percentage>60</clear-percentage></bind-count-thresholds></event>");
+			out.write("</info>");
+
+			// The flows bound to the endpoint
+			out.write("<clients>");
+			for (int flow = 0; flow < bindCount; flow++) {
+				int clientIndex = (i * flowsPerEndpoint + flow) % clientCount;
+				out.write("<client>");
+				element(out, "name", getClientName(clientIndex));
+				element(out, "is-active", (!exclusive || flow == 0) ? "Active-Consumer" : "Inactive");
+				element(out, "window-size", 255);
+				element(out, "connect-time", "2024-01-01 00:00:00 UTC");
+				element(out, "flow-id", (long) i * flowsPerEndpoint + flow + 1);
+				element(out, "last-msg-id-delivered", newestMsgId - spooled);
+				out.write("</client>");
+			}
+			out.write("</clients>");
+			out.write("</" + rowElement + ">");
+		}
+		out.write("</" + listElement + ">");
+		endReply(request, out, page);
+	}
+
+	// Every 10th endpoint has nothing bound to it
+	private int getBindCount(int endpointIndex) {
+		return (endpointIndex % 10 == 0) ? 0 : flowsPerEndpoint;
+	}
+
+	// ==== Clients ====
+
+	private void writeClients(SEMPRequest request, Writer out) throws IOException {
+
+		// Slow subscribers are a subset of the clients, paged through on their own
+		boolean slowSubscribersOnly = request.hasOption("slow-subscriber");
+		int interval = slowSubscribersOnly ? SLOW_SUBSCRIBER_INTERVAL : 1;
+		Page page = new Page(request, (clientCount + interval - 1) / interval);
+
+		startReply(request, out);
+		out.write("<primary-virtual-router>");
+		for (int position = page.start; position < page.end; position++) {
+			int i = position * interval;
+			out.write("<client>");
+			element(out, "name", getClientName(i));
+			element(out, "message-vpn", getVpnName(i));
+			if (request.hasOption("stats")) {
+				writeClientStats(out, i);
+			}
+			else {
+				element(out, "client-address", "10.0." + ((i >> 8) & 0xff) + "." + (i & 0xff) + ":" + (50000 + i % 10000));
+				element(out, "num-subscriptions", value(i, 4, 200));
+				element(out, "eliding-enabled", "false");
+				element(out, "eliding-topics", 0);
+				element(out, "uptime", "1d 2h 3m 4s");
+				element(out, "client-username", getUsername(i));
+				element(out, "profile", getProfileName(i));
+				element(out, "user", "sim-user");
+				element(out, "description", "Simulated client " + i);
+				element(out, "platform", "Linux-amd64 (Java 1.8.0) - JCSMP SDK");
+				element(out, "total-ingress-flows", value(i, 5, 3));
+				element(out, "total-egress-flows", value(i, 6, 3));
+				out.write("<event-configuration><subscriptions><set-value>5000</set-value></subscriptions></event-configuration>");
+			}
+			out.write("</client>");
+		}
+		out.write("</primary-virtual-router>");
+		endReply(request, out, page);
+	}
+
+	private void writeClientStats(Writer out, int i) throws IOException {
+		long ingressRate = value(i, 7, 1000);
+		long egressRate = value(i, 8, 1000);
+		out.write("<stats>");
+		element(out, "client-data-messages-received", getCounter(i, ingressRate));
+		element(out, "client-data-messages-sent", getCounter(i, egressRate));
+		element(out, "client-data-bytes-received", getCounter(i, ingressRate * 512));
+		element(out, "client-data-bytes-sent", getCounter(i, egressRate * 512));
+		element(out, "current-ingress-rate-per-second", ingressRate);
+		element(out, "current-egress-rate-per-second", egressRate);
+		element(out, "average-ingress-rate-per-minute", ingressRate * 60);
+		element(out, "average-egress-rate-per-minute", egressRate * 60);
+		element(out, "current-ingress-byte-rate-per-second", ingressRate * 512);
+		element(out, "current-egress-byte-rate-per-second", egressRate * 512);
+		element(out, "average-ingress-byte-rate-per-minute", ingressRate * 512 * 60);
+		element(out, "average-egress-byte-rate-per-minute", egressRate * 512 * 60);
+		element(out, "current-ingress-compressed-rate-per-second", 0);
+		element(out, "current-egress-compressed-rate-per-second", 0);
+		element(out, "average-ingress-compressed-rate-per-minute", 0);
+		element(out, "average-egress-compressed-rate-per-minute", 0);
+		element(out, "ingress-compression-ratio", "0.00");
+		element(out, "egress-compression-ratio", "0.00");
+		element(out, "total-egress-discards", value(i, 9, 10));
+		out.write("</stats>");
+	}
+
+	// The top clients by the statistic to sort by, with the statistics asked for in the order asked for
+	private void writeSortedClientStats(SEMPRequest request, Writer out) throws IOException {
+
+		int count = Math.min(request.getIntOption("num-elements", 10), clientCount);
+		List<String> statsToShow = Arrays.asList(request.getOption("stats-to-show").split(","));
+
+		startReply(request, out);
+		out.write("<primary-virtual-router><sorted-stats>");
+		for (int rank = 0; rank < count; rank++) {
+			int i = (int) ((rank * 7919L + getSample()) % clientCount);
+			out.write("<row>");
+			element(out, "name", getClientName(i));
+			element(out, "client-username", getUsername(i));
+			element(out, "message-vpn", getVpnName(i));
+			for (String stat : statsToShow) {
+				// Descending by rank, so the response is already sorted
+				element(out, stat.trim(), (count - rank) * 1000 + value(i, 10, 1000));
+			}
+			out.write("</row>");
+		}
+		out.write("</sorted-stats></primary-virtual-router>");
+		endReply(request, out, null);
+	}
+
+	// ==== Client profiles ====
+
+	private void writeClientProfiles(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<profiles>");
+		for (int vpn = 0; vpn < vpnCount; vpn++) {
+			for (int profile = 0; profile < profilesPerVpn; profile++) {
+				out.write("<profile>");
+				element(out, "name", "profile-" + pad(profile, 2));
+				element(out, "message-vpn", getVpnName(vpn));
+				element(out, "max-connections-per-client-username", 1000);
+				element(out, "max-subscriptions", 500000);
+				element(out, "maximum-ingress-flows", 1000);
+				element(out, "maximum-egress-flows", 1000);
+				element(out, "maximum-endpoints-per-client-username", 1000);
+				element(out, "maximum-transactions", 5000);
+				element(out, "maximum-transacted-sessions", 1000);
+				element(out, "num-users", value(vpn * profilesPerVpn + profile, 11, 100));
+				out.write("<tcp><max-wnd-size-in-kb>256</max-wnd-size-in-kb></tcp>");
+				out.write("<event-configuration><connections-per-client-username><set-percentage>80</set-percentage></connections-per-client-username></event-configuration>");
+				out.write("</profile>");
+			}
+		}
+		out.write("</profiles>");
+		endReply(request, out, null);
+	}
+
+	// ==== Message VPNs and the message spool ====
+
+	private void writeVpns(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		for (int vpn = 0; vpn < vpnCount; vpn++) {
+			out.write("<vpn>");
+			element(out, "name", getVpnName(vpn));
+			element(out, "locally-configured", "true");
+			element(out, "local-status", "Up");
+			if (request.hasOption("stats")) {
+				long rate = value(vpn, 12, 10000);
+				out.write("<stats>");
+				for (String direction : new String[] { "received", "sent" }) {
+					element(out, "client-data-messages-" + direction, getCounter(vpn, rate));
+					element(out, "client-persistent-messages-" + direction, getCounter(vpn, rate / 2));
+					element(out, "client-non-persistent-messages-" + direction, getCounter(vpn, rate / 4));
+					element(out, "client-direct-messages-" + direction, getCounter(vpn, rate / 4));
+					element(out, "client-data-bytes-" + direction, getCounter(vpn, rate * 1024));
+					element(out, "client-persistent-bytes-" + direction, getCounter(vpn, rate * 512));
+					element(out, "client-non-persistent-bytes-" + direction, getCounter(vpn, rate * 256));
+					element(out, "client-direct-bytes-" + direction, getCounter(vpn, rate * 256));
+				}
+				for (String direction : new String[] { "ingress", "egress" }) {
+					element(out, "current-" + direction + "-rate-per-second", rate);
+					element(out, "current-" + direction + "-byte-rate-per-second", rate * 1024);
+					element(out, "average-" + direction + "-rate-per-minute", rate * 60);
+					element(out, "average-" + direction + "-byte-rate-per-minute", rate * 1024 * 60);
+				}
+				out.write("<ingress-discards><total-ingress-discards>0</total-ingress-discards></ingress-discards>");
+				out.write("<egress-discards><total-egress-discards>0</total-egress-discards></egress-discards>");
+				out.write("</stats>");
+			}
+			else {
+				element(out, "total-unique-subscriptions", value(vpn, 13, 100000));
+				element(out, "max-subscriptions", 5000000);
+				element(out, "connections-service-smf", clientCount / vpnCount);
+				element(out, "max-connections-service-smf", 9000);
+				out.write("<authentication><basic-auth><enabled>true</enabled></basic-auth></authentication>");
+				out.write("<event-configuration><connections><set-percentage>80</set-percentage></connections></event-configuration>");
+			}
+			out.write("</vpn>");
+		}
+		endReply(request, out, null);
+	}
+
+	private void writeVpnSpools(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<message-vpn>");
+		for (int vpn = 0; vpn < vpnCount; vpn++) {
+			int endpoints = (queueCount + topicEndpointCount) / vpnCount;
+			out.write("<vpn>");
+			element(out, "name", getVpnName(vpn));
+			element(out, "current-queues-and-topic-endpoints", endpoints);
+			element(out, "maximum-queues-and-topic-endpoints", Math.max(endpoints * 2, 1000));
+			element(out, "current-spool-usage-mb", String.format("%.4f", value(vpn, 14, 50000) / 10.0));
+			element(out, "maximum-spool-usage-mb", 100000);
+			element(out, "current-transacted-sessions", value(vpn, 15, 100));
+			element(out, "maximum-transacted-sessions", 16000);
+			element(out, "current-transactions", value(vpn, 16, 100));
+			element(out, "maximum-transactions", 50000);
+			element(out, "current-egress-flows", endpoints * flowsPerEndpoint);
+			element(out, "maximum-egress-flows", 16000);
+			element(out, "current-ingress-flows", value(vpn, 17, 1000));
+			element(out, "maximum-ingress-flows", 16000);
+			out.write("<event-configuration><spool-usage><set-percentage>80</set-percentage></spool-usage></event-configuration>");
+			out.write("</vpn>");
+		}
+		out.write("</message-vpn>");
+		endReply(request, out, null);
+	}
+
+	private void writeSpool(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<message-spool-info>");
+		element(out, "max-disk-usage", 800000);
+		element(out, "message-spool-entities-allowed-by-qendpt", 100000);
+		element(out, "max-transacted-sessions", 16000);
+		element(out, "max-transactions", 50000);
+		element(out, "ingress-flows-allowed", 100000);
+		element(out, "flows-allowed", 100000);
+		out.write("</message-spool-info>");
+		endReply(request, out, null);
+	}
+
+	private void writeService(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<service>");
+		element(out, "max-connections-service-smf", 200000);
+		out.write("</service>");
+		endReply(request, out, null);
+	}
+
+	// ==== Bridges ====
+
+	private void writeBridges(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<bridges>");
+		for (int bridge = 0; bridge < bridgeCount; bridge++) {
+			out.write("<bridge>");
+			element(out, "bridge-name", getBridgeName(bridge));
+			element(out, "local-vpn-name", getVpnName(bridge));
+			element(out, "connected-remote-vpn-name", "remote-" + getVpnName(bridge));
+			element(out, "connected-remote-router-name", "v:remote-broker");
+			element(out, "admin-state", "Enabled");
+			element(out, "inbound-operational-state", "Ready-InSync");
+			element(out, "outbound-operational-state", "Ready");
+			element(out, "queue-operational-state", "Bound");
+			element(out, "connection-uptime-in-seconds", getElapsedSecs());
+			element(out, "client-name", getBridgeClientName(bridge));
+			out.write("<remote-message-vpn-list><remote-message-vpn><vpn-name>remote</vpn-name></remote-message-vpn></remote-message-vpn-list>");
+			out.write("</bridge>");
+		}
+		out.write("</bridges>");
+		endReply(request, out, null);
+	}
+
+	private void writeBridgeClients(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<primary-virtual-router>");
+		for (int bridge = 0; bridge < bridgeCount; bridge++) {
+			out.write("<client>");
+			element(out, "name", getBridgeClientName(bridge));
+			element(out, "message-vpn", getVpnName(bridge));
+			if (request.hasOption("connections")) {
+				out.write("<connection>");
+				element(out, "is-zip", "No");
+				element(out, "is-ssl", "No");
+				element(out, "receive-queue-bytes", 0);
+				element(out, "receive-queue-segments", 0);
+				element(out, "send-queue-bytes", value(bridge, 18, 1000));
+				element(out, "send-queue-segments", value(bridge, 19, 10));
+				element(out, "retransmit-time-ms", 200);
+				element(out, "round-trip-time-smooth-us", 500 + value(bridge, 20, 1000));
+				element(out, "round-trip-time-variance-us", value(bridge, 21, 200));
+				element(out, "advertised-window-size", 65535);
+				element(out, "transmit-window-size", 65535);
+				element(out, "bandwidth-window-size", 65535);
+				element(out, "congestion-window-size", 65535);
+				element(out, "slow-start-threshold-size", 65535);
+				element(out, "segments-received-out-of-order", 0);
+				element(out, "fast-retransmits", 0);
+				element(out, "timed-retransmits", 0);
+				element(out, "blocked-cycles-percent", 0);
+				out.write("</connection>");
+			}
+			else {
+				writeClientStats(out, bridge);
+			}
+			out.write("</client>");
+		}
+		out.write("</primary-virtual-router>");
+		endReply(request, out, null);
+	}
+
+	// ==== Config-sync ====
+
+	private void writeConfigSync(SEMPRequest request, Writer out) throws IOException {
+
+		boolean remote = request.hasOption("remote");
+		startReply(request, out);
+		out.write("<database><tables>");
+		// The broker wide table, then one per message VPN
+		for (int table = -1; table < vpnCount; table++) {
+			out.write("<table>");
+			element(out, "name", (table < 0) ? "site" : getVpnName(table));
+			element(out, "type", (table < 0) ? "Router" : "Vpn");
+			element(out, "sync-state", (table % 13 == 12) ? "Out-Of-Sync" : "In-Sync");
+			element(out, "ownership", "Master");
+			element(out, "time-in-state", "1d 2h 3m 4s");
+			element(out, "time-in-state-seconds", 93784 + getElapsedSecs());
+			if (remote) {
+				out.write("<source-routers><source-router>");
+				element(out, "name", "mate-broker");
+				element(out, "ownership", "Slave");
+				element(out, "sync-state", (table % 13 == 12) ? "Out-Of-Sync" : "In-Sync");
+				element(out, "time-in-state", "1d 2h 3m 4s");
+				element(out, "stale", "No");
+				element(out, "time-last-msg-received", "2024-01-01 00:00:00 UTC");
+				out.write("</source-router></source-routers>");
+			}
+			out.write("</table>");
+		}
+		out.write("</tables></database>");
+		endReply(request, out, null);
+	}
+
+	// ==== System health and users ====
+
+	private void writeSystemHealth(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<health>");
+		element(out, "last-clear-time", startTime / 1000);
+		for (String latency : new String[] { "disk", "compute", "network", "mate-link" }) {
+			long current = 100 + value(latency.hashCode(), 22, 1000);
+			element(out, latency + "-latency-minimum-value", 100);
+			element(out, latency + "-latency-maximum-value", 1100);
+			element(out, latency + "-latency-average-value", 600);
+			element(out, latency + "-latency-current-value", current);
+			element(out, latency + "-latency-high-threshold", 10000);
+			element(out, latency + "-latency-suppressed-events", 0);
+		}
+		out.write("</health>");
+		endReply(request, out, null);
+	}
+
+	private void writeUsers(SEMPRequest request, Writer out) throws IOException {
+
+		startReply(request, out);
+		out.write("<usernames>");
+		for (int i = 0; i < userCount; i++) {
+			out.write("<user>");
+			element(out, "name", "sim-user-" + pad(i, 4));
+			element(out, "type", (i % 4 == 0) ? "file-transfer" : "cli");
+			element(out, "global-access-level", (i % 2 == 0) ? "read-only" : "read-write");
+			element(out, "description", "Simulated user " + i);
+			out.write("</user>");
+		}
+		out.write("</usernames>");
+		endReply(request, out, null);
+	}
+
+	// ==== Response envelope and paging ====
+
+	// The range of records in the page asked for, with no more than num-elements records if there is a count
+	private static class Page {
+		private final int start;
+		private final int end;
+		private final int total;
+
+		Page(SEMPRequest request, int total) {
+			this.total = total;
+			this.start = Math.min(request.getIntOption(SEMPRequest.START_FROM_OPTION, 0), total);
+			int pageSize = request.hasOption("count") ? request.getIntOption("num-elements", total) : total;
+			this.end = (int) Math.min((long) start + pageSize, total);
+		}
+	}
+
+	private void startReply(SEMPRequest request, Writer out) throws IOException {
+		out.write("<rpc-reply semp-version=\"" + SEMP_VERSION + "\"><rpc><show><" + request.getCommand() + ">");
+	}
+
+	private void endReply(SEMPRequest request, Writer out, Page page) throws IOException {
+		out.write("</" + request.getCommand() + "></show></rpc>");
+		if (page != null && page.end < page.total) {
+			out.write("<more-cookie>" + request.toNextPageRequest(page.end) + "</more-cookie>");
+		}
+		out.write("<execute-result code=\"ok\"/></rpc-reply>");
+	}
+
+	private static void element(Writer out, String name, Object value) throws IOException {
+		out.write('<');
+		out.write(name);
+		out.write('>');
+		out.write(escape(value.toString()));
+		out.write("</");
+		out.write(name);
+		out.write('>');
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	// ==== Names and values derived from the index of an object ====
+
+	private String getVpnName(int index) {
+		return "vpn-" + pad(index % vpnCount, 3);
+	}
+
+	private String getClientName(int index) {
+		return "client-" + pad(index, 6);
+	}
+
+	private String getUsername(int index) {
+		return "sim-app-" + pad(index % 1000, 3);
+	}
+
+	private String getProfileName(int index) {
+		return "profile-" + pad((index / vpnCount) % profilesPerVpn, 2);
+	}
+
+	private String getBridgeName(int index) {
+		return "bridge-" + pad(index, 3);
+	}
+
+	private String getBridgeClientName(int index) {
+		return "#bridge/" + getBridgeName(index) + "/outbound";
+	}
+
+	private static String pad(int value, int width) {
+		String digits = Integer.toString(value);
+		StringBuilder padded = new StringBuilder(width);
+		for (int i = digits.length(); i < width; i++) {
+			padded.append('0');
+		}
+		return padded.append(digits).toString();
+	}
+
+	private long getElapsedSecs() {
+		return (System.currentTimeMillis() - startTime) / 1000;
+	}
+
+	private long getSample() {
+		return System.currentTimeMillis() / SAMPLE_PERIOD_MS;
+	}
+
+	// A counter that has been increasing at about the given rate per second since the simulator started
+	private long getCounter(int index, long ratePerSec) {
+		return value(index, 23, 1000000) + ratePerSec * getElapsedSecs();
+	}
+
+	// A value below the bound that is fixed for an object and statistic, but changes from one sample period to the next
+	private long value(int index, int statistic, long bound) {
+		long x = index * 0x9E3779B97F4A7C15L + statistic * 0xC2B2AE3D27D4EB4FL + getSample();
+		x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+		x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		x = x ^ (x >>> 33);
+		return (x & Long.MAX_VALUE) % bound;
+	}
+}
@@ -2,7 +2,6 @@ package com.solacesystems.solgeneos.custommonitors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -11,23 +10,15 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import java.util.stream.Collectors;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
+import com.solacesystems.solgeneos.custommonitors.util.RowAggregator;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.MultiFieldSEMPParser;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
 import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.TopKRows;
 import com.solacesystems.solgeneos.custommonitors.util.VPNRecordSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
@@ -73,6 +64,9 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
     		Arrays.asList("RowUID", "name", "message-vpn", "profile", "num-subscriptions", "total-ingress-flows", "total-egress-flows");
     static final private  List<String> CLIENT_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("event-configuration");
     
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("message-vpn", "profile");
+    
     // What should be the formatting style?
     static final private String FLOAT_FORMAT_STYLE = "%.0f";	// 0 decimal places. Wanted to add thousandth separator but Geneos fails to recognise it as numbers for rule purposes!
         
@@ -95,8 +89,7 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
     
     static final String[] RESOURCES = {"Subscriptions", "Connections", "Egress Flows", "Ingress Flows"};
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private TargetedMultiRecordSEMPParser multiRecordParserClientProfile;
     private TargetedMultiRecordSEMPParser multiRecordParserClientDetail;
     
@@ -104,21 +97,15 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
     // Is the monitor creating a dataview per VPN or everything is in one view?
     // What is the maximum number of rows to limit the dataview to? Default 200 unless overridden.
     private int maxRows = 200;
+    // How many records to request per page when asking the broker for all of them. Default unless overridden.
+    private int pageSize = SEMPClient.DEFAULT_PAGE_SIZE;
 
-    // When sorting the table rows before limiting to maxrows, how to prioritise the top of the cut?
-    // This comparator is used to sort the table so the highest utilisation score is at the top of the table
-    // Note: Assuming the sort is done after columns re-ordered and computed columns added. So use lookup via COLUMN_NAME_OVERRIDE
-    static class UtilisationComparator implements Comparator<Object>
-    {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	int value1 = Integer.parseInt( ((ArrayList<String>)tableRow1).get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Utilisation Score") ));
-        	int value2 = Integer.parseInt( ((ArrayList<String>)tableRow2).get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Utilisation Score") ));
-
-            return Double.compare(value2, value1);	
-        }
-    }
+    // When limiting the table rows to maxrows, how to prioritise the top of the cut?
+    // The rows are ranked so the highest utilisation score is at the top of the table, keeping no more than make the cut.
+    private TopKRows utilisationRanker;
+    
+    // The current usage of each resource by the clients of each client profile, totalled per VPN and profile as the clients are parsed
+    private RowAggregator clientTotals;
     
     /**
      * This method is called after initialisation but before the monitor is started.
@@ -156,8 +143,12 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
 		// If the file exists and its not empty, add each property as a headline:
 		if (monitorPropsConfig != null && monitorPropsConfig.getProperties() != null) {
 			maxRows = Integer.parseInt(monitorPropsConfig.getProperties().get("maxrows").toString());
+			if (monitorPropsConfig.getProperties().get("pagesize") != null) {
+				pageSize = Integer.parseInt(monitorPropsConfig.getProperties().get("pagesize").toString());
+			}
 		}
 		globalHeadlines.put("Maximum rows to display", maxRows);
+		utilisationRanker = new TopKRows(maxRows, true);
 		
 		
 		// (4) Retrieve SEMP over HTTP properties from global properties
@@ -174,26 +165,29 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
 		multiRecordParserClientProfile = new TargetedMultiRecordSEMPParser(CP_DETAILS_RESPONSE_ELEMENT_NAME_ROWS, CP_DETAILS_RESPONSE_COLUMNS, CP_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE);
 		multiRecordParserClientDetail = new TargetedMultiRecordSEMPParser(CLIENT_DETAILS_RESPONSE_ELEMENT_NAME_ROWS, CLIENT_DETAILS_RESPONSE_COLUMNS, CLIENT_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE);
+		multiRecordParserClientProfile.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserClientDetail.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		
+		// Drop the client profiles that begin with # as those are system managed, and the ones that have no configured username referencing them.
+		// (As they are parsed, rather than carry them to onCollect() only to throw them away.)
+		multiRecordParserClientProfile.addRowFilter("name", cpName -> !cpName.startsWith("#"));
+		multiRecordParserClientProfile.addRowFilter("num-users", userCount -> !userCount.trim().equals("0"));
+		
+		// Total up the clients per VPN and client profile as they are parsed, each total named after the resource it is the current usage of.
+		// (So each profile looks up its totals, rather than going through all the clients again for each resource of each profile.)
+		clientTotals = new RowAggregator();
+		clientTotals.addCount("Connections");
+		clientTotals.addSum("Subscriptions", "num-subscriptions");
+		clientTotals.addSum("Ingress Flows", "total-ingress-flows");
+		clientTotals.addSum("Egress Flows", "total-egress-flows");
+		clientTotals.setGroupByColumns(Arrays.asList("message-vpn", "profile"));
+		multiRecordParserClientDetail.setRowAggregator(clientTotals);
 		
 	}
 	
@@ -212,40 +206,37 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
 		);
 	}
 	
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-    
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "unchecked", "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		
 		LinkedHashMap<String, Object> headlines;
 		
-		// Get the first SEMP query response...
-		submitSEMPQuery(SHOW_CP_DETAILS_REQUEST, multiRecordParserClientProfile);
-		// Get the second SEMP query response...
-		submitSEMPQuery(SHOW_CLIENT_DETAILS_REQUEST, multiRecordParserClientDetail);
+		// Send both SEMP queries at once and wait for their responses...
+		sempClient.waitForAll(
+				sempClient.submitSEMPQueryAsync(SHOW_CP_DETAILS_REQUEST, multiRecordParserClientProfile),
+				sempClient.submitSEMPQueryPagedAsync(SHOW_CLIENT_DETAILS_REQUEST, multiRecordParserClientDetail, pageSize));
 		
 		// Has the desired column order been determined yet? (Done on the first time responses and their columns came back.)
 		if (this.desiredColumnOrder == null) {
@@ -261,12 +252,8 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
 		Vector<ArrayList<String>> clientProfileDataTemp;
 		ArrayList<String> tableRowClientProfile;
 		
-		Vector<ArrayList<String>> clientData;
-		ArrayList<String> tableRowClient;
-		
 		clientProfileData = multiRecordParserClientProfile.getTableContent();
-		clientData = multiRecordParserClientDetail.getTableContent();
-		List<String> clientDataColumnNames = multiRecordParserClientDetail.getColumnNames();
+		// (The clients were already totalled per VPN and client profile by clientTotals as they were parsed.)
 		
 		// Reorder the merged table into the column order we want. 
 		clientProfileDataTemp = new Vector<ArrayList<String>>();
@@ -293,85 +280,44 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
 		
 		clientProfileData = clientProfileDataTemp;
 		
-		// From the table remove client profiles that begin with # as those are system managed
-		// Also remove the ones that have no configured username referencing it
-		// While iterating here, add the missing computed column values
+		// (The client profiles that begin with # or have no configured username referencing them were already dropped by the parser's row filters.)
+		// Add the missing computed column values, ranking each row by its utilisation score as it is worked out
+		utilisationRanker.clear();
 		
-		Iterator<ArrayList<String>> itr = clientProfileData.iterator();	
-		while (itr.hasNext()) {		
-			ArrayList<String> tempTableRow = itr.next();
+		for (int index = 0; index < clientProfileData.size(); index++) {
+			ArrayList<String> tempTableRow = clientProfileData.get(index);
 			String cpName = tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Client Profile"));
 			String vpnName = tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Message VPN"));
 			int userCount = Integer.parseInt(tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Number of Users")));
 			
-			if (cpName.startsWith("#") || userCount == 0) {
-				itr.remove();
-			}
-			else
-			{	
-				// Only if a 1:1 mapping of client profiles to usernames, calculate the following:
-				// (Since limits are 'per-username', cannot easily display limit usage at each username referencing this profile)
-				if (userCount == 1) {
-					// How many connections present using this client profile?
-					long nConnections = 
-							clientData
-							.stream()
-							.filter(tableRow -> vpnName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("message-vpn") )   ))
-							.filter(tableRow -> cpName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("profile") )   ))
-							.count();	
-					tempTableRow.set(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Connections - Current"), Long.toString(nConnections));
-					
-					// How many subscriptions used by clients with this client profile?
-					long nSubscriptions = 
-							clientData
-							.stream()
-							.filter(tableRow -> vpnName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("message-vpn") )   ))
-							.filter(tableRow -> cpName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("profile") )   ))
-							.map   (tableRow -> tableRow.get( clientDataColumnNames.indexOf("num-subscriptions")  ) )	// Only that one column)
-							.mapToLong(Long::parseLong)
-							.sum();	
-					tempTableRow.set(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Subscriptions - Current"), Long.toString(nSubscriptions));
-					
-					// How many ingress flows used by clients with this client profile?
-					long nIngressFlows = 
-							clientData
-							.stream()
-							.filter(tableRow -> vpnName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("message-vpn") )   ))
-							.filter(tableRow -> cpName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("profile") )   ))
-							.map   (tableRow -> tableRow.get( clientDataColumnNames.indexOf("total-ingress-flows")  ) )	// Only that one column)
-							.mapToLong(Long::parseLong)
-							.sum();	
-					tempTableRow.set(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Ingress Flows - Current"), Long.toString(nIngressFlows));
-					
-					// How many egress flows used by clients with this client profile?
-					long nEgressFlows = 
-							clientData
-							.stream()
-							.filter(tableRow -> vpnName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("message-vpn") )   ))
-							.filter(tableRow -> cpName.equalsIgnoreCase( tableRow.get( clientDataColumnNames.indexOf("profile") )   ))
-							.map   (tableRow -> tableRow.get( clientDataColumnNames.indexOf("total-egress-flows")  ) )	// Only that one column)
-							.mapToLong(Long::parseLong)
-							.sum();	
-					tempTableRow.set(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Egress Flows - Current"), Long.toString(nEgressFlows));
+			// Only if a 1:1 mapping of client profiles to usernames, calculate the following:
+			// (Since limits are 'per-username', cannot easily display limit usage at each username referencing this profile)
+			if (userCount == 1) {
+				// How many connections, subscriptions, ingress flows and egress flows used by clients with this client profile?
+				String clientGroup = RowAggregator.getGroupName(vpnName, cpName);
+				for (String resourceName : RESOURCES) {
+					tempTableRow.set(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current"), Long.toString(clientTotals.getLong(clientGroup, resourceName)));
 				}
+			}
 
-				// Add a new utilisation score calculated column
-				double score = 0;
-				int nUnusedResource = 0;
-				for (String resourceName : RESOURCES) {
-					double current = 
-							tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")).isEmpty() ? 0 : Double.parseDouble(tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")));
-					double max = Double.parseDouble(tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Max")));
-					
-					if (max == 0) {
-						nUnusedResource++;
-					}
-					else {
-						score += current / max;
-					}
+			// Add a new utilisation score calculated column
+			double score = 0;
+			int nUnusedResource = 0;
+			for (String resourceName : RESOURCES) {
+				double current = 
+						tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")).isEmpty() ? 0 : Double.parseDouble(tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")));
+				double max = Double.parseDouble(tempTableRow.get(CP_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Max")));
+				
+				if (max == 0) {
+					nUnusedResource++;
+				}
+				else {
+					score += current / max;
 				}
-				tempTableRow.add(String.format(FLOAT_FORMAT_STYLE, ((score / (RESOURCES.length - nUnusedResource) ) * 100 )) );
 			}
+			String utilisationScore = String.format(FLOAT_FORMAT_STYLE, ((score / (RESOURCES.length - nUnusedResource) ) * 100 ));
+			tempTableRow.add(utilisationScore);
+			utilisationRanker.offer(index, Integer.parseInt(utilisationScore));
 		}  
 		
 		// Now calculate the headlines
@@ -381,21 +327,17 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
 		String lastSampleTime = SolGeneosAgent.onlyInstance.getCurrentTimeString();
 		headlines.put("Last Sample Time", lastSampleTime);
 		
-		// Sort the list by the utilisation score. Then also limit to the max row count if exceeding it...
+		// Take the top rows by the utilisation score, limited to the max row count if exceeding it...
 		clientProfileDataTemp = new Vector<ArrayList<String>>();
-		
-		clientProfileDataTemp.addAll(
-				clientProfileData
-				.stream()
-				.sorted(new UtilisationComparator())	
-				.limit(maxRows)				// Then cut the rows at max limit
-				.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-				);
+		for (int index : utilisationRanker.getRows()) {
+			clientProfileDataTemp.add(clientProfileData.get(index));
+		}
 		clientProfileData = clientProfileDataTemp;
 
 		// Main table content all complete now for publishing. Just add the column names too.
 		clientProfileData.add(0, this.CP_LIMITS_DATAVIEW_COLUMN_NAMES);	// No longer as received from parser in receivedColumnNames
 				
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -410,6 +352,7 @@ public class ClientProfileLimitsMonitor extends BaseMonitor implements MonitorCo
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
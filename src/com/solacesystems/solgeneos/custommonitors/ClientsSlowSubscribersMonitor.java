@@ -2,27 +2,17 @@ package com.solacesystems.solgeneos.custommonitors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.RowJoin;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
@@ -74,6 +64,9 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
     // NOTE: "RowUID" is not expected in the SEMP response, but will be added by the parser. However adding it here allows this list to be used as an index where the column number can be searched by name
     
     static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("");
+    
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("message-vpn", "eliding-enabled", "client-username", "profile", "platform");
        
     // What should be the formatting style?
     static final private String FLOAT_FORMAT_STYLE = "%.3f";	// 3 decimal places. Wanted to add thousandth separator but Geneos fails to recognise it as numbers for rule purposes!
@@ -90,11 +83,25 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
     
     static final private int BYTE_TO_MBYTE = 1048576;
 
-    // What is the desired order of columns?
-    private List<Integer> desiredColumnOrder;	// To be set later once actual response is seen for the first time
+    // What is the desired order of columns? (Taken from whichever of the details and stats responses has each column, the details first.)
+    static final private List<String> DESIRED_COLUMN_ORDER = 
+    		Arrays.asList("RowUID", "name", "message-vpn",
+    				"client-address", "client-username", "profile", 
+    				"user", "uptime",
+    				"description", "platform",
+    				"num-subscriptions", "eliding-enabled", "eliding-topics",
+    				"current-egress-rate-per-second", "average-egress-rate-per-minute", 
+    				"current-egress-byte-rate-per-second", "average-egress-byte-rate-per-minute", 
+    				"client-data-messages-sent", "client-data-bytes-sent", 
+    				"total-egress-discards");
+    
+    // Joins the details and stats of each client, by RowUID, straight into the desired order of columns
+    private RowJoin clientsJoin = new RowJoin(DESIRED_COLUMN_ORDER);
+    
+    // How many records to request per page when asking the broker for all of them. Default unless overridden.
+    private int pageSize = SEMPClient.DEFAULT_PAGE_SIZE;
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private TargetedMultiRecordSEMPParser multiRecordParserDetail;
     private TargetedMultiRecordSEMPParser multiRecordParserStats;
 
@@ -128,7 +135,16 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
 		globalHeadlines.put("Custom Monitor", this.getName() + " v" + MONITOR_VERSION);
 		globalHeadlines.put("Sampling Interval (secs)", this.getSamplingRate());		
 	
-		// (3) Retrieve SEMP over HTTP properties from global properties
+		// (3) Are there properties specific to this monitor in its config file?
+		UserPropertiesConfig monitorPropsConfig = SolGeneosAgent.onlyInstance.
+				getUserPropertiesConfig(MONITOR_PROPERTIES_FILE_NAME_PREFIX + this.getName() +MONITOR_PROPERTIES_FILE_NAME_SUFFIX);
+		if (monitorPropsConfig != null && monitorPropsConfig.getProperties() != null) {
+			if (monitorPropsConfig.getProperties().get("pagesize") != null) {
+				pageSize = Integer.parseInt(monitorPropsConfig.getProperties().get("pagesize").toString());
+			}
+		}
+		
+		// (4) Retrieve SEMP over HTTP properties from global properties
 		Properties props = SolGeneosAgent.onlyInstance.getGlobalProperties();
         String host = props.getProperty(MGMT_IP_ADDRESS_PROPERTY_NAME);
         int port = 80;
@@ -142,149 +158,58 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
 		multiRecordParserDetail = new TargetedMultiRecordSEMPParser(RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS_DETAIL, RESPONSE_ELEMENT_NAMES_IGNORE);
 		multiRecordParserStats  = new TargetedMultiRecordSEMPParser(RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS_STATS, RESPONSE_ELEMENT_NAMES_IGNORE);
+		multiRecordParserDetail.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserStats.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
 
 	}
 	
-	// This is called once the actual returned order of columns from the SEMP response is known
-	private void setDesiredColumnOrder (List<String> currentColumnNames) {
-	    
-		desiredColumnOrder = Arrays.asList(
-			currentColumnNames.indexOf("RowUID"), currentColumnNames.indexOf("name"), currentColumnNames.indexOf("message-vpn"),
-    		currentColumnNames.indexOf("client-address"), currentColumnNames.indexOf("client-username"), currentColumnNames.indexOf("profile"), 
-    		currentColumnNames.indexOf("user"), currentColumnNames.indexOf("uptime"),
-    		 currentColumnNames.indexOf("description"), currentColumnNames.indexOf("platform"),
-    		currentColumnNames.indexOf("num-subscriptions"), currentColumnNames.indexOf("eliding-enabled"), currentColumnNames.indexOf("eliding-topics"),
-    		currentColumnNames.indexOf("current-egress-rate-per-second"), currentColumnNames.indexOf("average-egress-rate-per-minute"), 
-    		currentColumnNames.indexOf("current-egress-byte-rate-per-second"), currentColumnNames.indexOf("average-egress-byte-rate-per-minute"), 
-    		currentColumnNames.indexOf("client-data-messages-sent"), currentColumnNames.indexOf("client-data-bytes-sent"), 
-    		currentColumnNames.indexOf("total-egress-discards")
-			);
-	}
-	
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-    
-	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		LinkedHashMap<String, Object> headlines = new LinkedHashMap<String, Object>();
 		
-		submitSEMPQuery(this.SHOW_CLIENTS_REQUEST_DETAIL, multiRecordParserDetail);
-		submitSEMPQuery(this.SHOW_CLIENTS_REQUEST_STATS, multiRecordParserStats);
-		
-		HashMap<String, ArrayList<String>> clientDetailsTableMap; 
-		HashMap<String, ArrayList<String>> clientStatsTableMap;
-		
-		ArrayList<String> clientDetailsTempRow1;
-		ArrayList<String> clientDetailsTempRow2;
+		// Send both SEMP queries at once and wait for their responses...
+		sempClient.waitForAll(
+				sempClient.submitSEMPQueryPagedAsync(this.SHOW_CLIENTS_REQUEST_DETAIL, multiRecordParserDetail, pageSize),
+				sempClient.submitSEMPQueryPagedAsync(this.SHOW_CLIENTS_REQUEST_STATS, multiRecordParserStats, pageSize));
 		
-		List<String> clientsColumnNamesDetail = multiRecordParserDetail.getColumnNames();
-		List<String> clientsColumnNamesStats  = multiRecordParserStats.getColumnNames();
-		
-		// Has the desired column order been determined yet? (Done on the first time responses and their columns came back.)
-		if (this.desiredColumnOrder == null) {
-			// First get the column names from the client details response then merge with columns from stats response
-			// Since will be modifying the column names as supplied, do it to a copy of the List, not the actual one.
-			List<String> tempColumnNamesDetail = new ArrayList<String>();
-			tempColumnNamesDetail.addAll(multiRecordParserDetail.getColumnNames());
-			List<String> tempColumnNamesStats  = new ArrayList<String>();
-			tempColumnNamesStats.addAll(multiRecordParserStats.getColumnNames());
-			
-			tempColumnNamesStats.remove("RowUID");
-			tempColumnNamesStats.remove("name");
-			tempColumnNamesStats.remove("message-vpn");
-			tempColumnNamesDetail.addAll(tempColumnNamesStats);
-			
-			// Then use this merged columns information to set the final display order
-			this.setDesiredColumnOrder(tempColumnNamesDetail);
-		}
-				
-		// Merge the two results together to create the final table for publish...
-		
-		tableContent = new Vector<ArrayList<String>>();
-
-		clientDetailsTableMap = multiRecordParserDetail.getData();
-		clientStatsTableMap = multiRecordParserStats.getData();
-		
-		for (Map.Entry<String, ArrayList<String>> entry : clientDetailsTableMap.entrySet()){			
-			clientDetailsTempRow1 = entry.getValue();
-			clientDetailsTempRow2 = clientStatsTableMap.get(entry.getKey());
-			
-			// Remove the first column that is VPN name from second dataset
-			clientDetailsTempRow2.remove(clientsColumnNamesStats.indexOf("message-vpn"));
-			clientDetailsTempRow2.remove(clientsColumnNamesStats.indexOf("name"));
-			clientDetailsTempRow2.remove(clientsColumnNamesStats.indexOf("RowUID"));
-			
-			// Merge second dataset with first
-			clientDetailsTempRow1.addAll(clientDetailsTempRow2);
-			
-			tableContent.add(clientDetailsTempRow1);
-		}
+		// Merge the two results together to create the final table for publish, in the column order we want...
+		// (Which response each column comes from is worked out from the columns as they came back.)
+		clientsJoin.setTableColumnNames(multiRecordParserDetail.getColumnNames(), multiRecordParserStats.getColumnNames());
+		tableContent = clientsJoin.join(multiRecordParserDetail.getData(), multiRecordParserStats.getData());
 		
 		headlines.putAll(globalHeadlines);
 		String lastSampleTime = SolGeneosAgent.onlyInstance.getCurrentTimeString();
 		headlines.put("Last Sample Time", lastSampleTime);
 		headlines.put("Number of Slow Subscribers", tableContent.size());
 
-		// Rearrange the table into the column order we want
-		tempTableContent = new Vector<ArrayList<String>>();
-		
-		// Iterate to each row in the table contents
-		for (int index = 0; index < tableContent.size(); index++) {
-			
-			// Build a new tableRow by adding to it in the right order 
-			ArrayList<String> tableRow = new ArrayList<String>();
-			
-			for (Integer columnNumber : this.desiredColumnOrder){
-				tableRow.add( (tableContent.get(index)).get(columnNumber));
-			}
-			// Add the newly created row to tempTableContent
-			tempTableContent.add(tableRow); 
-		} 
-		tableContent = tempTableContent;
-		
 		// NOTE: Columns re-ordered from this point onwards, lookup with DATAVIEW_COLUMN_NAMES.
 				
 		// Convert fields in bytes to MBytes
@@ -303,6 +228,7 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
 		tableContent = tempTableContent;		
 		tableContent.add(0, this.DATAVIEW_COLUMN_NAMES);			
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -317,6 +243,7 @@ public class ClientsSlowSubscribersMonitor extends BaseMonitor implements Monito
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
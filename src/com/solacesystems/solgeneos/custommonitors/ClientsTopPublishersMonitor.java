@@ -8,20 +8,11 @@ import java.util.List;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.MultiRecordSEMPParser;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
 import com.solacesystems.solgeneos.solgeneosagent.monitor.BaseMonitor;
@@ -66,8 +57,7 @@ public class ClientsTopPublishersMonitor extends BaseMonitor implements MonitorC
     
     static final private int BYTE_TO_MBYTE = 1048576;
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private MultiRecordSEMPParser multiRecordParser;
 
     private Vector<Object> tableContent;
@@ -113,58 +103,41 @@ public class ClientsTopPublishersMonitor extends BaseMonitor implements MonitorC
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
 		multiRecordParser = new MultiRecordSEMPParser(CLIENT_DETAILS_RESPONSE_ELEMENT_NAME);
 	}
 	
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-    
 	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "static-access", "unchecked" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "static-access", "unchecked" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		LinkedHashMap<String, Object> headlines = new LinkedHashMap<String, Object>();
 		
-		submitSEMPQuery(this.SHOW_CLIENTS_REQUEST, multiRecordParser);
+		sempClient.submitSEMPQuery(this.SHOW_CLIENTS_REQUEST, multiRecordParser);
 		
 		headlines.putAll(globalHeadlines);
 		
@@ -195,6 +168,7 @@ public class ClientsTopPublishersMonitor extends BaseMonitor implements MonitorC
 
 		tableContent.add(0, this.DATAVIEW_COLUMN_NAMES);			
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -206,6 +180,7 @@ public class ClientsTopPublishersMonitor extends BaseMonitor implements MonitorC
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
@@ -2,7 +2,6 @@ package com.solacesystems.solgeneos.custommonitors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -13,21 +12,12 @@ import java.util.TreeMap;
 import java.util.Vector;
 import java.util.stream.Collectors;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
-
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.TopKRows;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
 import com.solacesystems.solgeneos.solgeneosagent.monitor.BaseMonitor;
@@ -72,6 +62,9 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
     
     static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("not-used"); 	
     
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("type", "sync-state", "ownership", "stale");
+    
     // What is the desired order of columns? (Will be set after first getting a response)
     private List<Integer> desiredColumnOrder;
     
@@ -82,8 +75,7 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
     				"Remote Routers Count (Out-Of-Sync)", "Remote Routers Count (Stale)", "Remote Routers List"
     				));
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private TargetedMultiRecordSEMPParser multiRecordParserDetails;
     private TargetedMultiRecordSEMPParser multiRecordParserRemote;
     private Vector<ArrayList<String>> receivedTableContent;
@@ -95,20 +87,28 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
     // What is the maximum number of rows to limit the dataview to? Default 200 unless overridden.
     private int maxRows = 200;
     
-    // When sorting the table rows before limiting to maxrows, how to prioritise the top of the cut?    
-    // This comparator is used to sort the table so the rows with the lowest time in state are at the top
-    static class TimeInStateSecsComparator implements Comparator<Object>
+    // When limiting the table rows to maxrows, how to prioritise the top of the cut? Lowest ranks first:
+    // (1) Out-Of-Sync, (2) Remote Stale, (3) Remote Out-Of-Sync, each in the order received, then (4) the remainder by lowest time in state.
+    // Each is a band of its own, clear of any time in state.
+    static final private double PRIORITY_BAND = 4294967296.0;	// 2^32
+    
+    static double getPriority(ArrayList<String> tableRow)
     {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	int nTimeInStatsSecs1 = Integer.parseInt( ((ArrayList<String>)tableRow1).get( COLUMN_NAME_OVERRIDE.indexOf("Time In State (secs)") ));
-        	int nTimeInStatsSecs2 = Integer.parseInt( ((ArrayList<String>)tableRow2).get( COLUMN_NAME_OVERRIDE.indexOf("Time In State (secs)") ));
-        	
-            return Integer.compare(nTimeInStatsSecs1, nTimeInStatsSecs2);	
-        }
+    	if (tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Sync State")).equalsIgnoreCase("Out-Of-Sync")) {
+    		return 0;
+    	}
+    	if (Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Stale)"))) > 0) {
+    		return PRIORITY_BAND;
+    	}
+    	if (Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Out-Of-Sync)"))) > 0) {
+    		return 2 * PRIORITY_BAND;
+    	}
+    	// Something changed more recently and might be noteworthy
+    	return 3 * PRIORITY_BAND + Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Time In State (secs)") ));
     }
     
+    // The rows that make the cut, ranked by their priority
+    private TopKRows priorityRanker;
     
     /**
      * This method is called after initialisation but before the monitor is started.
@@ -149,6 +149,7 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
 			maxRows = Integer.parseInt(monitorPropsConfig.getProperties().get("maxrows").toString());
 		}
 		globalHeadlines.put("Maximum rows to display", maxRows);
+		priorityRanker = new TopKRows(maxRows, false);
 		
 		
 		// (4) Retrieve SEMP over HTTP properties from global properties
@@ -165,22 +166,8 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
         
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records, and the element name for nested level 2 records
 		multiRecordParserDetails = new TargetedMultiRecordSEMPParser(
@@ -190,6 +177,9 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
 				RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS, RESPONSE_ELEMENT_NAMES_IGNORE, 
 				RESPONSE_ELEMENT_NAME_ROWS_L2, RESPONSE_COLUMNS_L2);
 		
+		multiRecordParserDetails.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserRemote.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		
 		// Tell the parser how to construct the RowUID. Default its 'name' and 'message-vpn' concatenated. 
 		// In this case 'name' will hold the message-vpn name, can use the 'type' to ensure uniqueness of the RowUID 
 		multiRecordParserDetails.setSempVpnTag("name");
@@ -207,37 +197,34 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
 		);
 	}
 
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		LinkedHashMap<String, Object> headlines;
 		
-		submitSEMPQuery(SHOW_CONFIG_SYNC_REQUEST, multiRecordParserDetails);
-		submitSEMPQuery(SHOW_CONFIG_SYNC_REMOTE_REQUEST, multiRecordParserRemote);
+		sempClient.submitSEMPQuery(SHOW_CONFIG_SYNC_REQUEST, multiRecordParserDetails);
+		sempClient.submitSEMPQuery(SHOW_CONFIG_SYNC_REMOTE_REQUEST, multiRecordParserRemote);
 		
 		List<String> currentColumnNames = multiRecordParserDetails.getColumnNames();
 		List<String> currentL2ColumnNames = multiRecordParserRemote.getColumnNamesLevel2();
@@ -351,66 +338,17 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
 		// Does the number of rows exceed the max rows limit? If so, how to prioritise what shows?
 		if (nTotalEntries > maxRows) {
 			
-			tempTableContent = new Vector<ArrayList<String>>();
-			Vector<ArrayList<String>> tempRemainderTableContent1 = new Vector<ArrayList<String>>();
-			Vector<ArrayList<String>> tempRemainderTableContent2 = new Vector<ArrayList<String>>();
-			
-			// (1) Get the Out-Of-Sync
-			tempTableContent.addAll(
-					receivedTableContent
-					.stream()
-					.filter(tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Sync State")).equalsIgnoreCase("Out-Of-Sync"))
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-					);
-			
-			tempRemainderTableContent1 = 
-					receivedTableContent
-					.stream()
-					.filter(tableRow -> !tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Sync State")).equalsIgnoreCase("Out-Of-Sync"))
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new));
-			
-			// (2) Get the Remote Stale
-			tempTableContent.addAll(
-					tempRemainderTableContent1
-					.stream()
-					.filter(tableRow -> Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Stale)"))) > 0)
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-					);
-			
-			tempRemainderTableContent2 = 
-					tempRemainderTableContent1
-					.stream()
-					.filter(tableRow -> Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Stale)"))) == 0)
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new));
-			
-			// (3) Get the Remote Out-Of-Sync
-			tempTableContent.addAll(
-					tempRemainderTableContent2
-					.stream()
-					.filter(tableRow -> Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Out-Of-Sync)"))) > 0)
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-					);
-			
-			tempRemainderTableContent1 = 
-					tempRemainderTableContent2
-					.stream()
-					.filter(tableRow -> Integer.parseInt(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Remote Routers Count (Out-Of-Sync)"))) == 0)
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new));
-			
-			// (4) Get the remainder, sorted by time-in-state-seconds as something changed and might be noteworthy
-			tempTableContent.addAll(
-					tempRemainderTableContent1
-					.stream()
-					.sorted(new TimeInStateSecsComparator())
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-					);
+			// Rank each row by its priority, keeping just the rows that make the cut, in priority order
+			priorityRanker.clear();
+			for (int index = 0; index < receivedTableContent.size(); index++) {
+				priorityRanker.offer(index, getPriority(receivedTableContent.get(index)));
+			}
 			
-			// Now that prioritised list, cut at the row limit:
-			receivedTableContent = 
-					tempTableContent
-					.stream()
-					.limit(maxRows)
-					.collect(Collectors.toCollection(Vector<ArrayList<String>>::new));
+			tempTableContent = new Vector<ArrayList<String>>();
+			for (int index : priorityRanker.getRows()) {
+				tempTableContent.add(receivedTableContent.get(index));
+			}
+			receivedTableContent = tempTableContent;
 		}
 		
 			
@@ -427,6 +365,7 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
 		// Table content all complete now for publishing. Just add the column names too.
 		receivedTableContent.add(0, this.COLUMN_NAME_OVERRIDE);	// No longer as received from parser in receivedColumnNames
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish each table to the available views... (Either one per VPN, or a default combined one.)
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -440,6 +379,7 @@ public class ConfigSyncStatusMonitor extends BaseMonitor implements MonitorConst
     			}
     		}    		
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 
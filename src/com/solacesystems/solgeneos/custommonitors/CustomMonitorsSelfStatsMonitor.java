@@ -0,0 +1,160 @@
+package com.solacesystems.solgeneos.custommonitors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
+import com.solacesystems.solgeneos.custommonitors.util.MonitorStats;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCircuitBreaker;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.StatsHistogram;
+import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
+import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
+import com.solacesystems.solgeneos.solgeneosagent.monitor.BaseMonitor;
+import com.solacesystems.solgeneos.solgeneosagent.monitor.View;
+
+/**
+ * Publishes the self-monitoring statistics of all the other custom monitors in the agent, to show which monitor
+ * is loading the broker with its SEMP requests or the agent JVM with its parsing and processing.
+ */
+public class CustomMonitorsSelfStatsMonitor extends BaseMonitor implements MonitorConstants {
+
+	// What version of the monitor?
+	static final public String MONITOR_VERSION = "1.0";
+
+	// The row for each monitor's collect phases, as opposed to the rows for each of its SEMP requests
+	static final private String COLLECT_ROW_NAME = "(collect)";
+
+    static final private List<String> DATAVIEW_COLUMN_NAMES =
+    		Arrays.asList("RowUID", "Monitor", "SEMP Request", "Samples",
+    				"HTTP Time (ms) - Avg", "HTTP Time (ms) - P95", "HTTP Time (ms) - Max",
+    				"Bytes Received - Avg", "Bytes Received - Max",
+    				"Parse Time (ms) - Avg", "Parse Time (ms) - P95",
+    				"Rows - Last", "Rows - Max",
+    				"Collect Time (ms) - Avg", "Collect Time (ms) - P95",
+    				"Transform Time (ms) - Avg", "Transform Time (ms) - P95",
+    				"Publish Time (ms) - Avg", "Publish Time (ms) - P95",
+    				"Aborted Collects");
+
+    // What should be the formatting style?
+    static final private String FLOAT_FORMAT_STYLE = "%.3f";	// 3 decimal places. Wanted to add thousandth separator but Geneos fails to recognise it as numbers for rule purposes!
+
+    private Vector<Object> tableContent;
+    private LinkedHashMap<String, Object> globalHeadlines = new LinkedHashMap<String, Object>();
+
+    /**
+     * This method is called after initialisation but before the monitor is started.
+     *
+     * It is a good place to initialise any instance variables.
+     */
+	@Override
+	protected void onPostInitialize() throws Exception {
+
+		// Setup global headlines once to use on each onCollect()
+
+		// (1) Are there global headlines to apply to the views created by this monitor?
+		UserPropertiesConfig globalHeadlinesPropsConfig = SolGeneosAgent.onlyInstance.
+				getUserPropertiesConfig(GLOBAL_HEADLINES_PROPERTIES_FILE_NAME);
+		// If the file exists and its not empty, add each property as a headline:
+		if (globalHeadlinesPropsConfig != null && globalHeadlinesPropsConfig.getProperties() != null) {
+			globalHeadlinesPropsConfig.getProperties().forEach((key, value) -> globalHeadlines.put(key.toString() , value.toString()));
+		}
+
+		// (2) Add this monitor's important details as headlines
+		globalHeadlines.put("Custom Monitor", this.getName() + " v" + MONITOR_VERSION);
+		globalHeadlines.put("Sampling Interval (secs)", this.getSamplingRate());
+	}
+
+	/**
+	 * This method is responsible to collect data required for a view.
+	 * @return The next monitor state which should be State.REPORTING_QUEUE.
+	 */
+	@Override
+	protected State onCollect() throws Exception {
+
+		TreeMap<String, View> viewMap = getViewMap();
+		LinkedHashMap<String, Object> headlines = new LinkedHashMap<String, Object>();
+
+		headlines.putAll(globalHeadlines);
+		headlines.put("Last Sample Time", SolGeneosAgent.onlyInstance.getCurrentTimeString());
+
+		List<MonitorStats> allMonitorStats = MonitorStats.getAllMonitorStats();
+		headlines.put("Monitors Reporting", allMonitorStats.size());
+
+		// The state of the circuit breaker for each broker being polled
+		for (SEMPCircuitBreaker circuitBreaker : SEMPClient.getCircuitBreakers()) {
+			headlines.put("Circuit Breaker - " + circuitBreaker.getBrokerName(), circuitBreaker.describeState());
+		}
+
+		// Build the table, with the collect row of each monitor followed by a row for each of its SEMP requests
+		tableContent = new Vector<Object>();
+
+		for (MonitorStats monitorStats : allMonitorStats) {
+
+			ArrayList<String> tableRow = newTableRow(monitorStats.getMonitorName(), COLLECT_ROW_NAME, monitorStats.getCollectTimeMicros().getCount());
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Collect Time (ms) - Avg"), formatMillis(monitorStats.getCollectTimeMicros().getMean()));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Collect Time (ms) - P95"), formatMillis(monitorStats.getCollectTimeMicros().getPercentile(95)));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Transform Time (ms) - Avg"), formatMillis(monitorStats.getTransformTimeMicros().getMean()));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Transform Time (ms) - P95"), formatMillis(monitorStats.getTransformTimeMicros().getPercentile(95)));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Publish Time (ms) - Avg"), formatMillis(monitorStats.getPublishTimeMicros().getMean()));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Publish Time (ms) - P95"), formatMillis(monitorStats.getPublishTimeMicros().getPercentile(95)));
+			tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Aborted Collects"), Long.toString(monitorStats.getAbortedCollects()));
+			tableContent.add(tableRow);
+
+			for (Map.Entry<String, MonitorStats.QueryStats> queryStatsEntry : monitorStats.getQueryStats().entrySet()) {
+
+				MonitorStats.QueryStats queryStats = queryStatsEntry.getValue();
+				StatsHistogram httpTime = queryStats.getHttpTimeMicros();
+
+				tableRow = newTableRow(monitorStats.getMonitorName(), queryStatsEntry.getKey(), httpTime.getCount());
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("HTTP Time (ms) - Avg"), formatMillis(httpTime.getMean()));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("HTTP Time (ms) - P95"), formatMillis(httpTime.getPercentile(95)));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("HTTP Time (ms) - Max"), formatMillis(httpTime.getMax()));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Bytes Received - Avg"), Long.toString(Math.round(queryStats.getBytesReceived().getMean())));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Bytes Received - Max"), Long.toString(queryStats.getBytesReceived().getMax()));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Parse Time (ms) - Avg"), formatMillis(queryStats.getParseTimeMicros().getMean()));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Parse Time (ms) - P95"), formatMillis(queryStats.getParseTimeMicros().getPercentile(95)));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Rows - Last"), Long.toString(queryStats.getRowCount().getLast()));
+				tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Rows - Max"), Long.toString(queryStats.getRowCount().getMax()));
+				tableContent.add(tableRow);
+			}
+		}
+
+		// Add the column names
+		tableContent.add(0, DATAVIEW_COLUMN_NAMES);
+
+		// Now ready to publish tables to the view map
+    	if (viewMap != null && viewMap.size() > 0) {
+    		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();)
+    		{
+    			View view = viewMap.get(viewIt.next());
+    			if (view.isActive()) {
+    				view.setHeadlines(headlines);
+    				view.setTableContent(tableContent);
+    			}
+    		}
+    	}
+        return State.REPORTING_QUEUE;
+	}
+
+	// A row with the identifying columns set, and all the statistics columns empty
+	private ArrayList<String> newTableRow(String monitorName, String rowName, long samples) {
+		ArrayList<String> tableRow = new ArrayList<String>(DATAVIEW_COLUMN_NAMES.size());
+		DATAVIEW_COLUMN_NAMES.forEach(columnName -> tableRow.add(""));
+		tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("RowUID"), monitorName + "?" + rowName);
+		tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Monitor"), monitorName);
+		tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("SEMP Request"), rowName);
+		tableRow.set(DATAVIEW_COLUMN_NAMES.indexOf("Samples"), Long.toString(samples));
+		return tableRow;
+	}
+
+	private String formatMillis(double micros) {
+		return String.format(FLOAT_FORMAT_STYLE, micros / 1000);
+	}
+}
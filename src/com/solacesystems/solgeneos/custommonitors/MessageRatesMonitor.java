@@ -10,7 +10,6 @@ import java.time.LocalDateTime;
 import java.time.temporal.WeekFields;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -19,23 +18,14 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import java.util.stream.Collectors;
-
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 
 import com.solacesystems.solgeneos.custommonitors.util.RatesHWM;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.RowAggregator;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
+import com.solacesystems.solgeneos.custommonitors.util.TopKRows;
 import com.solacesystems.solgeneos.custommonitors.util.VPNRecordSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
@@ -71,12 +61,27 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
     				"locally-configured");
     
     static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("authentication", "ingress-discards", "egress-discards", "certificate-revocation-check-stats");
+    
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("name", "locally-configured");
      	
     // What should be the formatting style?
     static final private String FLOAT_FORMAT_STYLE = "%.2f";	// 2 decimal places
     		
     // What is the desired order of columns? (Will be set after first getting a response)
-    private List<Integer> desiredColumnOrder;
+    static final private List<String> DESIRED_COLUMN_ORDER = 
+    		Arrays.asList("name", 
+    				"current-ingress-rate-per-second", "current-egress-rate-per-second",
+    				"average-ingress-rate-per-minute", "average-egress-rate-per-minute",
+    				"current-ingress-byte-rate-per-second", "current-egress-byte-rate-per-second",
+    				"average-ingress-byte-rate-per-minute", "average-egress-byte-rate-per-minute",
+    				
+    				"client-data-messages-received", "client-data-messages-sent", "client-persistent-messages-received", "client-persistent-messages-sent",
+    				"client-non-persistent-messages-received", "client-non-persistent-messages-sent", "client-direct-messages-received", "client-direct-messages-sent",
+    				
+    				"client-data-bytes-received", "client-data-bytes-sent", "client-persistent-bytes-received", "client-persistent-bytes-sent",
+    				"client-non-persistent-bytes-received", "client-non-persistent-bytes-sent", "client-direct-bytes-received", "client-direct-bytes-sent");
+    private int[] desiredColumnOrder;
     
     // Override the column names to more human friendly
     static final private List<String> COLUMN_NAME_OVERRIDE = 
@@ -101,6 +106,20 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
     
     static final private int COMPUTED_COLUMN_COUNT = 4;		// Knowing the size can be used to more efficiently call the constructor for the ArrayList<String>...
     
+    // Which of the reordered columns are totalled for the headlines, by their names in COLUMN_NAME_OVERRIDE
+    static final private List<String> HEADLINE_RATE_COLUMNS = 
+    		Arrays.asList("Current Ingress Msg Rate", "Current Egress Msg Rate", "Current Ingress Byte Rate", "Current Egress Byte Rate", 
+    				"Average Ingress Msg Rate", "Average Egress Msg Rate", "Average Ingress Byte Rate", "Average Egress Byte Rate");
+    
+    // Which of the reordered columns are summed for each computed column. (Indexes as if the computed columns were not there yet.)
+    // They are looked up by the names in COLUMN_NAME_OVERRIDE, the same way as the headline totals, so the two always agree.
+    static final private int[] COMPUTED_COLUMN_INGRESS = {
+    		COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Msg Rate") - COMPUTED_COLUMN_COUNT, COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Msg Rate") - COMPUTED_COLUMN_COUNT,
+    		COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Byte Rate") - COMPUTED_COLUMN_COUNT, COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Byte Rate") - COMPUTED_COLUMN_COUNT };
+    static final private int[] COMPUTED_COLUMN_EGRESS = {
+    		COLUMN_NAME_OVERRIDE.indexOf("Current Egress Msg Rate") - COMPUTED_COLUMN_COUNT, COLUMN_NAME_OVERRIDE.indexOf("Average Egress Msg Rate") - COMPUTED_COLUMN_COUNT,
+    		COLUMN_NAME_OVERRIDE.indexOf("Current Egress Byte Rate") - COMPUTED_COLUMN_COUNT, COLUMN_NAME_OVERRIDE.indexOf("Average Egress Byte Rate") - COMPUTED_COLUMN_COUNT };
+    
     static final private int BYTE_TO_MBYTE = 1048576;
     
     static final private int TOP_TALKERS_LIMIT = 3;	// How many VPNs to list in the "top talkers" headlines?
@@ -112,9 +131,12 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
     static final private String SZ_PATH_HWM_MONTHLY = "logs/messageRatesHWM_monthly.ser";
     static final private String SZ_PATH_HWM_YEARLY = "logs/messageRatesHWM_yearly.ser";
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private VPNRecordSEMPParser multiRecordParser;
+    // The ingress and egress rate totals, kept up to date by the parser as each VPN is parsed
+    private RowAggregator headlineAggregator;
+    // The VPNs with the highest average byte rate, at most maxrows of them, ranked by the parser as each VPN is parsed
+    private TopKRows topTalkersRanker;
 
     private Vector<Object> receivedTableContent;
     private Vector<Object> tempTableContent;		// Used in the various stages of manipulating the received table
@@ -133,25 +155,9 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
     private int maxRows = 200;
 
     private LocalDateTime sampleTime;
-    private Integer localConfigurationStatusColumnID;	// Save this to prevent lookup on each sample
 
     
     
-    // When sorting the table rows before limiting to maxrows, how to prioritise the top of the cut?
-    // This comparator is used to sort the table so the highest average message rate is at the top of the table
-    // Note: Assuming the sort is done after columns re-ordered and computed columns added. So use lookup via COLUMN_NAME_OVERRIDE
-    static class RatesComparator implements Comparator<Object>
-    {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	double currentMsgRate1 = Double.parseDouble( ((ArrayList<String>)tableRow1).get(COLUMN_NAME_OVERRIDE.indexOf("Average Byte Rate") ));
-        	double currentMsgRate2 = Double.parseDouble( ((ArrayList<String>)tableRow2).get(COLUMN_NAME_OVERRIDE.indexOf("Average Byte Rate") ));
-
-            return Double.compare(currentMsgRate2, currentMsgRate1);	
-        }
-    }
-    
     /**
      * This method is called after initialisation but before the monitor is started.
      * 
@@ -206,25 +212,30 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
 		multiRecordParser = new VPNRecordSEMPParser(RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS, RESPONSE_ELEMENT_NAMES_IGNORE);
+		multiRecordParser.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		// VPN entries that are 'locally-configured=false' are not full VPN entries, but discovered from the Multi-Node Routing Network.
+		// Drop them as they are parsed rather than carry them to onCollect() only to throw them away.
+		multiRecordParser.addRowFilter("locally-configured", "true"::equalsIgnoreCase);
+		
+		// Have the parser total the rates of the VPNs it keeps as it goes, named after the table columns summed.
+		// (Each total is of the element that ends up in that column of the table, so the headlines agree with the table.)
+		headlineAggregator = new RowAggregator();
+		for (String rateColumn : HEADLINE_RATE_COLUMNS) {
+			headlineAggregator.addSum(rateColumn, DESIRED_COLUMN_ORDER.get(COLUMN_NAME_OVERRIDE.indexOf(rateColumn) - COMPUTED_COLUMN_COUNT));
+		}
+		multiRecordParser.setRowAggregator(headlineAggregator);
+		
+		// When limiting the table rows to maxrows, how to prioritise the top of the cut?
+		// Have the parser rank the VPNs as it goes so the highest average byte rate is at the top of the table, keeping no more than make the cut.
+		topTalkersRanker = new TopKRows(maxRows, true);
+		topTalkersRanker.setKeyColumns(Arrays.asList("average-ingress-byte-rate-per-minute", "average-egress-byte-rate-per-minute"),
+				values -> values[0] + values[1]);
+		multiRecordParser.setRowRanker(topTalkersRanker);
 		
 		// (5) Create the High Water Mark objects for each interested metric to do it for...
 		initHWMs();
@@ -370,62 +381,51 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
 	
 	private void setDesiredColumnOrder (List<String> currentColumnNames) {
 	    
-		desiredColumnOrder = Arrays.asList(
-				currentColumnNames.indexOf("name"), 
-				currentColumnNames.indexOf("current-ingress-rate-per-second"), currentColumnNames.indexOf("current-egress-rate-per-second"),
-				currentColumnNames.indexOf("average-ingress-rate-per-minute"), currentColumnNames.indexOf("average-egress-rate-per-minute"),
-				currentColumnNames.indexOf("current-ingress-byte-rate-per-second"), currentColumnNames.indexOf("current-egress-byte-rate-per-second"),
-				currentColumnNames.indexOf("average-ingress-byte-rate-per-minute"), currentColumnNames.indexOf("average-egress-byte-rate-per-minute"),
-				
-				currentColumnNames.indexOf("client-data-messages-received"), currentColumnNames.indexOf("client-data-messages-sent"), currentColumnNames.indexOf("client-persistent-messages-received"), currentColumnNames.indexOf("client-persistent-messages-sent"),
-				currentColumnNames.indexOf("client-non-persistent-messages-received"), currentColumnNames.indexOf("client-non-persistent-messages-sent"), currentColumnNames.indexOf("client-direct-messages-received"), currentColumnNames.indexOf("client-direct-messages-sent"),
-				
-				currentColumnNames.indexOf("client-data-bytes-received"), currentColumnNames.indexOf("client-data-bytes-sent"), currentColumnNames.indexOf("client-persistent-bytes-received"), currentColumnNames.indexOf("client-persistent-bytes-sent"),
-				currentColumnNames.indexOf("client-non-persistent-bytes-received"), currentColumnNames.indexOf("client-non-persistent-bytes-sent"), currentColumnNames.indexOf("client-direct-bytes-received"), currentColumnNames.indexOf("client-direct-bytes-sent")
-		);
+		List<Integer> columnOrder = new ArrayList<Integer>(DESIRED_COLUMN_ORDER.size());
+		for (String columnName : DESIRED_COLUMN_ORDER) {
+			columnOrder.add(currentColumnNames.indexOf(columnName));
+		}
 		
 		// Did any expected field above not get found in the SEMP response? Report error if so...
-		if (desiredColumnOrder.contains(-1)) {
+		if (columnOrder.contains(-1)) {
 			getLogger().error(
 					"Not all expected fields were present in the SEMP response when setting the column order. " 
 					+ "Available columns: " + currentColumnNames.toString()
-					+ "Final ordering as set: " + desiredColumnOrder.toString()
+					+ "Final ordering as set: " + columnOrder.toString()
 					);
 		}
+		desiredColumnOrder = columnOrder.stream().mapToInt(Integer::intValue).toArray();
 	}
 
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "unchecked", "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		
 		LinkedHashMap<String, Object> headlines;
 		LinkedHashMap<String, Object> headlinesHWM;
 		
-		submitSEMPQuery(SHOW_VPN_RATES_REQUEST, multiRecordParser);
+		sempClient.submitSEMPQuery(SHOW_VPN_RATES_REQUEST, multiRecordParser);
 		List<String> currentColumnNames = multiRecordParser.getColumnNames();
 
 		// Will take what is received as the table contents and then do further processing and adjusting... 
@@ -436,78 +436,33 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
 			this.setDesiredColumnOrder(currentColumnNames);
 		}
 		
-		// First remove VPN entries that are 'locally-configured=false', they are not full VPN entries, but discovered from the Multi-Node Routing Network
-		// Will iterate the initial 'dirty' VPN data and filter rows to create the 'clean' VPN data. 
+		// (VPN entries that are 'locally-configured=false' were already dropped by the parser's row filter.)
 		
-		ArrayList<String> tableRowVpn ;
-		String localConfigurationStatus;
-		tempTableContent = new Vector<Object>();
+		// Only the VPNs that make the cut of maxrows are needed, in the order the parser ranked them, highest average byte rate first.
+		// Each is built into its final row in one go: the VPN name, the ingress+egress sums, then the rest of the columns in the order we want.
+		// (The columns keep the names and order they always had, which the headline totals follow too.)
 		
-		if (localConfigurationStatusColumnID == null) {
-			localConfigurationStatusColumnID = currentColumnNames.indexOf("locally-configured");
-		}
+		int[] topTalkerRows = topTalkersRanker.getRows();
+		tempTableContent = new Vector<Object>(topTalkerRows.length + 1);
+		tempTableContent.add(COLUMN_NAME_OVERRIDE);	// No longer as received from parser in receivedColumnNames
 		
-		for (int index = 0; index < receivedTableContent.size(); index++) {
+		for (int index : topTalkerRows) {
 			
-			tableRowVpn = (ArrayList<String>) receivedTableContent.get(index);
-			localConfigurationStatus = tableRowVpn.get(localConfigurationStatusColumnID);
+			ArrayList<String> receivedRow = (ArrayList<String>) receivedTableContent.get(index);
+			ArrayList<String> tableRow = new ArrayList<String>(desiredColumnOrder.length + COMPUTED_COLUMN_COUNT);
 			
-			if (localConfigurationStatus.equalsIgnoreCase("true")) {
-				tempTableContent.add(tableRowVpn);
+			tableRow.add(receivedRow.get(desiredColumnOrder[0]));
+			// 4 computed columns after the vpn name column
+			for (int computedColumn = 0; computedColumn < COMPUTED_COLUMN_COUNT; computedColumn++) {
+				long ingressRate = Long.parseLong(receivedRow.get(desiredColumnOrder[COMPUTED_COLUMN_INGRESS[computedColumn]]));
+				long egressRate = Long.parseLong(receivedRow.get(desiredColumnOrder[COMPUTED_COLUMN_EGRESS[computedColumn]]));
+				tableRow.add(Long.toString(ingressRate + egressRate));
 			}
-		}  
-		
-		receivedTableContent = tempTableContent;
-		
-		// Now reorder data into the column order we want versus what came from the parser
-		
-		tempTableContent = new Vector<Object>();
-		// Iterate to each row in the table contents
-		for (int index = 0; index < receivedTableContent.size(); index++) {
-			
-			// Build a new tableRow by adding to it in the right order 
-			ArrayList<String> tableRow = new ArrayList<String>();
-			
-			for (Integer columnNumber : this.desiredColumnOrder){
-				tableRow.add( ((ArrayList<String>)receivedTableContent.get(index)).get(columnNumber));
+			for (int column = 1; column < desiredColumnOrder.length; column++) {
+				tableRow.add(receivedRow.get(desiredColumnOrder[column]));
 			}
-			// Add the newly created row to reorderedTableContent
-			tempTableContent.add(tableRow); 
-		}  
-		
-		receivedTableContent = tempTableContent;
-		
-		// Add some computed columns to the reordered table, will all be inserted together
-		tempTableContent = new Vector<Object>();
-		
-		ArrayList<String> tableRow;
-		ArrayList<String> computedTableColumns;
-		for (int i = 0; i < receivedTableContent.size(); i++) {
-			
-			tableRow = (ArrayList<String>) receivedTableContent.get(i);
-			computedTableColumns = new ArrayList<String>(COMPUTED_COLUMN_COUNT);
-			
-			// NOTE: Until this column addition is done, the index as received from COLUMN_NAME_OVERRIDE is off by the number of columns to add (COMPUTED_COLUMN_COUNT).
-			
-			long ingressCurrentMsgRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Msg Rate") - COMPUTED_COLUMN_COUNT ));
-			long egressCurrentMsgRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Current Egress Msg Rate") - COMPUTED_COLUMN_COUNT));
-			computedTableColumns.add(Long.toString(ingressCurrentMsgRate + egressCurrentMsgRate) );
-			
-			long ingressAverageMsgRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Msg Rate") - COMPUTED_COLUMN_COUNT));
-			long egressAverageMsgRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Average Egress Msg Rate") - COMPUTED_COLUMN_COUNT));
-			computedTableColumns.add(Long.toString(ingressAverageMsgRate + egressAverageMsgRate) );
-			
-			long ingressCurrentByteRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Byte Rate") - COMPUTED_COLUMN_COUNT));
-			long egressCurrentByteRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Current Egress Byte Rate") - COMPUTED_COLUMN_COUNT));
-			computedTableColumns.add(Long.toString(ingressCurrentByteRate + egressCurrentByteRate) );
-			
-			long ingressAverageByteRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Byte Rate") - COMPUTED_COLUMN_COUNT));
-			long egressAverageByteRate = Long.parseLong(tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Average Egress Byte Rate") - COMPUTED_COLUMN_COUNT));
-			computedTableColumns.add(Long.toString(ingressAverageByteRate + egressAverageByteRate) );
-
-			tableRow.addAll(1, computedTableColumns);		// 4 new columns after the vpn name column
 			tempTableContent.add(tableRow);
-        }		
+		}
 		
 		receivedTableContent = tempTableContent;
 		
@@ -522,92 +477,23 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
 		headlinesHWM.putAll(globalHeadlines);		
 		headlinesHWM.put("Last Sample Time", SolGeneosAgent.onlyInstance.getCurrentTimeString());
 		
-		// Build up some summary headlines on the data. 
+		// Build up some summary headlines on the data, from the ingress and egress rates the parser totalled as it went. 
 		
-		long currentMsgRate = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double currentByteRate = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
-		
-		long averageMsgRate = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double averageByteRate = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
-		
-		long currentMsgRateIngress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double currentByteRateIngress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Ingress Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
-		
-		long averageMsgRateIngress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double averageByteRateIngress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Ingress Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
-		
-		long currentMsgRateEgress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Egress Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double currentByteRateEgress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Current Egress Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
-		
-		long averageMsgRateEgress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Egress Msg Rate") ) )	
-				.mapToLong(Long::parseLong)
-				.sum() ;
-
-		double averageByteRateEgress = 
-				receivedTableContent
-				.stream()
-				.map( thisTableRow -> ((ArrayList<String>)thisTableRow).get( COLUMN_NAME_OVERRIDE.indexOf("Average Egress Byte Rate") ) )	
-				.mapToDouble(Double::parseDouble)
-				.sum() ;
+		long currentMsgRateIngress = headlineAggregator.getLong("Current Ingress Msg Rate");
+		long currentMsgRateEgress = headlineAggregator.getLong("Current Egress Msg Rate");
+		long currentMsgRate = currentMsgRateIngress + currentMsgRateEgress;
+		
+		long averageMsgRateIngress = headlineAggregator.getLong("Average Ingress Msg Rate");
+		long averageMsgRateEgress = headlineAggregator.getLong("Average Egress Msg Rate");
+		long averageMsgRate = averageMsgRateIngress + averageMsgRateEgress;
+		
+		double currentByteRateIngress = headlineAggregator.getLong("Current Ingress Byte Rate");
+		double currentByteRateEgress = headlineAggregator.getLong("Current Egress Byte Rate");
+		double currentByteRate = currentByteRateIngress + currentByteRateEgress;
 		
+		double averageByteRateIngress = headlineAggregator.getLong("Average Ingress Byte Rate");
+		double averageByteRateEgress = headlineAggregator.getLong("Average Egress Byte Rate");
+		double averageByteRate = averageByteRateIngress + averageByteRateEgress;
 		
 		// (Geneos does not support long values.)
 		headlines.put("Current Msg Rate", Long.toString(currentMsgRate) );
@@ -625,30 +511,17 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
 		headlines.put("Average MByte Rate (Egress)", String.format(FLOAT_FORMAT_STYLE, averageByteRateEgress / BYTE_TO_MBYTE) );
 		
 		
-		// Sort the list to show entries needing attention near to the top. Then also limit to the max row count if exceeding it...
-		Vector<Object> tempTableContent = new Vector<Object>();
-		
-		tempTableContent.addAll(
-				receivedTableContent
-				.stream()
-				.sorted(new RatesComparator())	// Currently highest average byte rate is at the top...
-				.limit(maxRows)				// Then cut the rows at max limit
-				.collect(Collectors.toCollection(Vector<Object>::new))
-				);
-		
-		receivedTableContent = tempTableContent;	
-		
+		// (The rows start after the column names, the VPN name is the first column.)
 		for (int i = 0; i < this.TOP_TALKERS_LIMIT; i++) {
-			headlines.put("Top Talker #" + (i + 1), ((ArrayList<String>)receivedTableContent.get(i)).get(this.COLUMN_NAME_OVERRIDE.indexOf("Message VPN"))   );
+			headlines.put("Top Talker #" + (i + 1), ((ArrayList<String>)receivedTableContent.get(i + 1)).get(0)   );
 		}
 		
 		// Top 3 Talkers just for the HWM dataview:
-		String topTalkerVPN1 = (receivedTableContent.size() > 0) ? ((ArrayList<String>)receivedTableContent.get(0)).get(this.COLUMN_NAME_OVERRIDE.indexOf("Message VPN")) : ""; 
-		String topTalkerVPN2 = (receivedTableContent.size() > 1) ? ((ArrayList<String>)receivedTableContent.get(1)).get(this.COLUMN_NAME_OVERRIDE.indexOf("Message VPN")) : ""; 
-		String topTalkerVPN3 = (receivedTableContent.size() > 2) ? ((ArrayList<String>)receivedTableContent.get(2)).get(this.COLUMN_NAME_OVERRIDE.indexOf("Message VPN")) : ""; 
+		String topTalkerVPN1 = (receivedTableContent.size() > 1) ? ((ArrayList<String>)receivedTableContent.get(1)).get(0) : ""; 
+		String topTalkerVPN2 = (receivedTableContent.size() > 2) ? ((ArrayList<String>)receivedTableContent.get(2)).get(0) : ""; 
+		String topTalkerVPN3 = (receivedTableContent.size() > 3) ? ((ArrayList<String>)receivedTableContent.get(3)).get(0) : ""; 
 
-		// Main table content all complete now for publishing. Just add the column names too.
-		receivedTableContent.add(0, this.COLUMN_NAME_OVERRIDE);	// No longer as received from parser in receivedColumnNames
+		// Main table content all complete now for publishing, column names and all.
 		
 		// Setup HWM dataview table content too, column names first
 		hwmTableContent = new Vector<Object>();
@@ -744,6 +617,7 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
 		serializeHWM(messageRatesHWM_monthly, SZ_PATH_HWM_MONTHLY);
 		serializeHWM(messageRatesHWM_yearly, SZ_PATH_HWM_YEARLY);
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -765,6 +639,7 @@ public class MessageRatesMonitor extends BaseMonitor implements MonitorConstants
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
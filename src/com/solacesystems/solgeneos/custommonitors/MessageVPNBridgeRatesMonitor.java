@@ -6,24 +6,15 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
+import com.solacesystems.solgeneos.custommonitors.util.RowJoin;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.MultiRecordSEMPParser;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
 import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
@@ -105,11 +96,54 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
  
     static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("remote-message-vpn-list"); 
     
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("local-vpn-name", "connected-remote-vpn-name", "connected-remote-router-name", "admin-state", 
+    				"inbound-operational-state", "outbound-operational-state", "queue-operational-state", "message-vpn", "is-zip", "is-ssl");
+    
     // What should be the formatting style?
     static final private String FLOAT_FORMAT_STYLE = "%.3f";	// 3 decimal places. Wanted to add thousandth separator but Geneos fails to recognise it as numbers for rule purposes!
     
-    // What is the desired order of columns? (Will be set after first getting a response)
-    private List<Integer> desiredColumnOrder;
+    // What is the desired order of columns? (Taken from whichever of the bridge details, connections and stats responses has each column, in that order.)
+    // Only the bridge details columns when there are no connection stats available at all:
+    static final private List<String> DESIRED_COLUMN_ORDER_REDUCED = 
+    		Arrays.asList("RowUID", "bridge-name", "local-vpn-name", "connected-remote-vpn-name",
+    				"connected-remote-router-name", "admin-state", "inbound-operational-state", "outbound-operational-state",
+    				"queue-operational-state", "connection-uptime-in-seconds");
+    
+    static final private List<String> DESIRED_COLUMN_ORDER = 
+    		Arrays.asList(
+    				// 10:
+    				"RowUID", "bridge-name", "local-vpn-name", "connected-remote-vpn-name",
+    				"connected-remote-router-name", "admin-state", "inbound-operational-state", "outbound-operational-state",
+    				"queue-operational-state", "connection-uptime-in-seconds",
+    				// 6 Computed columns: (Not in any response, so empty until calculated from the stats.)
+    				"current-rate-per-second", "average-rate-per-minute",
+    				"current-byte-rate-per-second", "average-byte-rate-per-minute",
+    				"current-compressed-rate-per-second", "average-compressed-rate-per-minute",
+    				
+    				// 14 from Stats:
+    				"ingress-compression-ratio", "egress-compression-ratio",
+    				"current-ingress-rate-per-second", "average-ingress-rate-per-minute",
+    				"current-ingress-byte-rate-per-second", "average-ingress-byte-rate-per-minute",
+    				"current-egress-rate-per-second", "average-egress-rate-per-minute",
+    				"current-egress-byte-rate-per-second", "average-egress-byte-rate-per-minute",
+    				
+    				"client-data-messages-received", "client-data-messages-sent",
+    				"client-data-bytes-received", "client-data-bytes-sent",
+    				// 18 from Conns:
+    				"is-zip", "is-ssl", 
+    				
+    				"receive-queue-bytes", "send-queue-bytes",
+    				"receive-queue-segments", "send-queue-segments",
+    				
+    				"retransmit-time-ms", "round-trip-time-smooth-us", "round-trip-time-variance-us", 
+    				"advertised-window-size", "transmit-window-size", "bandwidth-window-size", "congestion-window-size",
+    				"slow-start-threshold-size", "segments-received-out-of-order", "fast-retransmits", "timed-retransmits",
+    				"blocked-cycles-percent");
+    
+    // Joins the details, connection and stats of each bridge straight into the desired order of columns, with or without the connection stats
+    private RowJoin bridgesJoinReduced = new RowJoin(DESIRED_COLUMN_ORDER_REDUCED);
+    private RowJoin bridgesJoin = new RowJoin(DESIRED_COLUMN_ORDER);
     
     // Override the column names to more human friendly
     static final private ArrayList<String> COLUMN_NAME_OVERRIDE = new ArrayList<String>(
@@ -129,7 +163,7 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
     				"Advertised Window", "Transmit Window Size", "Bandwidth Window Size", 
     				"Congestion Window Size", "Slow Start Threshold Size", 
     				"Out of Order Segments", "Fast Retransmits", "Timed Retransmits", "Blocked%"));
-    // NOTE: Any changes to the column names needs to match the order being set in setDesiredColumnOrder()
+    // NOTE: Any changes to the column names needs to match the order being set in DESIRED_COLUMN_ORDER
     
     static final private List<String> COLUMNS_IN_MBYTES = Arrays.asList(
     				"Current MByte Rate", "Average MByte Rate", 
@@ -141,8 +175,7 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
     
     static final private int BYTE_TO_MBYTE = 1048576;
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     
     private TargetedMultiRecordSEMPParser multiRecordParserBridge;
     private TargetedMultiRecordSEMPParser multiRecordParserBridgeStats;
@@ -192,22 +225,8 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records, and the element name for nested level 2 records
 		multiRecordParserBridge = new TargetedMultiRecordSEMPParser(
@@ -219,6 +238,10 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
 		multiRecordParserBridgeConns = new TargetedMultiRecordSEMPParser(
 				BRIDGE_CONNS_RESPONSE_ELEMENT_NAME, BRIDGE_CONNS_RESPONSE_COLUMNS, RESPONSE_ELEMENT_NAMES_IGNORE);
 		
+		multiRecordParserBridge.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserBridgeStats.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserBridgeConns.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		
 		// How to generate the RowUID? Join up the values of these two columns:
 		// (Parser when not set defaults to 'name' and 'message-vpn', which works for nearly all other SEMP responses like show-queues.)
 		multiRecordParserBridge.setSempNameTag("bridge-name");
@@ -226,244 +249,104 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
 		
 	}
 	
-	private void setDesiredColumnOrder (List<String> currentColumnNames, boolean isReducedColumns) {
-				
-		if (isReducedColumns) {
-			desiredColumnOrder = Arrays.asList(
-					currentColumnNames.indexOf("RowUID"), currentColumnNames.indexOf("bridge-name"), currentColumnNames.indexOf("local-vpn-name"), currentColumnNames.indexOf("connected-remote-vpn-name"),
-					currentColumnNames.indexOf("connected-remote-router-name"), currentColumnNames.indexOf("admin-state"), currentColumnNames.indexOf("inbound-operational-state"), currentColumnNames.indexOf("outbound-operational-state"),
-					currentColumnNames.indexOf("queue-operational-state"), currentColumnNames.indexOf("connection-uptime-in-seconds")
-					);
-		}
-		else {
-			
-			desiredColumnOrder = Arrays.asList(
-					// 10:
-					currentColumnNames.indexOf("RowUID"), currentColumnNames.indexOf("bridge-name"), currentColumnNames.indexOf("local-vpn-name"), currentColumnNames.indexOf("connected-remote-vpn-name"),
-					currentColumnNames.indexOf("connected-remote-router-name"), currentColumnNames.indexOf("admin-state"), currentColumnNames.indexOf("inbound-operational-state"), currentColumnNames.indexOf("outbound-operational-state"),
-					currentColumnNames.indexOf("queue-operational-state"), currentColumnNames.indexOf("connection-uptime-in-seconds"),
-					// 6 Computed columns:
-					currentColumnNames.indexOf("current-rate-per-second"), currentColumnNames.indexOf("average-rate-per-minute"),
-					currentColumnNames.indexOf("current-byte-rate-per-second"), currentColumnNames.indexOf("average-byte-rate-per-minute"),
-					currentColumnNames.indexOf("current-compressed-rate-per-second"), currentColumnNames.indexOf("average-compressed-rate-per-minute"),
-					
-					// 14 from Stats:
-					currentColumnNames.indexOf("ingress-compression-ratio"), currentColumnNames.indexOf("egress-compression-ratio"),
-					currentColumnNames.indexOf("current-ingress-rate-per-second"), currentColumnNames.indexOf("average-ingress-rate-per-minute"),
-					currentColumnNames.indexOf("current-ingress-byte-rate-per-second"), currentColumnNames.indexOf("average-ingress-byte-rate-per-minute"),
-					currentColumnNames.indexOf("current-egress-rate-per-second"), currentColumnNames.indexOf("average-egress-rate-per-minute"),
-					currentColumnNames.indexOf("current-egress-byte-rate-per-second"), currentColumnNames.indexOf("average-egress-byte-rate-per-minute"),
-					
-					currentColumnNames.indexOf("client-data-messages-received"), currentColumnNames.indexOf("client-data-messages-sent"),
-					currentColumnNames.indexOf("client-data-bytes-received"), currentColumnNames.indexOf("client-data-bytes-sent"),
-					// 18 from Conns:
-					currentColumnNames.indexOf("is-zip"), currentColumnNames.indexOf("is-ssl"), 
-					
-					currentColumnNames.indexOf("receive-queue-bytes"), currentColumnNames.indexOf("send-queue-bytes"),
-					currentColumnNames.indexOf("receive-queue-segments"), currentColumnNames.indexOf("send-queue-segments"),
-					
-					currentColumnNames.indexOf("retransmit-time-ms"), currentColumnNames.indexOf("round-trip-time-smooth-us"), currentColumnNames.indexOf("round-trip-time-variance-us"), 
-					currentColumnNames.indexOf("advertised-window-size"), currentColumnNames.indexOf("transmit-window-size"), currentColumnNames.indexOf("bandwidth-window-size"), currentColumnNames.indexOf("congestion-window-size"),
-					currentColumnNames.indexOf("slow-start-threshold-size"), currentColumnNames.indexOf("segments-received-out-of-order"), currentColumnNames.indexOf("fast-retransmits"), currentColumnNames.indexOf("timed-retransmits"),
-					currentColumnNames.indexOf("blocked-cycles-percent")
-					);			
-		}
-		
-	}
-	
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-    
-	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		LinkedHashMap<String, Object> headlines = new LinkedHashMap<String, Object>();
 		
-		HashMap<String, ArrayList<String>> bridgeDetailsTableMap; 
-		HashMap<String, ArrayList<String>> bridgeDetailsStatsTableMap;
-		HashMap<String, ArrayList<String>> bridgeDetailsConnsTableMap;
-		
-		ArrayList<String> bridgeDetailsTempRow1;
-		ArrayList<String> bridgeDetailsTempRow2;
-		
 		boolean reducedDataColumns = true;
 		
-		// Get the SEMP responses:
-		submitSEMPQuery(SHOW_BRIDGES_REQUEST, multiRecordParserBridge);
-		submitSEMPQuery(SHOW_BRIDGES_STATS_REQUEST, multiRecordParserBridgeStats);
-		submitSEMPQuery(SHOW_BRIDGES_CONNS_REQUEST, multiRecordParserBridgeConns);
+		// Get the SEMP responses, sending all the queries at once:
+		sempClient.waitForAll(
+				sempClient.submitSEMPQueryAsync(SHOW_BRIDGES_REQUEST, multiRecordParserBridge),
+				sempClient.submitSEMPQueryAsync(SHOW_BRIDGES_STATS_REQUEST, multiRecordParserBridgeStats),
+				sempClient.submitSEMPQueryAsync(SHOW_BRIDGES_CONNS_REQUEST, multiRecordParserBridgeConns));
 		
 		List<String> bridgeDetailsColumnNames = multiRecordParserBridge.getColumnNames();
 		List<String> bridgeDetailsStatsColumnNames = multiRecordParserBridgeStats.getColumnNames();
 		List<String> bridgeDetailsConnsColumnNames = multiRecordParserBridgeConns.getColumnNames();
 		
 		// Need to set the column ordering on each run, as the data available can change between polls
-		// First get the column names from the bridge details response
-		List<String> currentColumnNames = new ArrayList<String>();
-		currentColumnNames.addAll(bridgeDetailsColumnNames);
-		currentColumnNames.remove("client-name");
-		
 		// Was there any connection stats available even?
+		RowJoin currentBridgesJoin;
 		if (bridgeDetailsConnsColumnNames.size() > 1) {			// "RowUID" present as minimum if empty.
-			
 			reducedDataColumns = false;
-			// Then add the column names from the Conns details response after removing the RowUID column
-			List<String> tempColumnNames = new ArrayList<String>();
-			tempColumnNames.addAll(bridgeDetailsConnsColumnNames);
-			
-			tempColumnNames.remove("RowUID");
-			tempColumnNames.remove("name");
-			tempColumnNames.remove("message-vpn");
-			currentColumnNames.addAll(tempColumnNames);
-			
-			// And again for the Stats columns
-			tempColumnNames = new ArrayList<String>();
-			tempColumnNames.addAll(bridgeDetailsStatsColumnNames);
-			
-			tempColumnNames.remove("RowUID");
-			tempColumnNames.remove("name");
-			tempColumnNames.remove("message-vpn");
-			
-			tempColumnNames.add("current-rate-per-second");
-			tempColumnNames.add("average-rate-per-minute");
-			tempColumnNames.add("current-byte-rate-per-second");
-			tempColumnNames.add("average-byte-rate-per-minute");
-			tempColumnNames.add("current-compressed-rate-per-second");
-			tempColumnNames.add("average-compressed-rate-per-minute");
-			
-			currentColumnNames.addAll(tempColumnNames);
-			
-			// Then use this merged columns information to set the final display order
-			setDesiredColumnOrder(currentColumnNames, reducedDataColumns);	// not reduced columns set.			
+			currentBridgesJoin = bridgesJoin;
 		}
 		else {
 			reducedDataColumns = true;
-			setDesiredColumnOrder(currentColumnNames, reducedDataColumns);	// reduced columns to work off
-
+			currentBridgesJoin = bridgesJoinReduced;		// reduced columns to work off
 		}
+		currentBridgesJoin.setTableColumnNames(bridgeDetailsColumnNames, bridgeDetailsConnsColumnNames, bridgeDetailsStatsColumnNames);
 				
-				
-		// Merge the three results together to create the final table for publish...
+		// Merge the three results together to create the final table for publish, in the column order we want...
 		
 		vpnBridgesTableContent = new Vector<ArrayList<String>>();
 		
-		bridgeDetailsTableMap = multiRecordParserBridge.getData();
-		bridgeDetailsConnsTableMap = multiRecordParserBridgeConns.getData();
-		bridgeDetailsStatsTableMap = multiRecordParserBridgeStats.getData();
+		HashMap<String, ArrayList<String>> bridgeDetailsConnsTableMap = multiRecordParserBridgeConns.getData();
+		HashMap<String, ArrayList<String>> bridgeDetailsStatsTableMap = multiRecordParserBridgeStats.getData();
 		
-		for (Map.Entry<String, ArrayList<String>> entry : bridgeDetailsTableMap.entrySet()){
+		for (ArrayList<String> bridgeDetailsRow : multiRecordParserBridge.getData().values()){
 			
-			// (1) Add Bridge Connections table to Bridge Details, Connection details are keyed with the RowUID as client-name and vpn-name
-			bridgeDetailsTempRow1 = new ArrayList<String>();
-			bridgeDetailsTempRow1.addAll(entry.getValue());
- 
-			String clientName = bridgeDetailsTempRow1.get(bridgeDetailsColumnNames.indexOf("client-name"));
-			String vpnName = bridgeDetailsTempRow1.get(bridgeDetailsColumnNames.indexOf("local-vpn-name"));
+			// Bridge Connections and Bridge Stats are keyed with the RowUID as client-name and vpn-name
+			String clientName = bridgeDetailsRow.get(bridgeDetailsColumnNames.indexOf("client-name"));
+			String vpnName = bridgeDetailsRow.get(bridgeDetailsColumnNames.indexOf("local-vpn-name"));
 			String rowUID = clientName + multiRecordParserBridgeStats.getRowUIDDelim() + vpnName;
-		
-			bridgeDetailsTempRow1.remove(bridgeDetailsColumnNames.indexOf("client-name"));
 			
-			// Only if there is indeed a connection to report stats on...
-			if (bridgeDetailsConnsTableMap.containsKey(rowUID)) {
-				bridgeDetailsTempRow2 = new ArrayList<String>();
-				bridgeDetailsTempRow2.addAll(bridgeDetailsConnsTableMap.get(rowUID));
-				
-				// Remove the redundant columns from second dataset 
-
-				bridgeDetailsTempRow2.remove(bridgeDetailsConnsColumnNames.indexOf("message-vpn"));
-				bridgeDetailsTempRow2.remove(bridgeDetailsConnsColumnNames.indexOf("name"));
-				bridgeDetailsTempRow2.remove(bridgeDetailsConnsColumnNames.indexOf("RowUID"));
-
-				// Merge second dataset with first
-				bridgeDetailsTempRow1.addAll(bridgeDetailsTempRow2);		
-				
-				// (2) Add Bridge Stats table, that is also keyed with RowUID as client-name and vpn-name
-				bridgeDetailsTempRow2 = new ArrayList<String>();
-				bridgeDetailsTempRow2.addAll(bridgeDetailsStatsTableMap.get(rowUID));
-				
-				// Add the calculated columns to the end
-				Long currentMsgRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-rate-per-second"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-rate-per-second")));
-				Long averageMsgRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-rate-per-minute"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-rate-per-minute")));
-				Long currentByteRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-byte-rate-per-second"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-byte-rate-per-second")));
-				Long averageByteRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-byte-rate-per-minute"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-byte-rate-per-minute")));
-				Long currentCompressedByteRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-compressed-rate-per-second"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-compressed-rate-per-second")));;
-				Long averageCompressedByteRate = Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-compressed-rate-per-minute"))) +
-						Long.parseLong(bridgeDetailsTempRow2.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-compressed-rate-per-minute")));;
+			// Only if there is indeed a connection to report stats on... (Otherwise their columns are left empty.)
+			ArrayList<String> bridgeDetailsConnsRow = bridgeDetailsConnsTableMap.get(rowUID);
+			ArrayList<String> bridgeDetailsStatsRow = (bridgeDetailsConnsRow == null) ? null : bridgeDetailsStatsTableMap.get(rowUID);
+			
+			ArrayList<String> tableRow = currentBridgesJoin.joinRow(bridgeDetailsRow, bridgeDetailsConnsRow, bridgeDetailsStatsRow);
+			
+			if (!reducedDataColumns && bridgeDetailsStatsRow != null) {
+				// Add the calculated columns
+				Long currentMsgRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-rate-per-second"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-rate-per-second")));
+				Long averageMsgRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-rate-per-minute"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-rate-per-minute")));
+				Long currentByteRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-byte-rate-per-second"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-byte-rate-per-second")));
+				Long averageByteRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-byte-rate-per-minute"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-byte-rate-per-minute")));
+				Long currentCompressedByteRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-ingress-compressed-rate-per-second"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("current-egress-compressed-rate-per-second")));
+				Long averageCompressedByteRate = Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-ingress-compressed-rate-per-minute"))) +
+						Long.parseLong(bridgeDetailsStatsRow.get(bridgeDetailsStatsColumnNames.indexOf("average-egress-compressed-rate-per-minute")));
 				
-				bridgeDetailsTempRow2.add(currentMsgRate.toString());
-				bridgeDetailsTempRow2.add(averageMsgRate.toString());
-				bridgeDetailsTempRow2.add(currentByteRate.toString());
-				bridgeDetailsTempRow2.add(averageByteRate.toString());
-				bridgeDetailsTempRow2.add(currentCompressedByteRate.toString());
-				bridgeDetailsTempRow2.add(averageCompressedByteRate.toString());
-					
-				// Remove the first column that is the RowUID from second dataset
-				bridgeDetailsTempRow2.remove(bridgeDetailsStatsColumnNames.indexOf("message-vpn"));
-				bridgeDetailsTempRow2.remove(bridgeDetailsStatsColumnNames.indexOf("name"));
-				bridgeDetailsTempRow2.remove(bridgeDetailsStatsColumnNames.indexOf("RowUID"));
-
-				// Merge datasets again
-				bridgeDetailsTempRow1.addAll(bridgeDetailsTempRow2);
-			}
-			else {
-				// Need to pad the missing columns...
-				int paddingCount = currentColumnNames.size() - bridgeDetailsTempRow1.size();	
-				for (int i = 0; i < paddingCount; i++) {
-					bridgeDetailsTempRow1.add("");
-				}
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("current-rate-per-second"), currentMsgRate.toString());
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("average-rate-per-minute"), averageMsgRate.toString());
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("current-byte-rate-per-second"), currentByteRate.toString());
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("average-byte-rate-per-minute"), averageByteRate.toString());
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("current-compressed-rate-per-second"), currentCompressedByteRate.toString());
+				tableRow.set(DESIRED_COLUMN_ORDER.indexOf("average-compressed-rate-per-minute"), averageCompressedByteRate.toString());
 			}
 			
 			// Add this row to the publish table, then iterate again for the subsequent bridges
-			vpnBridgesTableContent.add(bridgeDetailsTempRow1);
+			vpnBridgesTableContent.add(tableRow);
 		}	
 		
-		// Reorder the merged table into the column order we want. 
-		// Iterate to each row in the table contents
-		
-		vpnBridgesTableContentTemp = new Vector<ArrayList<String>>();
-				
-		for (int index = 0; index < vpnBridgesTableContent.size(); index++) {
-			
-			// Build a new tableRow by adding to it in the right order 
-			ArrayList<String> tableRow1 = vpnBridgesTableContent.get(index);
-			ArrayList<String> tableRow2 = new ArrayList<String>();
-			
-			for (Integer columnNumber : this.desiredColumnOrder){
-				tableRow2.add( tableRow1.get(columnNumber));
-			}
-			// Add the newly created row to Temp Table
-			vpnBridgesTableContentTemp.add(tableRow2); 
-		}  
-	
-		vpnBridgesTableContent = vpnBridgesTableContentTemp;
-		
 		headlines.putAll(globalHeadlines);
 		
 		String lastSampleTime = SolGeneosAgent.onlyInstance.getCurrentTimeString();
@@ -553,6 +436,7 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
 		// Add the override column names
 		vpnBridgesTableContent.add(0, COLUMN_NAME_OVERRIDE);
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -567,6 +451,7 @@ public class MessageVPNBridgeRatesMonitor extends BaseMonitor implements Monitor
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
@@ -2,7 +2,6 @@ package com.solacesystems.solgeneos.custommonitors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -11,22 +10,14 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
-import java.util.stream.Collectors;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
+import com.solacesystems.solgeneos.custommonitors.util.RowJoin;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
+import com.solacesystems.solgeneos.custommonitors.util.TopKRows;
 import com.solacesystems.solgeneos.custommonitors.util.MultiFieldSEMPParser;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
 import com.solacesystems.solgeneos.custommonitors.util.VPNRecordSEMPParser;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
@@ -95,6 +86,9 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
     				"current-egress-flows", "maximum-egress-flows",
     				"current-ingress-flows", "maximum-ingress-flows");
     static final private  List<String> SPOOL_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("event-configuration");
+    
+    // Which columns only have a few distinct values, repeated every poll, to keep just one copy of each?
+    static final private  List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList("name", "locally-configured", "local-status");
 
     // From the limits lookup queries, which fields are of interest?
     final private  List<String> SERVICE_DETAILS_LOOKUP_FIELDS = 
@@ -108,10 +102,25 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
     // This limit not currently queried for, need to return back to this workaround
     static final private int MAX_SUBSCRIPTIONS_LIMIT = 5000000;
     
-    // What is the desired order of columns?
-    private List<Integer> desiredColumnOrder;
+    // What is the desired order of columns? (Taken from whichever of the VPN and spool details responses has each column, the VPN details first.)
+    // (Will also drop any such as 'locally-configured' that are not needed in the final output.)
+    static final private List<String> DESIRED_COLUMN_ORDER = 
+    		Arrays.asList("name", "local-status",  
+    				"total-unique-subscriptions", "max-subscriptions",
+    				"connections-service-smf", "max-connections-service-smf",
+    				
+    				"current-queues-and-topic-endpoints", "maximum-queues-and-topic-endpoints",
+    				"current-spool-usage-mb", "maximum-spool-usage-mb",
+    				"current-transactions", "maximum-transactions",
+    				"current-transacted-sessions", "maximum-transacted-sessions",
+    				
+    				"current-egress-flows", "maximum-egress-flows",
+    				"current-ingress-flows", "maximum-ingress-flows");
     
-    private Integer localConfigurationStatusColumnID;	// Save this to prevent lookup on each sample
+    // Joins the VPN and spool details of each VPN, by the VPN name, straight into the desired order of columns
+    private RowJoin vpnLimitsJoin;
+    // Which of the desired columns were last reported as not found in the SEMP responses?
+    private List<String> reportedMissingColumns = new ArrayList<String>();
     
     // Override the column names to more human friendly
     static final private List<String> VPN_LIMITS_DATAVIEW_COLUMN_NAMES = 
@@ -130,8 +139,7 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
     
     static final String[] RESOURCES = {"Subscriptions", "Connections (SMF)", "Queue and TEs", "Spool Usage (MB)", "Transactions", "Transacted Sessions", "Egress Flows", "Ingress Flows"};
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private VPNRecordSEMPParser multiRecordParserVpn;
     private VPNRecordSEMPParser multiRecordParserSpool;
 
@@ -149,20 +157,9 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
     private int maxRows = 200;
 
     
-    // When sorting the table rows before limiting to maxrows, how to prioritise the top of the cut?
-    // This comparator is used to sort the table so the highest utilisation score is at the top of the table
-    // Note: Assuming the sort is done after columns re-ordered and computed columns added. So use lookup via COLUMN_NAME_OVERRIDE
-    static class UtilisationComparator implements Comparator<Object>
-    {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	int value1 = Integer.parseInt( ((ArrayList<String>)tableRow1).get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Utilisation Score") ));
-        	int value2 = Integer.parseInt( ((ArrayList<String>)tableRow2).get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Utilisation Score") ));
-
-            return Double.compare(value2, value1);	
-        }
-    }
+    // When limiting the table rows to maxrows, how to prioritise the top of the cut?
+    // The rows are ranked so the highest utilisation score is at the top of the table, keeping no more than make the cut.
+    private TopKRows utilisationRanker;
     
     /**
      * This method is called after initialisation but before the monitor is started.
@@ -199,6 +196,7 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 			maxRows = Integer.parseInt(monitorPropsConfig.getProperties().get("maxrows").toString());
 		}
 		globalHeadlines.put("Maximum rows to display", maxRows);
+		utilisationRanker = new TopKRows(maxRows, true);
 		
 		
 		// (4) Retrieve SEMP over HTTP properties from global properties
@@ -215,73 +213,31 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
         String username = props.getProperty(MGMT_USERNAME_PROPERTY_NAME);
         String password = SolGeneosAgent.onlyInstance.getEncryptedProperty(MGMT_ENCRYPTED_PASSWORD_PROPERTY_NAME,MGMT_PASSWORD_PROPERTY_NAME);
 		
-		// create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
 		multiRecordParserVpn = new VPNRecordSEMPParser(VPN_DETAILS_RESPONSE_ELEMENT_NAME_ROWS, VPN_DETAILS_RESPONSE_COLUMNS, VPN_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE);
 		multiRecordParserSpool = new VPNRecordSEMPParser(SPOOL_DETAILS_RESPONSE_ELEMENT_NAME_ROWS, SPOOL_DETAILS_RESPONSE_COLUMNS, SPOOL_DETAILS_RESPONSE_ELEMENT_NAMES_IGNORE);
+		multiRecordParserVpn.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		multiRecordParserSpool.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+		
+		// Drop the VPNs not wanted in the table as they are parsed, rather than carry them to onCollect() only to throw them away:
+		// VPN entries that are 'locally-configured=false' are not full VPN entries, but discovered from the Multi-Node Routing Network.
+		// VPNs that are Disabled are not participating in limit usage or allocation.
+		// The system VPNs beginning with # are auto configured and cannot be edited anyway.
+		multiRecordParserVpn.addRowFilter("locally-configured", "true"::equalsIgnoreCase);
+		multiRecordParserVpn.addRowFilter("local-status", status -> !status.equalsIgnoreCase("Disabled"));
+		multiRecordParserVpn.addRowFilter("name", vpnName -> !vpnName.startsWith("#"));
+		multiRecordParserSpool.addRowFilter("name", vpnName -> !vpnName.startsWith("#"));
+		
+		vpnLimitsJoin = new RowJoin(DESIRED_COLUMN_ORDER);
+		// If for whatever reason a desired column is not found, pad it out. (Can't be empty string without causing problems, need another placeholder.)
+		vpnLimitsJoin.setMissingValue("-1");
 		
 		setBrokerLimits();
 	}
 	
-	private void setDesiredColumnOrder (List<String> currentColumnNames) {
-	    
-		desiredColumnOrder = Arrays.asList(
-			currentColumnNames.indexOf("name"), currentColumnNames.indexOf("local-status"),  
-    		currentColumnNames.indexOf("total-unique-subscriptions"), currentColumnNames.indexOf("max-subscriptions"),
-    		currentColumnNames.indexOf("connections-service-smf"), currentColumnNames.indexOf("max-connections-service-smf"),
-    		
-    		currentColumnNames.indexOf("current-queues-and-topic-endpoints"), currentColumnNames.indexOf("maximum-queues-and-topic-endpoints"),
-    		currentColumnNames.indexOf("current-spool-usage-mb"), currentColumnNames.indexOf("maximum-spool-usage-mb"),
-    		currentColumnNames.indexOf("current-transactions"), currentColumnNames.indexOf("maximum-transactions"),
-    		currentColumnNames.indexOf("current-transacted-sessions"), currentColumnNames.indexOf("maximum-transacted-sessions"),
-    		
-    		currentColumnNames.indexOf("current-egress-flows"), currentColumnNames.indexOf("maximum-egress-flows"),
-    		currentColumnNames.indexOf("current-ingress-flows"), currentColumnNames.indexOf("maximum-ingress-flows")
-		);
-		
-		// Did any expected field above not get found in the SEMP response? Report error if so...
-		if (desiredColumnOrder.contains(-1)) {
-			getLogger().error(
-					"Not all expected fields were present in the SEMP response when setting the column order. " 
-					+ "Available columns: " + currentColumnNames.toString()
-					+ "Final ordering as set: " + desiredColumnOrder.toString()
-					);
-		}
-	}
-	
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
-	}
-    
 	private void setBrokerLimits () throws Exception  {
 
 		// Need to first get the various limits from SEMP queries, then map back to a friendly name
@@ -290,14 +246,26 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 		//		"max-transactions", "ingress-flows-allowed", "flows-allowed");
 
 		HashMap<String, String> interestedFields = new HashMap<String, String>();
+		HashMap<String, String> interestedSpoolFields = new HashMap<String, String>();
 		
 		this.SERVICE_DETAILS_LOOKUP_FIELDS.forEach(
 				field -> interestedFields.put(field, ""));
+		interestedSpoolFields.putAll(interestedFields);
 		
+		// The two queries are sent at once, so each needs its own parser and map of fields to fill in
 	    MultiFieldSEMPParser multiFieldParser = new MultiFieldSEMPParser(interestedFields);
+	    MultiFieldSEMPParser multiFieldParserSpool = new MultiFieldSEMPParser(interestedSpoolFields);
 	    
-		submitSEMPQuery(SHOW_SERVICE_DETAILS_REQUEST, multiFieldParser);
-		submitSEMPQuery(SHOW_SPOOL_DETAILS_REQUEST, multiFieldParser);
+		sempClient.waitForAll(
+				sempClient.submitSEMPQueryAsync(SHOW_SERVICE_DETAILS_REQUEST, multiFieldParser),
+				sempClient.submitSEMPQueryAsync(SHOW_SPOOL_DETAILS_REQUEST, multiFieldParserSpool));
+		
+		// Then combine what was found in the spool details with the service details
+		interestedSpoolFields.forEach((field, value) -> {
+			if (!value.isEmpty()) {
+				interestedFields.put(field, value);
+			}
+		});
 		
 		brokerLimitsLookup = new HashMap<String, Integer>();
 		brokerLimitsLookup.put("Connections (SMF) - Limit", Integer.parseInt(interestedFields.get("max-connections-service-smf")));
@@ -313,41 +281,51 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "unchecked", "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		
 		LinkedHashMap<String, Object> headlinesVpnLimits;
 		LinkedHashMap<String, Object> headlinesBrokerLimits;
 		
-		// Get the first SEMP query response...
-		submitSEMPQuery(SHOW_VPN_DETAILS_REQUEST, multiRecordParserVpn);
-		// Get the second SEMP query response...
-		submitSEMPQuery(SHOW_VPN_SPOOL_DETAILS_REQUEST, multiRecordParserSpool);
-		
-		// Has the desired column order been determined yet? (Done on the first time responses and their columns came back.)
-		if (this.desiredColumnOrder == null) {
-			// First get the column names from the VPN details response
-			// Then add the column names from the Spool details response after removing the VPN name column
-			// Since will be modifying the column names as supplied, do it to a copy of the List, not the actual one.
-			List<String> tempColumnNamesDetail = new ArrayList<String>();
-			tempColumnNamesDetail.addAll(multiRecordParserVpn.getColumnNames());
-			List<String> tempColumnNamesSpool = new ArrayList<String>();
-			tempColumnNamesSpool.addAll(multiRecordParserSpool.getColumnNames());
-			
-			tempColumnNamesSpool.remove(0);
-			tempColumnNamesDetail.addAll(tempColumnNamesSpool);
-			
-			// Then use this merged columns information to set the final display order
-			this.setDesiredColumnOrder(tempColumnNamesDetail);
-			
-			// Save the ID for the local-configuration column too
-			localConfigurationStatusColumnID = tempColumnNamesDetail.indexOf("locally-configured");
+		// Send both SEMP queries at once and wait for their responses...
+		sempClient.waitForAll(
+				sempClient.submitSEMPQueryAsync(SHOW_VPN_DETAILS_REQUEST, multiRecordParserVpn),
+				sempClient.submitSEMPQueryAsync(SHOW_VPN_SPOOL_DETAILS_REQUEST, multiRecordParserSpool));
+		
+		// Which response does each of the desired columns come from? (Worked out from the columns as they came back.)
+		vpnLimitsJoin.setTableColumnNames(multiRecordParserVpn.getColumnNames(), multiRecordParserSpool.getColumnNames());
+		
+		// Did any expected field not get found in the SEMP responses? Report error if so, once rather than on every poll...
+		List<String> missingColumns = vpnLimitsJoin.getMissingColumns();
+		if (!missingColumns.equals(reportedMissingColumns)) {
+			if (!missingColumns.isEmpty()) {
+				getLogger().error(
+						"Not all expected fields were present in the SEMP response when setting the column order. " 
+						+ "Available columns: " + multiRecordParserVpn.getColumnNames().toString() + multiRecordParserSpool.getColumnNames().toString()
+						+ " Missing columns: " + missingColumns.toString()
+						);
+			}
+			reportedMissingColumns = missingColumns;
 		}
 		
 		// Have the broker limits been successfully initialized? Expected to be done in onPostInitialize() but double check before using it
@@ -364,101 +342,33 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 			}
 		}
 		
-		// First remove VPN entries that are 'locally-configured=false', they are not full VPN entries, but discovered from the Multi-Node Routing Network
-		// Will iterate the initial 'dirty' VPN data and filter rows to create the 'clean' VPN data.
-		HashMap<String, ArrayList<String>> vpnData = new LinkedHashMap<String, ArrayList<String>>();
-		HashMap<String, ArrayList<String>> vpnDataDirty;
-		ArrayList<String> tableRowVpn ;
-		String localConfigurationStatus;
+		// The VPNs that are not locally configured, Disabled or system VPNs were already dropped by the parsers' row filters
+		// Now merge the two responses, keyed on the vpn-name, into a combined table in the column order we want
+		vpnLimitsTableContent = new Vector<Object>(vpnLimitsJoin.join(multiRecordParserVpn.getData(), multiRecordParserSpool.getData()));
 		
-		vpnDataDirty = multiRecordParserVpn.getData();
-
-		for (Map.Entry<String, ArrayList<String>> entry : vpnDataDirty.entrySet()){			
-			tableRowVpn = entry.getValue();
-			
-			localConfigurationStatus = tableRowVpn.get(localConfigurationStatusColumnID);
-			if (localConfigurationStatus.equalsIgnoreCase("true")) {
-				vpnData.put(entry.getKey(), tableRowVpn);
-			}
-		}
+		// Add a new calculated column on utilisation score, ranking each row by it as it is worked out...
+		utilisationRanker.clear();
 		
-		// Now merge the two responses, keyed on the vpn-name, into a combined table
-		HashMap<String, ArrayList<String>> spoolData = multiRecordParserSpool.getData();		
-		vpnLimitsTableContent = new Vector<Object>();				
-		ArrayList<String> tableRowSpool;
-
-		for (Map.Entry<String, ArrayList<String>> entry : vpnData.entrySet()){			
-			tableRowVpn = entry.getValue();
-			tableRowSpool = spoolData.get(entry.getKey());
-			
-			// Remove the first column that is VPN name from second dataset
-			tableRowSpool.remove(0);
-			
-			// Merge second dataset with first
-			tableRowVpn.addAll(tableRowSpool);
-			
-			vpnLimitsTableContent.add(tableRowVpn);
-		}	
-		
-		// Reorder the merged table into the column order we want. 
-		// (Will also drop any such as 'locally-configured' that are not needed in the final output.)
-		tempVpnLimitsTableContent = new Vector<Object>();
-		
-		// Iterate to each row in the table contents
 		for (int index = 0; index < vpnLimitsTableContent.size(); index++) {
-			
-			// Build a new tableRow by adding to it in the right order 
-			ArrayList<String> tableRow = new ArrayList<String>();
-			
-			for (Integer columnNumber : this.desiredColumnOrder){
+			ArrayList<String> tempTableRow = (ArrayList<String>) vpnLimitsTableContent.get(index);
+
+			double score = 0;
+			int nUnusedResource = 0;
+			for (String resourceName : RESOURCES) {
+				double current = Double.parseDouble(tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")));
+				double max = Double.parseDouble(tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Max")));
 				
-				// If for whatever reason the desired column index was not found (i.e. -1), just pad it out with empty
-				if (columnNumber == -1) {
-					tableRow.add("-1"); 	// Can't be empty string without causing problems, need another placeholder.
+				if (max == 0) {
+					nUnusedResource++;
 				}
 				else {
-					tableRow.add( ((ArrayList<String>)vpnLimitsTableContent.get(index)).get(columnNumber));
-				}
-			}
-			// Add the newly created row to reorderedTableContent
-			tempVpnLimitsTableContent.add(tableRow); 
-		}  
-		
-		vpnLimitsTableContent = tempVpnLimitsTableContent;
-		
-		// From the table remove VPNs that are Disabled as not participating in limit usage or allocation
-		// Also remove the system VPNs beginning with # where they are auto configured and cannot be edited anyway
-		// While here, add a new calculated column too on utilisation score...
-		
-		Iterator<Object> itr = vpnLimitsTableContent.iterator();	
-		while (itr.hasNext()) {		
-			ArrayList<String> tempTableRow = (ArrayList<String>) itr.next();
-			String tempVpnName = tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Message VPN"));
-			String tempVpnStatus = tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf("Status"));
-			
-			if (tempVpnName.startsWith("#") || tempVpnStatus.equalsIgnoreCase("Disabled")) {
-				itr.remove();
-			}
-			else
-			{
-				// Add a new utlisation score calculated column
-				double score = 0;
-				int nUnusedResource = 0;
-				for (String resourceName : RESOURCES) {
-					double current = Double.parseDouble(tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Current")));
-					double max = Double.parseDouble(tempTableRow.get(VPN_LIMITS_DATAVIEW_COLUMN_NAMES.indexOf(resourceName + " - Max")));
-					
-					if (max == 0) {
-						nUnusedResource++;
-					}
-					else {
-						score += current / max;
-					}
+					score += current / max;
 				}
-				tempTableRow.add(String.format(FLOAT_FORMAT_STYLE, ((score / (RESOURCES.length - nUnusedResource) ) * 100 )) );
 			}
+			String utilisationScore = String.format(FLOAT_FORMAT_STYLE, ((score / (RESOURCES.length - nUnusedResource) ) * 100 ));
+			tempTableRow.add(utilisationScore);
+			utilisationRanker.offer(index, Integer.parseInt(utilisationScore));
 		}  
-		vpnLimitsTableContent = tempVpnLimitsTableContent;
 		
 		// Now calculate the headlines
 		headlinesVpnLimits = new LinkedHashMap<String, Object>();
@@ -502,16 +412,11 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 			brokerLimitsTableContent.add(tableRowBrokerLimits);
 		}
 
-		// Sort the list by the utilisation score. Then also limit to the max row count if exceeding it...
+		// Take the top rows by the utilisation score, limited to the max row count if exceeding it...
 		tempVpnLimitsTableContent = new Vector<Object>();
-		
-		tempVpnLimitsTableContent.addAll(
-				vpnLimitsTableContent
-				.stream()
-				.sorted(new UtilisationComparator())	
-				.limit(maxRows)				// Then cut the rows at max limit
-				.collect(Collectors.toCollection(Vector<Object>::new))
-				);
+		for (int index : utilisationRanker.getRows()) {
+			tempVpnLimitsTableContent.add(vpnLimitsTableContent.get(index));
+		}
 		vpnLimitsTableContent = tempVpnLimitsTableContent;
 
 		// Main table content all complete now for publishing. Just add the column names too.
@@ -521,6 +426,7 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
 		brokerLimitsTableContent.add(0, this.BROKER_LIMITS_DATAVIEW_COLUMN_NAMES);
 				
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish tables to the view map
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -542,6 +448,7 @@ public class MessageVPNLimitsMonitor extends BaseMonitor implements MonitorConst
     			}
     		}
     	}
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 }
@@ -2,7 +2,6 @@ package com.solacesystems.solgeneos.custommonitors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -12,22 +11,19 @@ import java.util.Properties;
 import java.util.TreeMap;
 import java.util.Vector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpParams;
-
+import com.solacesystems.solgeneos.custommonitors.util.ColumnSchema;
+import com.solacesystems.solgeneos.custommonitors.util.ColumnarTable;
 import com.solacesystems.solgeneos.custommonitors.util.MonitorConstants;
-import com.solacesystems.solgeneos.custommonitors.util.SampleHttpSEMPResponse;
-import com.solacesystems.solgeneos.custommonitors.util.SampleResponseHandler;
-import com.solacesystems.solgeneos.custommonitors.util.SampleSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.RowAggregator;
+import com.solacesystems.solgeneos.custommonitors.util.RowPartitioner;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPClient;
+import com.solacesystems.solgeneos.custommonitors.util.SEMPCollectAbortedException;
+import com.solacesystems.solgeneos.custommonitors.util.SortKeys;
+import com.solacesystems.solgeneos.custommonitors.util.StaleViews;
 import com.solacesystems.solgeneos.custommonitors.util.TargetedMultiRecordSEMPParser;
+import com.solacesystems.solgeneos.custommonitors.util.TopKRows;
 import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
 import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
 import com.solacesystems.solgeneos.solgeneosagent.monitor.BaseMonitor;
@@ -53,10 +49,22 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
     // The elements of interest/exclusion within the SEMP response processing:
     static final private String RESPONSE_ELEMENT_NAME_ROWS = "topic-endpoint";
     static final private  List<String> RESPONSE_COLUMNS = 
-    		Arrays.asList("RowUID", "name", "message-vpn", "durable", "ingress-config-status", "egress-config-status", "access-type", "destination", "owner", "quota", 	
-    				"respect-ttl", "max-ttl", "reject-msg-to-sender-on-discard", "num-messages-spooled", "current-spool-usage-in-mb", "high-water-mark-in-mb", 
-    				"total-delivered-unacked-msgs", "max-redelivery", "oldest-msg-id", "newest-msg-id", "bind-count", "max-bind-count", "dead-message-queue");
+    		Arrays.asList("RowUID", "name", "message-vpn", "num-messages-spooled", "current-spool-usage-in-mb", "quota", "high-water-mark-in-mb",
+    				"total-delivered-unacked-msgs", "bind-count", "max-bind-count", "access-type", "destination", "durable", "owner", "ingress-config-status", "egress-config-status",
+    				"oldest-msg-id", "newest-msg-id", "respect-ttl", "max-ttl", "reject-msg-to-sender-on-discard", "max-redelivery", "dead-message-queue");
     // NOTE: "RowUID" is not expected in the SEMP response, but will be added by the parser. However adding it here allows this list to be used as an index where the column number can be searched by name
+    // NOTE: The columns are in the desired order for the dataview, the parser puts each value in its column whatever the order in the response
+    
+    // Which columns are numbers, parsed once as the response is parsed?
+    static final private List<String> RESPONSE_LONG_COLUMNS = Arrays.asList(
+    		"num-messages-spooled", "quota", "total-delivered-unacked-msgs", "bind-count");
+    // When pretty printing numbers, which columns should be formatted? 
+    static final private List<String> RESPONSE_DECIMAL_COLUMNS = Arrays.asList(
+    		"current-spool-usage-in-mb", "high-water-mark-in-mb"); 	
+    // Which columns only have a few distinct values, to keep just one copy of each?
+    static final private List<String> RESPONSE_INTERNED_COLUMNS = Arrays.asList(
+    		"message-vpn", "access-type", "durable", "owner", "ingress-config-status", "egress-config-status", 
+    		"respect-ttl", "reject-msg-to-sender-on-discard", "dead-message-queue");
          
     // For SEMP rows nested a further level into the response, what is of interest?
     static final private String RESPONSE_ELEMENT_NAME_ROWS_L2 = "clients";
@@ -65,17 +73,15 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
     
     static final private  List<String> RESPONSE_ELEMENT_NAMES_IGNORE = Arrays.asList("event");
 
-    // When pretty printing numbers, which columns should be formatted? 
-    static final private List<String> RESPONSE_NUMBER_FORMAT_COLUMNS = Arrays.asList(
-    		"Spool Usage (MB)", "Spool Usage HWM (MB)"); 	
-    
     // What should be the formatting style?
     static final private String FLOAT_FORMAT_STYLE = "%.2f";	// 2 decimal places
     
-    // What is the desired order of columns? (Will be set after first getting a response)
-    private List<Integer> desiredColumnOrder;
+    // The headlines that are counts or whole number sums, in the order they are shown
+    static final private List<String> HEADLINE_COUNTS = Arrays.asList(
+    		"Topic Endpoints with Pending Messages", "Topic Endpoints with Bound Clients", "Topic Endpoints with Zero Bound Clients", 
+    		"Topic Endpoints with Unacked Messages", "Topic Endpoints with Ingress State Down", "Topic Endpoints with Egress State Down", "Total Messages Pending");
     
-    // When fixing the response for the disjointed table due to msg-id columns not always being present for some rows, which are those to shift it up?
+    // The msg-id columns are not present for some rows, which are those to leave empty when missing?
     static final private List<String> RESPONSE_OPTIONAL_COLUMNS = Arrays.asList(
     		"oldest-msg-id", "newest-msg-id"); 
     
@@ -89,17 +95,22 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
     				"Client ID", "Is Active?", "Window Size", "Connect Time", "Flow ID", "Last Msg ID Delivered", 
     				"Last Seen Client ID", "Last Seen Connect Time"));
     
-    private DefaultHttpClient httpClient;
-    private ResponseHandler<SampleHttpSEMPResponse> responseHandler;
+    private SEMPClient sempClient;
     private TargetedMultiRecordSEMPParser multiRecordParser;
+    // The headline totals, kept up to date by the parser as each row is parsed
+    private RowAggregator headlineAggregator;
+    // The top rows by spool utilisation of those without unacked messages, at most maxrows of them
+    private TopKRows remainderRanker;
+    // With a view per VPN, the rows of each VPN, and the top rows of each by spool utilisation the same as above
+    private RowPartitioner vpnPartitioner;
 
-    private Vector<ArrayList<String>> receivedTableContent;
-    
     private LinkedHashMap<String, Object> globalHeadlines = new LinkedHashMap<String, Object>();
     // Is the monitor creating a dataview per VPN or everything is in one view?
     private boolean multiview = false;
     // What is the maximum number of rows to limit the dataview to? Default 200 unless overridden.
     private int maxRows = 200;
+    // How many records to request per page when asking the broker for all of them. Default unless overridden.
+    private int pageSize = SEMPClient.DEFAULT_PAGE_SIZE;
     
     // If in multiview mode, list of detected VPN names
     private List<String> detectedVpns;
@@ -119,37 +130,12 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
     int isStandbyBrokerBefore = -1;
     int isStandbyBrokerNow = -1;
     
-    // When sorting the table rows before limiting to maxrows, how to prioritise the top of the cut?
-    // This comparator is used to sort the table so the highest spool utilisation percentage against the quota is at the top.
-    static class TopicEndpointsComparator implements Comparator<Object>
-    {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	double spoolUsage1 = Double.parseDouble( ((ArrayList<String>)tableRow1).get( COLUMN_NAME_OVERRIDE.indexOf("Spool Usage (MB)") ));
-        	double spoolQuota1 = Double.parseDouble( ((ArrayList<String>)tableRow1).get( COLUMN_NAME_OVERRIDE.indexOf("Spool Quota (MB)") ));
-        	double utilisation1 = (spoolQuota1 > 0) ? (spoolUsage1 / spoolQuota1) * 100 : 0;
-
-        	double spoolUsage2 = Double.parseDouble( ((ArrayList<String>)tableRow2).get( COLUMN_NAME_OVERRIDE.indexOf("Spool Usage (MB)") ));
-        	double spoolQuota2 = Double.parseDouble( ((ArrayList<String>)tableRow2).get( COLUMN_NAME_OVERRIDE.indexOf("Spool Quota (MB)") ));
-        	double utilisation2 = (spoolQuota2 > 0) ? (spoolUsage2 / spoolQuota2) * 100 : 0;
-
-            return Double.compare(utilisation2, utilisation1);	
-        }
+    // When limiting the table rows to maxrows, how to prioritise the top of the cut?
+    // The rows are ranked so the highest spool utilisation percentage against the quota is at the top.
+    static double getSpoolUtilisation(double spoolUsage, double spoolQuota) {
+    	return (spoolQuota > 0) ? (spoolUsage / spoolQuota) * 100 : 0;
     }
     
-    // For connected clients of non-exclusive TEs, how to sort the flow ID to only show the first entry?
-    static class FlowIDComparator implements Comparator<Object>
-    {
-        @SuppressWarnings("unchecked")
-		public int compare(Object tableRow1, Object tableRow2)
-        {
-        	long flowID1 = Long.parseLong( ((ArrayList<String>)tableRow1).get( RESPONSE_COLUMNS_L2.indexOf("flow-id") ));
-        	long flowID2 = Long.parseLong( ((ArrayList<String>)tableRow2).get( RESPONSE_COLUMNS_L2.indexOf("flow-id") ));
-            
-        	return Long.compare(flowID1, flowID2);	
-        }
-    }
     /**
      * This method is called after initialisation but before the monitor is started.
      * 
@@ -188,6 +174,9 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 		if (monitorPropsConfig != null && monitorPropsConfig.getProperties() != null) {
 			multiview = Boolean.parseBoolean(monitorPropsConfig.getProperties().get("multiview").toString());
 			maxRows = Integer.parseInt(monitorPropsConfig.getProperties().get("maxrows").toString());
+			if (monitorPropsConfig.getProperties().get("pagesize") != null) {
+				pageSize = Integer.parseInt(monitorPropsConfig.getProperties().get("pagesize").toString());
+			}
 		}
 		globalHeadlines.put("Maximum rows to display", maxRows);
 		
@@ -219,160 +208,130 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 			// Will add per-VPN ones after discovering them later...
 		}
         
-        // create a http client
-		httpClient = new DefaultHttpClient();
-		HttpParams httpParams = httpClient.getParams();
-				
-		// set connection target
-	    HttpHost target = new HttpHost(host, port);
-	    httpParams.setParameter(ClientPNames.DEFAULT_HOST, target);
-        
-        // set connection credential
-	    httpClient.getCredentialsProvider().setCredentials(
-	    		new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password));
-	    
-	    // response handler used http client to process http response and release
-	    // associated resources
-        responseHandler = new SampleResponseHandler();
+        // create a SEMP client for this monitor, the connections to the broker are pooled and shared by all monitors
+        sempClient = new SEMPClient(this.getName(), host, port, username, password);
         
         // create SEMP parser with the name of the element that contains the records
         multiRecordParser = new TargetedMultiRecordSEMPParser(
 				RESPONSE_ELEMENT_NAME_ROWS, RESPONSE_COLUMNS, RESPONSE_ELEMENT_NAMES_IGNORE, 
-				RESPONSE_ELEMENT_NAME_ROWS_L2, RESPONSE_COLUMNS_L2);		
-	}
+				RESPONSE_ELEMENT_NAME_ROWS_L2, RESPONSE_COLUMNS_L2);
+        
+        // and have it parse the topic endpoints straight into typed columns
+        ColumnSchema columnSchema = new ColumnSchema(RESPONSE_COLUMNS, RESPONSE_LONG_COLUMNS, RESPONSE_DECIMAL_COLUMNS);
+        columnSchema.setInternedColumns(RESPONSE_INTERNED_COLUMNS);
+        multiRecordParser.setColumnSchema(columnSchema);
+        
+        // Two optional fields are not in the response for every row, those are left empty.
+        // Any other column missing makes the row unusable, so have the parser drop such rows rather than keep them to be filtered out later.
+        multiRecordParser.setRequiredRowColumns(RESPONSE_COLUMNS.stream()
+        		.filter(column -> !column.equals("RowUID") && !RESPONSE_OPTIONAL_COLUMNS.contains(column))
+        		.collect(Collectors.toList()));
+        
+        // Have the parser keep the headline totals as it goes, per VPN too if there is a dataview per VPN
+        headlineAggregator = new RowAggregator();
+        headlineAggregator.addCountIf("Topic Endpoints with Pending Messages", "num-messages-spooled", msgs -> msgs > 0);
+        headlineAggregator.addCountIf("Topic Endpoints with Bound Clients", "bind-count", binds -> binds > 0);
+        headlineAggregator.addCountIf("Topic Endpoints with Zero Bound Clients", "bind-count", binds -> binds == 0);
+        headlineAggregator.addCountIf("Topic Endpoints with Unacked Messages", "total-delivered-unacked-msgs", unacked -> unacked != 0);
+        headlineAggregator.addCountIfEquals("Topic Endpoints with Ingress State Down", "ingress-config-status", "Down");
+        headlineAggregator.addCountIfEquals("Topic Endpoints with Egress State Down", "egress-config-status", "Down");
+        headlineAggregator.addSum("Total Messages Pending", "num-messages-spooled");
+        headlineAggregator.addDecimalSum("Total Spool Usage (MB)", "current-spool-usage-in-mb");
+        if (multiview) {
+        	headlineAggregator.setGroupByColumn("message-vpn");
+        }
+        multiRecordParser.setRowAggregator(headlineAggregator);
         
-	private void setDesiredColumnOrder (List<String> currentColumnNames) {
-	    
-		desiredColumnOrder = Arrays.asList(
-				currentColumnNames.indexOf("RowUID"), currentColumnNames.indexOf("name"), currentColumnNames.indexOf("message-vpn"),
-				currentColumnNames.indexOf("num-messages-spooled"), currentColumnNames.indexOf("current-spool-usage-in-mb"), currentColumnNames.indexOf("quota"), currentColumnNames.indexOf("high-water-mark-in-mb"),
-				currentColumnNames.indexOf("total-delivered-unacked-msgs"), currentColumnNames.indexOf("bind-count"), currentColumnNames.indexOf("max-bind-count"), currentColumnNames.indexOf("access-type"), 
-				currentColumnNames.indexOf("destination"), currentColumnNames.indexOf("durable"), currentColumnNames.indexOf("owner"), currentColumnNames.indexOf("ingress-config-status"), currentColumnNames.indexOf("egress-config-status"),
-				currentColumnNames.indexOf("oldest-msg-id"), currentColumnNames.indexOf("newest-msg-id"), currentColumnNames.indexOf("respect-ttl"), currentColumnNames.indexOf("max-ttl"), 
-				currentColumnNames.indexOf("reject-msg-to-sender-on-discard"), currentColumnNames.indexOf("max-redelivery"), currentColumnNames.indexOf("dead-message-queue")
-		);
+        // Rank the rows without unacked messages by spool utilisation, keeping only as many as could make the cut.
+        // In single view the parser ranks them as it goes, with a view per VPN they are ranked per VPN as the rows are split by VPN.
+        if (multiview) {
+        	vpnPartitioner = new RowPartitioner(maxRows, true);
+        }
+        else {
+        	remainderRanker = new TopKRows(maxRows, true);
+        	remainderRanker.setKeyColumns(Arrays.asList("current-spool-usage-in-mb", "quota", "total-delivered-unacked-msgs"),
+        		values -> (values[2] != 0) ? Double.NaN : getSpoolUtilisation(values[0], values[1]));
+        	multiRecordParser.setRowRanker(remainderRanker);
+        }
 	}
 
-	private void submitSEMPQuery (String sempQuery, SampleSEMPParser sempParser) throws Exception {
-		
-		// Get the first SEMP query response...
-		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
-		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
-		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
-		
-		
-		SampleHttpSEMPResponse resp = httpClient.execute(post, responseHandler);
-        if (resp.getStatusCode() != 200) {
-        	throw new Exception("Error occurred while sending request: " + resp.getStatusCode() 
-        			+ " - " + resp.getReasonPhrase());
-        }	        
-        String respBody = resp.getRespBody();        
-        sempParser.parse(respBody);
+	// The headline totals from the parser, for the VPN of the view if there is a view per VPN
+	private long getHeadlineTotal(String viewKey, String headline) {
+		return multiview ? headlineAggregator.getLong(viewKey, headline) : headlineAggregator.getLong(headline);
 	}
+	
+	private double getHeadlineDecimalTotal(String viewKey, String headline) {
+		return multiview ? headlineAggregator.getDouble(viewKey, headline) : headlineAggregator.getDouble(headline);
+	}
+	
 	/**
 	 * This method is responsible to collect data required for a view.
+	 * If the SEMP requests do not complete within the collect deadline, the views are marked as stale instead.
 	 * @return The next monitor state which should be State.REPORTING_QUEUE.
 	 */
-
-	@SuppressWarnings({ "unchecked", "static-access" })
 	@Override
 	protected State onCollect() throws Exception {
+		try {
+			return collect();
+		} catch (SEMPCollectAbortedException e) {
+			getLogger().error("Collect aborted, marking the views as stale. " + e.getMessage());
+			sempClient.getMonitorStats().abortCollect();
+			StaleViews.markStale(getViewMap(), globalHeadlines, e.getMessage());
+			return State.REPORTING_QUEUE;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "static-access" })
+	private State collect() throws Exception {
+
+		// Track how long each phase of this collect takes for the self-monitoring statistics, and start the clock on its deadline
+		sempClient.startCollect();
 
 		TreeMap<String, View> viewMap = getViewMap();
 		
 		LinkedHashMap<String, Object> headlines;
 		
-		submitSEMPQuery(SHOW_TES_REQUEST, multiRecordParser);
-		
-		List<String> currentColumnNames = multiRecordParser.getColumnNames();
-		
-		// Will take what is received as the table contents and then do further Java8 Streams based filtering... 
-		receivedTableContent = multiRecordParser.getTableContent();
-		
-		// Need to do some cleanup on the received table as two optional output fields cause some disjointed column alignment
-		Vector<ArrayList<String>> goodTableContent = new Vector<ArrayList<String>>();
-		Vector<ArrayList<String>> brokenTableContent = new Vector<ArrayList<String>>();
-
-		// To detect that, the expected number of columns is the column names list size if everything got provided
-		
-		goodTableContent.addAll(
-				receivedTableContent
-				.stream()
-				.filter( tableRow -> tableRow.size() == RESPONSE_COLUMNS.size())
-				.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-			);
-				
-		brokenTableContent.addAll(
-				receivedTableContent
-				.stream()
-				.filter( tableRow -> tableRow.size() == (RESPONSE_COLUMNS.size() - RESPONSE_OPTIONAL_COLUMNS.size()))
-				.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-			);
+		sempClient.submitSEMPQueryPaged(SHOW_TES_REQUEST, multiRecordParser, pageSize);
 		
-		// For the rows in the broken table, fix it by padding into the correct column position
-		// Note: Columns in the original response order still
-		
-		// First add the optional column names if missing from current response columns even
-		if (currentColumnNames.indexOf(RESPONSE_OPTIONAL_COLUMNS.get(0)) < 0) {
-			for (String optionalColumn : RESPONSE_OPTIONAL_COLUMNS) {
-				currentColumnNames.add(optionalColumn);	
-			}
-		}
-
-		// Because of the optional columns being present or not changing between polls, need to set the column order each time:
-		setDesiredColumnOrder(currentColumnNames);	
-				
-		for (String optionalColumn : RESPONSE_OPTIONAL_COLUMNS) {			
-			brokenTableContent.forEach(tableRow -> tableRow.add(currentColumnNames.indexOf(optionalColumn), ""));	
-		}
+		// The rows were parsed straight into the typed columns of the schema, in the order they are published
+		ColumnarTable receivedTable = multiRecordParser.getColumnarTable();
 		
-		// Merge it all together now...
-		goodTableContent.addAll(brokenTableContent);
+		// Look up the columns of interest once rather than for every row
+		final int vpnColumn = COLUMN_NAME_OVERRIDE.indexOf("Message VPN");
+		final int unackedColumn = COLUMN_NAME_OVERRIDE.indexOf("Delivered Messages Unacked");
+		final int spoolUsageColumn = COLUMN_NAME_OVERRIDE.indexOf("Spool Usage (MB)");
+		final int spoolQuotaColumn = COLUMN_NAME_OVERRIDE.indexOf("Spool Quota (MB)");
+		final int bindCountColumn = COLUMN_NAME_OVERRIDE.indexOf("Bind Count");
+		final int accessTypeColumn = COLUMN_NAME_OVERRIDE.indexOf("Access Type");
 		
-		// Reorder the merged table into the column order we want. 
-		Vector<ArrayList<String>> tempVpnLimitsTableContent = new Vector<ArrayList<String>>();
-		
-		// Iterate to each row in the table contents
-		for (int index = 0; index < goodTableContent.size(); index++) {
-			
-			// Build a new tableRow by adding to it in the right order 
-			ArrayList<String> tableRow = new ArrayList<String>();
-			
-			for (Integer columnNumber : this.desiredColumnOrder){
-				tableRow.add( goodTableContent.get(index).get(columnNumber));
-			}
-			// Add the newly created row to reorderedTableContent
-			tempVpnLimitsTableContent.add(tableRow); 
-		} 
-		goodTableContent = tempVpnLimitsTableContent;
-		
-		// NOTE: Table has been reordered from this point onwards. No further references to 'desiredColumnOrder' for column lookups
-		// All lookups should be based off 'COLUMN_NAME_OVERRIDE' and the user friendly column names, not the SEMP field name.
+		// Rows missing any of the required columns were dropped by the parser, so all the rows it returned are good
+		int[] goodRows = IntStream.range(0, receivedTable.getRowCount()).toArray();
 		
 	    // If connected to the broker that is in Active-Standby Role of 'Standby', several other columns are missing in the response. e.g. bind-count.
-	    // This situation can be detected if the received table content was non-zero, yet the final 'good' table content is empty.
+	    // This situation can be detected if the parser dropped rows, yet the final 'good' table content is empty.
 		// Create a message to explain this in the dataview, instructing the user to view the broker in the 'Active' role instead.
 		
-		isStandbyBrokerNow = (receivedTableContent.size() > 0 && goodTableContent.size() == 0) ? 1 : 0;
+		isStandbyBrokerNow = (multiRecordParser.getRejectedRowCount() > 0 && goodRows.length == 0) ? 1 : 0;
 		isStandbyBrokerBefore = (isStandbyBrokerBefore == -1) ? isStandbyBrokerNow : isStandbyBrokerBefore;
-		
+				
 		// Reset any previously saved table state
-		tablesPerView = new HashMap<String, Vector<ArrayList<String>>>();		
+		tablesPerView = new HashMap<String, Vector<ArrayList<String>>>();
+		// The rows of the received table that go into each view
+		Map<String, int[]> rowsPerView = new HashMap<String, int[]>();
 	
 		// Split into per-VPN datasets if split mode selected
 		if (multiview)
 		{
 			
-			// Get the distinct set of VPN names...
-			detectedVpns = new ArrayList<String>();
-			detectedVpns.addAll(
-				goodTableContent
-				.stream()
-				.map( tableRow -> tableRow.get( RESPONSE_COLUMNS.indexOf("message-vpn") ) )
-				.distinct()
-				.collect(Collectors.toCollection(ArrayList<String>::new))
-				);
+			// Split the rows by VPN in one go, ranking the rows of each VPN without unacked messages by spool utilisation as they are split
+			vpnPartitioner.clear();
+			for (int row : goodRows) {
+				vpnPartitioner.add(receivedTable.getString(vpnColumn, row), row, (receivedTable.getLong(unackedColumn, row) != 0) ? Double.NaN :
+						getSpoolUtilisation(receivedTable.getDouble(spoolUsageColumn, row), receivedTable.getDouble(spoolQuotaColumn, row)));
+			}
+			
+			// The distinct set of VPN names...
+			detectedVpns = new ArrayList<String>(vpnPartitioner.getGroups());
 
 			// Check if a view already exists for it, create it if not.
 			for (String vpnName : detectedVpns) {
@@ -382,26 +341,22 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 			        // Set them up and activate
 					viewMap.get(vpnName).setViewName(dataViewName + " - " + vpnName);
 					viewMap.get(vpnName).setActive(true);
+					
 				}
 				
-				// Create a filtered set of table rows just for this VPN
-				tablesPerView.put(vpnName, 
-						goodTableContent
-						.stream()
-						.filter(tableRow -> vpnName.equalsIgnoreCase( tableRow.get( RESPONSE_COLUMNS.indexOf("message-vpn") )    ) )
-						.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-					);	
+				// The table rows just for this VPN
+				rowsPerView.put(vpnName, vpnPartitioner.getRows(vpnName));
 			}
 						
 		}
 		else
 		{
 			// There isn't a table per VPN, there is just one table for the default view name too.
-			tablesPerView.put(defaultDataViewKey, goodTableContent);
+			rowsPerView.put(defaultDataViewKey, goodRows);
 		}
 		
 		// Now for each view, calculate the specific headlines just for that
-		for (String viewKey : tablesPerView.keySet())
+		for (String viewKey : rowsPerView.keySet())
 		{
 			
 			headlines = new LinkedHashMap<String, Object>();
@@ -409,138 +364,49 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 			headlines.put("Last Sample Time", SolGeneosAgent.onlyInstance.getCurrentTimeString());
 			
 
-			goodTableContent = tablesPerView.get(viewKey);
+			int[] viewRows = rowsPerView.get(viewKey);
 			
 			// Is there any content even for this particular view?
-			if (goodTableContent.size() > 0) 
+			if (viewRows.length > 0) 
 			{
 				
-				// Build up some summary headlines on the data. 
-				long endpointsWithMsgs = 
-						goodTableContent
-						.stream()
-						.map( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Messages Spooled") ) )	// Only num-messages-spooled column
-						.mapToInt(Integer::parseInt)
-						.filter(x -> x > 0) 		// Only the non-zero entries
-						.count() ;
-				
-				long endpointsWithBinds = 
-						goodTableContent
-						.stream()
-						.map( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Bind Count") ) )	// Only bind-count column
-						.mapToInt(Integer::parseInt)
-						.filter(x -> x > 0) 		// Only the non-zero entries
-						.count() ;
-				
-				long endpointsWithZeroBinds = 
-						goodTableContent
-						.stream()
-						.map( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Bind Count") ) )	// Only bind-count column
-						.mapToInt(Integer::parseInt)
-						.filter(x -> x == 0) 		// Only the non-zero entries
-						.count() ;
-				
-				long endpointsWithUnackedMsgs = 
-						goodTableContent
-						.stream()
-						.filter( tableRow -> !tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Delivered Messages Unacked") ).equalsIgnoreCase("0") )
-						.count() ;
-				
-				long endpointsWithIngressDown = 
-						goodTableContent
-						.stream()
-						.filter( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Ingress Status") ).equalsIgnoreCase("Down") )
-						.count() ;
-				
-				long endpointsWithEgressDown = 
-						goodTableContent
-						.stream()
-						.filter( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Egress Status") ).equalsIgnoreCase("Down") )
-						.count() ;
-				
-				long sumEndpointsMsgs = 
-						goodTableContent
-						.stream()
-						.map( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Messages Spooled") ) )	// Only num-messages-spooled column
-						.mapToLong(Long::parseLong) 	
-						.sum() ;
-				
-				double sumSpoolUsage = 
-						goodTableContent
-						.stream()
-						.map( tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Spool Usage (MB)") ) )	// Only current-spool-usage-in-mb column
-						.mapToDouble(Double::parseDouble)	
-						.sum() ;
-				
+				// The summary headlines were totalled by the parser as it went, for this view's VPN if there is a view per VPN
 				// (Geneos does not support long values.)
-				headlines.put("Topic Endpoints with Pending Messages", Long.toString(endpointsWithMsgs) );
-				headlines.put("Topic Endpoints with Bound Clients", Long.toString(endpointsWithBinds) );
-				headlines.put("Topic Endpoints with Zero Bound Clients", Long.toString(endpointsWithZeroBinds) );
-				headlines.put("Topic Endpoints with Unacked Messages", Long.toString(endpointsWithUnackedMsgs) );
-				headlines.put("Topic Endpoints with Ingress State Down", Long.toString(endpointsWithIngressDown) );
-				headlines.put("Topic Endpoints with Egress State Down", Long.toString(endpointsWithEgressDown) );
-				headlines.put("Total Messages Pending", Long.toString(sumEndpointsMsgs) );
-				headlines.put("Total Spool Usage (MB)", String.format(FLOAT_FORMAT_STYLE, sumSpoolUsage));
-				headlines.put("Total Topic Endpoints Count", goodTableContent.size());
+				for (String headline : HEADLINE_COUNTS) {
+					headlines.put(headline, Long.toString(getHeadlineTotal(viewKey, headline)) );
+				}
+				headlines.put("Total Spool Usage (MB)", String.format(FLOAT_FORMAT_STYLE, getHeadlineDecimalTotal(viewKey, "Total Spool Usage (MB)")));
+				headlines.put("Total Topic Endpoints Count", viewRows.length);
 				
 				// When there are more endpoints than the allowed row limit, how to prioritise what makes the cut?
-				// Endpoints with Unacknowledged messages at the top. Then sort the remainder entries by spool utilisation.
+				// Endpoints with Unacknowledged messages at the top. Then sort the remainder entries by spool utilisation. 
 				// Sort the list to show entries needing attention near to the top. Then also limit to the max row count if exceeding it...
 				Vector<ArrayList<String>> tempTableContent = new Vector<ArrayList<String>>();
-				Vector<ArrayList<String>> tempRemainderTableContent = new Vector<ArrayList<String>>();
 				Vector<ArrayList<String>> tempTableContentClients;
 				
-				tempTableContent.addAll(
-						goodTableContent
-						.stream()
-						.filter(tableRow -> !tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Delivered Messages Unacked")).equalsIgnoreCase("0"))
-						.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-						);
+				int[] unackedRows = 
+						IntStream.of(viewRows)
+						.filter(row -> receivedTable.getLong(unackedColumn, row) != 0)
+						.toArray();
 				
-				tempRemainderTableContent = 
-						goodTableContent
-						.stream()
-						.filter(tableRow -> tableRow.get( COLUMN_NAME_OVERRIDE.indexOf("Delivered Messages Unacked")).equalsIgnoreCase("0"))
-						.collect(Collectors.toCollection(Vector<ArrayList<String>>::new));
-						
+				long endpointsWithUnackedMsgs = getHeadlineTotal(viewKey, "Topic Endpoints with Unacked Messages");
 				long rowsAllowance = (endpointsWithUnackedMsgs < maxRows)? maxRows - endpointsWithUnackedMsgs : maxRows;
-
-				tempTableContent.addAll(
-						tempRemainderTableContent
-						.stream()
-						.sorted(new TopicEndpointsComparator())
-						.limit(rowsAllowance)
-						.collect(Collectors.toCollection(Vector<ArrayList<String>>::new))
-						);
 				
-				goodTableContent = tempTableContent;
-
+				// The rest by spool utilisation, already ranked by the parser if there is just the one view, or when split by VPN if a view per VPN
+				int[] rankedRows = multiview ? vpnPartitioner.getRanker(viewKey).getRows() : remainderRanker.getRows();
+				int[] remainderRows = Arrays.copyOf(rankedRows, (int) Math.min(rowsAllowance, rankedRows.length));
 				
-				// Pretty up the MB usage numbers. Get the value, format it, set it back. NOTE: Do it as close to the final step towards publishing the table
-			    for (String columnToNumberFormat : RESPONSE_NUMBER_FORMAT_COLUMNS) 
-			    { 		      
-			    	goodTableContent.forEach(tableRow -> tableRow
-			    			.set(COLUMN_NAME_OVERRIDE.indexOf(columnToNumberFormat), 
-			    					String.format(FLOAT_FORMAT_STYLE, 
-			    							Double.parseDouble(
-			    									tableRow.get(COLUMN_NAME_OVERRIDE.indexOf(columnToNumberFormat))
-			    									)
-			    							) 
-			    					)
-							);	
-			    }
-			    
-			    // Finally, for the final list of queues, annotate with extra columns with details of the bound consumer only if bind-count=1
-				tempTableContent = new Vector<ArrayList<String>>();
+				int[] selectedRows = IntStream.concat(IntStream.of(unackedRows), IntStream.of(remainderRows)).toArray();
+			   				
+				// Finally, for the final list of topic endpoints, annotate with extra columns with details of the bound consumer only if bind-count=1
 				List<String> tempL2ColumnNames;
-				String rowUID;
-				
-				for (int index = 0; index < goodTableContent.size(); index++) {
 					
-					// Build a new tableRow by adding to it with necessary annotations 
-					ArrayList<String> tableRow = goodTableContent.get(index);
-					String bindCount = tableRow.get(COLUMN_NAME_OVERRIDE.indexOf("Bind Count"));
-					String accessType = tableRow.get(COLUMN_NAME_OVERRIDE.indexOf("Access Type"));
+				for (int row : selectedRows) {
+					
+					// Only the rows that made the cut are turned back into text, with the MB usage numbers prettied up
+					ArrayList<String> tableRow = receivedTable.getRow(row, FLOAT_FORMAT_STYLE);
+					long bindCount = receivedTable.getLong(bindCountColumn, row);
+					String accessType = receivedTable.getString(accessTypeColumn, row);
 										
 					String clientID = "";
 					String isActive = "";
@@ -552,11 +418,10 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 					String lastSeenClientID = "";
 					String lastSeenConnectTime = "";
 				
-					rowUID = tableRow.get(COLUMN_NAME_OVERRIDE.indexOf("RowUID"));
 					tempL2ColumnNames = multiRecordParser.getColumnNamesLevel2();
-					tempTableContentClients = multiRecordParser.getTableContentLevel2(rowUID);
+					tempTableContentClients = multiRecordParser.getTableContentLevel2(row);
 					
-					if (!bindCount.equalsIgnoreCase("0")) {
+					if (bindCount != 0) {
 						
 						if (tempTableContentClients.size() > 0) {
 							
@@ -566,7 +431,7 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 							
 							ArrayList<String> tableRowClient;
 							
-							if (bindCount.equalsIgnoreCase("1")) {
+							if (bindCount == 1) {
 								// Just one bind, so first (and only) entry in the table
 								tableRowClient = tempTableContentClients.get(0);
 							}
@@ -581,12 +446,9 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 											.collect(Collectors.toList()).get(0);
 								}
 								else {
-									// Get the lowest flow ID (so earliest connected) of the set
-									tableRowClient = tempTableContentClients
-											.stream()
-											.sorted(new FlowIDComparator())
-											.limit(1)
-											.collect(Collectors.toList()).get(0);
+									// Get the lowest flow ID (so earliest connected) of the set, each flow ID parsed just the once
+									long[] flowIDs = SortKeys.getLongKeys(tempTableContentClients, RESPONSE_COLUMNS_L2.indexOf("flow-id"));
+									tableRowClient = tempTableContentClients.get(SortKeys.getFirstRow(flowIDs, false));
 								}
 							}
 														
@@ -610,11 +472,10 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 					// Add the newly created row to tempTableContent
 					tempTableContent.add(tableRow); 
 				}  
-				goodTableContent = tempTableContent;
 				
 				// Table content all complete now for publishing. Just add the column names too.
-				goodTableContent.add(0, this.COLUMN_NAME_OVERRIDE);	// No longer as received from parser in receivedColumnNames
-				tablesPerView.put(viewKey, goodTableContent);
+				tempTableContent.add(0, this.COLUMN_NAME_OVERRIDE);	// No longer as received from parser in receivedColumnNames
+				tablesPerView.put(viewKey, tempTableContent);
 				headlinesPerView.put(viewKey, headlines);	
 				
 			}
@@ -641,6 +502,7 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 			
 		}
 		
+		sempClient.getMonitorStats().startPublish();
 		// Now ready to publish each table to the available views... (Either one per VPN, or a default combined one.)
     	if (viewMap != null && viewMap.size() > 0) {
     		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();) 
@@ -685,6 +547,7 @@ public class TopicEndpointsExMonitor extends BaseMonitor implements MonitorConst
 			viewMarkedForDelete.clear();
     	}
     	
+    	sempClient.getMonitorStats().endCollect();
         return State.REPORTING_QUEUE;
 	}
 
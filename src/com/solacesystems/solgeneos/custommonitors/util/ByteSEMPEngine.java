@@ -0,0 +1,389 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parses a SEMP response straight from the UTF-8 bytes of the HTTP response, for the parsers configured with
+ * {@link SampleSEMPParser.Engine#BYTES}.
+ *
+ * SEMP responses are machine generated: elements and text only, no mixed content, no DTD, no namespaces. So rather
+ * than a general purpose XML parser, this is a tokenizer for just that shape. Like the StAX engine, it passes the
+ * events on to the parsers as SAX callbacks so they produce the same tables, and reads past the sections a parser
+ * skips. In addition:
+ * <ul>
+ * <li>Element names are looked up in a symbol table by their bytes, so each distinct name is only decoded to a String
+ * once, and kept for the next response parsed with the same engine.</li>
+ * <li>Text is only decoded to characters when the parser is collecting it, e.g. the values of the columns of a
+ * row. The text everywhere else in the response is scanned past as bytes.</li>
+ * </ul>
+ * An engine is kept by each parser and reused for every response it parses, so it is not thread safe.
+ */
+class ByteSEMPEngine {
+
+	// The parsers do not look at attributes
+	private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	// The bytes read from the response, of which those from pos to limit are still to be tokenized
+	private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private boolean endOfStream;
+	private InputStream in;
+
+	// The characters of the text last decoded
+	private char[] chars = new char[1024];
+
+	// Element names, by a hash of their bytes
+	private String[] names = new String[256];
+	private byte[][] nameBytes = new byte[256][];
+	private int nameCount = 0;
+
+	/**
+	 * @param respBodyStream The stream to read the SEMP response from
+	 * @param handler Where to pass the events on to, the parser itself or a filter in front of it
+	 * @param sempParser The parser, asked whether it is skipping a section or collecting text
+	 */
+	void parse(InputStream respBodyStream, DefaultHandler handler, SampleSEMPParser sempParser) throws Exception {
+
+		in = respBodyStream;
+		pos = 0;
+		limit = 0;
+		endOfStream = false;
+		try {
+			handler.startDocument();
+			while (ensureAvailable(1)) {
+				if (buf[pos] == '<') {
+					parseMarkup(handler, sempParser);
+				}
+				else {
+					parseText(handler, sempParser);
+				}
+			}
+			handler.endDocument();
+		}
+		finally {
+			in = null;
+		}
+	}
+
+	private void parseMarkup(DefaultHandler handler, SampleSEMPParser sempParser) throws Exception {
+
+		int end = indexOf('>', pos + 1);
+		if (end < 0) {
+			throw new SAXException("Unexpected end of SEMP response in a tag");
+		}
+		byte next = buf[pos + 1];
+		if (next == '?' || next == '!') {
+			skipDeclaration(handler);
+			return;
+		}
+		if (next == '/') {
+			// End tag
+			String qualifiedName = getName(pos + 2, end);
+			pos = end + 1;
+			handler.endElement("", "", qualifiedName);
+			return;
+		}
+
+		// Start tag, or an empty element tag
+		boolean emptyElement = buf[end - 1] == '/';
+		String qualifiedName = getName(pos + 1, emptyElement ? end - 1 : end);
+		pos = end + 1;
+		handler.startElement("", "", qualifiedName, NO_ATTRIBUTES);
+		if (!emptyElement && sempParser.isSkippingSection()) {
+			skipSubtree();
+			emptyElement = true;
+		}
+		if (emptyElement) {
+			handler.endElement("", "", qualifiedName);
+		}
+	}
+
+	// The XML declaration, comments and CDATA sections
+	private void skipDeclaration(DefaultHandler handler) throws Exception {
+
+		if (startsWith("<!--")) {
+			pos = indexOf("-->", pos + 4) + 3;
+		}
+		else if (startsWith("<![CDATA[")) {
+			int end = indexOf("]]>", pos + 9);
+			String text = new String(buf, pos + 9, end - pos - 9, StandardCharsets.UTF_8);
+			pos = end + 3;
+			handler.characters(text.toCharArray(), 0, text.length());
+		}
+		else {
+			pos = indexOf('>', pos + 1) + 1;
+		}
+	}
+
+	private void parseText(DefaultHandler handler, SampleSEMPParser sempParser) throws Exception {
+
+		int end = indexOf('<', pos);
+		if (end < 0) {
+			// Trailing whitespace after the last element
+			pos = limit;
+			return;
+		}
+		if (sempParser.isCollectingTextOrMoreCookie()) {
+			int length = decode(pos, end);
+			handler.characters(chars, 0, length);
+		}
+		pos = end;
+	}
+
+	// Read up to and including the end of the element just started, only counting the depth of the tags on the way
+	private void skipSubtree() throws Exception {
+
+		int depth = 1;
+		while (depth > 0) {
+			int start = indexOf('<', pos);
+			if (start < 0) {
+				throw new SAXException("Unexpected end of SEMP response in a skipped section");
+			}
+			pos = start;
+			if (startsWith("<!--") || startsWith("<![CDATA[") || startsWith("<?")) {
+				skipDeclaration(new DefaultHandler());
+				continue;
+			}
+			int end = indexOf('>', pos + 1);
+			if (end < 0) {
+				throw new SAXException("Unexpected end of SEMP response in a skipped section");
+			}
+			if (buf[pos + 1] == '/') {
+				depth--;
+			}
+			else if (buf[end - 1] != '/') {
+				depth++;
+			}
+			pos = end + 1;
+		}
+	}
+
+	// ==== Decoding ====
+
+	// The element name from the start of the tag up to the first whitespace, looked up in the symbol table
+	private String getName(int start, int end) {
+
+		int nameEnd = start;
+		int hash = 0;
+		while (nameEnd < end && !isWhitespace(buf[nameEnd])) {
+			hash = 31 * hash + buf[nameEnd];
+			nameEnd++;
+		}
+		int length = nameEnd - start;
+
+		int mask = names.length - 1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			byte[] bytes = nameBytes[slot];
+			if (bytes == null) {
+				String name = new String(buf, start, length, StandardCharsets.UTF_8);
+				bytes = new byte[length];
+				System.arraycopy(buf, start, bytes, 0, length);
+				addName(bytes, name, hash);
+				return name;
+			}
+			if (bytes.length == length && equalsBytes(bytes, start)) {
+				return names[slot];
+			}
+		}
+	}
+
+	private boolean equalsBytes(byte[] bytes, int start) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != buf[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addName(byte[] bytes, String name, int hash) {
+
+		if (++nameCount * 2 > names.length) {
+			// Keep the table at most half full
+			String[] oldNames = names;
+			byte[][] oldNameBytes = nameBytes;
+			names = new String[oldNames.length * 2];
+			nameBytes = new byte[oldNames.length * 2][];
+			for (int i = 0; i < oldNames.length; i++) {
+				if (oldNameBytes[i] != null) {
+					insertName(oldNameBytes[i], oldNames[i], hashOf(oldNameBytes[i]));
+				}
+			}
+		}
+		insertName(bytes, name, hash);
+	}
+
+	private void insertName(byte[] bytes, String name, int hash) {
+		int mask = names.length - 1;
+		int slot = hash & mask;
+		while (nameBytes[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		nameBytes[slot] = bytes;
+		names[slot] = name;
+	}
+
+	private static int hashOf(byte[] bytes) {
+		int hash = 0;
+		for (byte b : bytes) {
+			hash = 31 * hash + b;
+		}
+		return hash;
+	}
+
+	// Decode the UTF-8 text between start and end into chars, replacing the entity references
+	private int decode(int start, int end) throws SAXException {
+
+		if (chars.length < end - start) {
+			chars = new char[Math.max(end - start, chars.length * 2)];
+		}
+		int length = 0;
+		int i = start;
+		while (i < end) {
+			int b = buf[i] & 0xff;
+			if (b < 0x80) {
+				if (b == '&') {
+					int semicolon = i + 1;
+					while (semicolon < end && buf[semicolon] != ';') {
+						semicolon++;
+					}
+					int codePoint = decodeEntity(i + 1, semicolon);
+					length += Character.toChars(codePoint, chars, length);
+					i = semicolon + 1;
+				}
+				else {
+					chars[length++] = (char) b;
+					i++;
+				}
+			}
+			else {
+				// Multi-byte sequence
+				int extraBytes = (b >= 0xf0) ? 3 : (b >= 0xe0) ? 2 : 1;
+				int codePoint = b & (0x3f >> extraBytes);
+				for (int j = 1; j <= extraBytes && i + j < end; j++) {
+					codePoint = (codePoint << 6) | (buf[i + j] & 0x3f);
+				}
+				length += Character.toChars(codePoint, chars, length);
+				i += extraBytes + 1;
+			}
+		}
+		return length;
+	}
+
+	private int decodeEntity(int start, int end) throws SAXException {
+
+		String entity = new String(buf, start, end - start, StandardCharsets.US_ASCII);
+		switch (entity) {
+		case "lt": return '<';
+		case "gt": return '>';
+		case "amp": return '&';
+		case "quot": return '"';
+		case "apos": return '\'';
+		default:
+			if (entity.startsWith("#x")) {
+				return Integer.parseInt(entity.substring(2), 16);
+			}
+			if (entity.startsWith("#")) {
+				return Integer.parseInt(entity.substring(1));
+			}
+			throw new SAXException("Unknown entity reference in SEMP response: &" + entity + ";");
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	// ==== Buffering ====
+
+	// Whether there are at least the given number of bytes left to tokenize, reading more from the stream if needed
+	private boolean ensureAvailable(int count) throws IOException {
+		while (limit - pos < count && !endOfStream) {
+			readMore();
+		}
+		return limit - pos >= count;
+	}
+
+	// Keep the bytes not yet tokenized, and read more after them
+	private void readMore() throws IOException {
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			byte[] grown = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, grown, 0, limit);
+			buf = grown;
+		}
+		int read = in.read(buf, limit, buf.length - limit);
+		if (read < 0) {
+			endOfStream = true;
+		}
+		else {
+			limit += read;
+		}
+	}
+
+	// The position of the next occurrence of the byte from the given position, reading more as needed. -1 if there is none.
+	// Reading more can move the bytes in the buffer, so the positions are relative to pos until found.
+	private int indexOf(char c, int from) throws IOException {
+		int offset = from - pos;
+		while (true) {
+			for (int i = pos + offset; i < limit; i++) {
+				if (buf[i] == c) {
+					return i;
+				}
+			}
+			offset = limit - pos;
+			if (endOfStream) {
+				return -1;
+			}
+			readMore();
+		}
+	}
+
+	private int indexOf(String s, int from) throws IOException, SAXException {
+		// As above, but the whole string has to be found
+		int offset = from - pos;
+		while (true) {
+			int found = indexOf(s.charAt(0), pos + offset);
+			if (found < 0) {
+				throw new SAXException("Unexpected end of SEMP response, looking for " + s);
+			}
+			// Reading more can move the bytes in the buffer
+			int foundOffset = found - pos;
+			if (!ensureAvailable(foundOffset + s.length())) {
+				throw new SAXException("Unexpected end of SEMP response, looking for " + s);
+			}
+			found = pos + foundOffset;
+			if (regionMatches(found, s)) {
+				return found;
+			}
+			offset = found - pos + 1;
+		}
+	}
+
+	private boolean startsWith(String s) throws IOException {
+		return ensureAvailable(s.length()) && regionMatches(pos, s);
+	}
+
+	private boolean regionMatches(int at, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (buf[at + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,94 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The columns of a ColumnarTable: their SEMP element names, in the order they are to be published, and the type each
+ * value is parsed to once as the SEMP response is parsed.
+ *
+ * Columns the monitor counts, sums or sorts by are numbers, everything else is kept as the text received.
+ */
+public class ColumnSchema {
+
+	public static enum ColumnType {
+		STRING,
+		LONG,
+		DOUBLE,
+	}
+
+	private final List<String> columnNames;
+	private final ColumnType[] columnTypes;
+
+	// The column number of each element name, so the parser can look it up for each value in constant time
+	private final HashMap<String, Integer> columnIndexes = new HashMap<String, Integer>();
+
+	// Which of the string columns only ever hold a handful of distinct values, e.g. "Up"/"Down" or the VPN name
+	private final HashSet<Integer> internedColumns = new HashSet<Integer>();
+
+	/**
+	 * @param columnNames The element names of the columns, in the order they are to be published
+	 * @param longColumns Those of the columns that are whole numbers, e.g. message counts
+	 * @param doubleColumns Those of the columns that are decimal numbers, e.g. the spool usage in MB
+	 */
+	public ColumnSchema(List<String> columnNames, List<String> longColumns, List<String> doubleColumns) {
+		this.columnNames = columnNames;
+		this.columnTypes = new ColumnType[columnNames.size()];
+		for (int column = 0; column < columnNames.size(); column++) {
+			String columnName = columnNames.get(column);
+			columnIndexes.put(columnName, column);
+			if (longColumns.contains(columnName)) {
+				columnTypes[column] = ColumnType.LONG;
+			}
+			else if (doubleColumns.contains(columnName)) {
+				columnTypes[column] = ColumnType.DOUBLE;
+			}
+			else {
+				columnTypes[column] = ColumnType.STRING;
+			}
+		}
+	}
+
+	/**
+	 * @param internedColumns Those of the string columns with few distinct values, so each distinct value is kept once
+	 * rather than once per row
+	 */
+	public void setInternedColumns(List<String> internedColumns) {
+		this.internedColumns.clear();
+		for (String columnName : internedColumns) {
+			int column = getColumnIndex(columnName);
+			if (column >= 0 && columnTypes[column] == ColumnType.STRING) {
+				this.internedColumns.add(column);
+			}
+		}
+	}
+
+	public int size() {
+		return columnTypes.length;
+	}
+
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	public String getColumnName(int column) {
+		return columnNames.get(column);
+	}
+
+	public ColumnType getColumnType(int column) {
+		return columnTypes[column];
+	}
+
+	public boolean isInterned(int column) {
+		return internedColumns.contains(column);
+	}
+
+	/**
+	 * @return The column number of the element name, or -1 if it is not one of the columns
+	 */
+	public int getColumnIndex(String columnName) {
+		Integer column = columnIndexes.get(columnName);
+		return (column == null) ? -1 : column;
+	}
+}
@@ -0,0 +1,281 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A table of SEMP records held by column rather than by row, each column an array of the type set in its ColumnSchema.
+ *
+ * The values are parsed to numbers once, as the SEMP response is parsed, so the counting, summing and sorting that
+ * the monitors do over the table afterwards works on primitives. Only the rows that make it into a dataview are
+ * turned back into text, with getRow().
+ *
+ * The arrays are kept and reused from one response to the next, so a table is not thread safe.
+ */
+public class ColumnarTable {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final ColumnSchema schema;
+	private int rowCount = 0;
+	private int capacity = INITIAL_CAPACITY;
+
+	// One array per column, only the one for the column's type is used
+	private final long[][] longColumns;
+	private final double[][] doubleColumns;
+	private final String[][] stringColumns;
+
+	// Which rows have a value for each column, as SEMP leaves out some elements for some records
+	private final BitSet[] hasValue;
+
+	// For the numeric columns, the text of any values that were not numbers after all. Only created if there are any.
+	private final String[][] unparsedValues;
+
+	// The distinct values of each interned column, kept from one response to the next
+	private final InternPool[] internPools;
+
+	public ColumnarTable(ColumnSchema schema) {
+		this.schema = schema;
+		int columnCount = schema.size();
+		longColumns = new long[columnCount][];
+		doubleColumns = new double[columnCount][];
+		stringColumns = new String[columnCount][];
+		hasValue = new BitSet[columnCount];
+		unparsedValues = new String[columnCount][];
+		internPools = new InternPool[columnCount];
+		for (int column = 0; column < columnCount; column++) {
+			switch (schema.getColumnType(column)) {
+			case LONG:
+				longColumns[column] = new long[capacity];
+				break;
+			case DOUBLE:
+				doubleColumns[column] = new double[capacity];
+				break;
+			default:
+				stringColumns[column] = new String[capacity];
+				if (schema.isInterned(column)) {
+					internPools[column] = new InternPool(InternPool.DEFAULT_MAX_SIZE);
+				}
+			}
+			hasValue[column] = new BitSet(capacity);
+		}
+	}
+
+	/**
+	 * Empty the table for the next response, keeping the arrays allocated for the last one.
+	 */
+	public void clear() {
+		for (int column = 0; column < schema.size(); column++) {
+			// A row without a value reads as 0, and do not hold on to the strings of the last response
+			if (longColumns[column] != null) {
+				Arrays.fill(longColumns[column], 0, rowCount, 0);
+			}
+			if (doubleColumns[column] != null) {
+				Arrays.fill(doubleColumns[column], 0, rowCount, 0);
+			}
+			if (stringColumns[column] != null) {
+				Arrays.fill(stringColumns[column], 0, rowCount, null);
+			}
+			hasValue[column].clear();
+			unparsedValues[column] = null;
+		}
+		rowCount = 0;
+	}
+
+	/**
+	 * @return The row number of a new, empty, row at the end of the table
+	 */
+	public int addRow() {
+		if (rowCount == capacity) {
+			grow();
+		}
+		return rowCount++;
+	}
+
+	/**
+	 * Take the last row back off the end of the table, e.g. as it was filtered out once all of it had been parsed.
+	 */
+	public void removeLastRow() {
+		if (rowCount == 0) {
+			return;
+		}
+		int row = --rowCount;
+		for (int column = 0; column < schema.size(); column++) {
+			if (longColumns[column] != null) {
+				longColumns[column][row] = 0;
+			}
+			if (doubleColumns[column] != null) {
+				doubleColumns[column][row] = 0;
+			}
+			if (stringColumns[column] != null) {
+				stringColumns[column][row] = null;
+			}
+			if (unparsedValues[column] != null) {
+				unparsedValues[column][row] = null;
+			}
+			hasValue[column].clear(row);
+		}
+	}
+
+	/**
+	 * Add the rows of another table of the same schema after the rows of this one, e.g. the rows of one part of a
+	 * response parsed in parallel. The strings of the interned columns are interned in this table's pools.
+	 */
+	public void appendRows(ColumnarTable other) {
+		for (int otherRow = 0; otherRow < other.rowCount; otherRow++) {
+			int row = addRow();
+			for (int column = 0; column < schema.size(); column++) {
+				if (!other.hasValue[column].get(otherRow)) {
+					continue;
+				}
+				hasValue[column].set(row);
+				if (longColumns[column] != null) {
+					longColumns[column][row] = other.longColumns[column][otherRow];
+				}
+				else if (doubleColumns[column] != null) {
+					doubleColumns[column][row] = other.doubleColumns[column][otherRow];
+				}
+				else {
+					String value = other.stringColumns[column][otherRow];
+					stringColumns[column][row] = (internPools[column] != null) ? internPools[column].intern(value) : value;
+				}
+				if (other.unparsedValues[column] != null && other.unparsedValues[column][otherRow] != null) {
+					setUnparsedValue(column, row, other.unparsedValues[column][otherRow]);
+				}
+			}
+		}
+	}
+
+	private void grow() {
+		capacity = capacity * 2;
+		for (int column = 0; column < schema.size(); column++) {
+			if (longColumns[column] != null) {
+				longColumns[column] = Arrays.copyOf(longColumns[column], capacity);
+			}
+			if (doubleColumns[column] != null) {
+				doubleColumns[column] = Arrays.copyOf(doubleColumns[column], capacity);
+			}
+			if (stringColumns[column] != null) {
+				stringColumns[column] = Arrays.copyOf(stringColumns[column], capacity);
+			}
+			if (unparsedValues[column] != null) {
+				unparsedValues[column] = Arrays.copyOf(unparsedValues[column], capacity);
+			}
+		}
+	}
+
+	/**
+	 * Set a value from the text of its SEMP element, parsing it to the type of the column.
+	 */
+	public void setValue(int column, int row, CharSequence text) {
+		hasValue[column].set(row);
+		switch (schema.getColumnType(column)) {
+		case LONG:
+			if (!parseLong(column, row, text)) {
+				longColumns[column][row] = 0;
+				setUnparsedValue(column, row, text.toString());
+			}
+			break;
+		case DOUBLE:
+			try {
+				doubleColumns[column][row] = Double.parseDouble(text.toString());
+			} catch (NumberFormatException e) {
+				doubleColumns[column][row] = 0;
+				setUnparsedValue(column, row, text.toString());
+			}
+			break;
+		default:
+			stringColumns[column][row] = (internPools[column] != null) ? internPools[column].intern(text) : text.toString();
+		}
+	}
+
+	private boolean parseLong(int column, int row, CharSequence text) {
+		long value = SEMPNumbers.parseLongOrNotANumber(text);
+		if (value == SEMPNumbers.NOT_A_NUMBER) {
+			return false;
+		}
+		longColumns[column][row] = value;
+		return true;
+	}
+
+	private void setUnparsedValue(int column, int row, String text) {
+		if (unparsedValues[column] == null) {
+			unparsedValues[column] = new String[capacity];
+		}
+		unparsedValues[column][row] = text;
+	}
+
+	public ColumnSchema getSchema() {
+		return schema;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public boolean hasValue(int column, int row) {
+		return hasValue[column].get(row);
+	}
+
+	/**
+	 * @return The value of a numeric column as a whole number, or 0 if the row has none
+	 */
+	public long getLong(int column, int row) {
+		if (longColumns[column] != null) {
+			return longColumns[column][row];
+		}
+		return (long) getDouble(column, row);
+	}
+
+	/**
+	 * @return The value of a numeric column, or 0 if the row has none
+	 */
+	public double getDouble(int column, int row) {
+		if (doubleColumns[column] != null) {
+			return doubleColumns[column][row];
+		}
+		if (longColumns[column] != null) {
+			return longColumns[column][row];
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The value as text, as it was received for the string columns. Empty if the row has no value.
+	 */
+	public String getString(int column, int row) {
+		if (!hasValue[column].get(row)) {
+			return "";
+		}
+		if (stringColumns[column] != null) {
+			return stringColumns[column][row];
+		}
+		if (unparsedValues[column] != null && unparsedValues[column][row] != null) {
+			return unparsedValues[column][row];
+		}
+		if (longColumns[column] != null) {
+			return Long.toString(longColumns[column][row]);
+		}
+		return Double.toString(doubleColumns[column][row]);
+	}
+
+	/**
+	 * @param row The row to return
+	 * @param doubleFormat How to format the values of the decimal columns, e.g. "%.2f"
+	 * @return The row as text, in the column order of the schema, ready to add to a dataview
+	 */
+	public ArrayList<String> getRow(int row, String doubleFormat) {
+		ArrayList<String> tableRow = new ArrayList<String>(schema.size());
+		for (int column = 0; column < schema.size(); column++) {
+			if (doubleColumns[column] != null && hasValue[column].get(row)
+					&& (unparsedValues[column] == null || unparsedValues[column][row] == null)) {
+				tableRow.add(String.format(doubleFormat, doubleColumns[column][row]));
+			}
+			else {
+				tableRow.add(getString(column, row));
+			}
+		}
+		return tableRow;
+	}
+}
@@ -0,0 +1,83 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+/**
+ * A bounded pool of the distinct values seen in one column, so a value that repeats on every row, and on every poll,
+ * is returned as the one String rather than a new copy each time.
+ *
+ * Values are looked up straight from the text being parsed, so a value already in the pool costs no allocation at all.
+ * Once the pool holds its maximum number of values it stops taking new ones, and any other value is just returned as
+ * a new String. A column that turns out to have many distinct values so costs a fixed amount of memory, not more.
+ *
+ * A pool is kept by one parser or table, so it is not thread safe.
+ */
+class InternPool {
+
+	// Enough for the VPN names, client profiles and states of a large broker
+	static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final int maxSize;
+
+	// Open addressing, kept at most half full
+	private String[] values = new String[16];
+	private int size = 0;
+
+	InternPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return The pooled String equal to the text, adding it to the pool if it is new and there is room
+	 */
+	String intern(CharSequence text) {
+
+		// The same hash as String.hashCode(), which each pooled String has cached
+		int length = text.length();
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+
+		int mask = values.length - 1;
+		int slot = spread(hash) & mask;
+		String value;
+		while ((value = values[slot]) != null) {
+			if (value.hashCode() == hash && value.length() == length && value.contentEquals(text)) {
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		value = text.toString();
+		if (size < maxSize) {
+			values[slot] = value;
+			if (++size * 2 > values.length) {
+				grow();
+			}
+		}
+		return value;
+	}
+
+	private void grow() {
+		String[] oldValues = values;
+		values = new String[oldValues.length * 2];
+		int mask = values.length - 1;
+		for (String value : oldValues) {
+			if (value != null) {
+				int slot = spread(value.hashCode()) & mask;
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				values[slot] = value;
+			}
+		}
+	}
+
+	// Mix the high bits in, as values like "queue-0001" and "queue-0002" differ only in their last characters
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -68,4 +68,9 @@ public interface MonitorConstants {
      * Monitor Specific Properties File Name Suffix
      */
 	public static final String MONITOR_PROPERTIES_FILE_NAME_SUFFIX = ".properties";
+	
+    /**
+     * SEMP Client Properties File Name (agent-wide settings shared by all the monitors)
+     */
+	public static final String SEMP_CLIENT_PROPERTIES_FILE_NAME = "_user_SEMPClient.properties";
 }
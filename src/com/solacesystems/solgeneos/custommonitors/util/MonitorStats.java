@@ -0,0 +1,197 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Self-monitoring statistics for a custom monitor: how long its SEMP requests take, how large the responses are,
+ * how long they take to parse, and how long the monitor then spends shaping and publishing its dataviews.
+ *
+ * The SEMPClient records the per-request statistics. The monitor marks the phases of its onCollect() with
+ * {@link #startCollect()}, {@link #startPublish()} and {@link #endCollect()}. The time left over once the SEMP
+ * requests and publishing are taken out of the collect is the transform time.
+ */
+public class MonitorStats {
+
+	// All the monitors' statistics in the agent, by monitor name
+	private static final ConcurrentHashMap<String, MonitorStats> allMonitorStats = new ConcurrentHashMap<String, MonitorStats>();
+
+	private final String monitorName;
+
+	// Per-request statistics by the short description of the request, e.g. "show queue detail"
+	private final ConcurrentHashMap<String, QueryStats> queryStats = new ConcurrentHashMap<String, QueryStats>();
+
+	private final StatsHistogram collectTimeMicros = new StatsHistogram();
+	private final StatsHistogram transformTimeMicros = new StatsHistogram();
+	private final StatsHistogram publishTimeMicros = new StatsHistogram();
+
+	// How many collects were given up on, e.g. for running past their deadline or being held back by the circuit breaker
+	private final AtomicLong abortedCollects = new AtomicLong();
+
+	// The phases of the current collect, only ever touched from the monitor's own thread
+	private long collectStartTime = 0;
+	private long publishStartTime = 0;
+	private long sempWaitTime = 0;
+
+	/**
+	 * The statistics recorded for each SEMP request a monitor sends.
+	 */
+	public static class QueryStats {
+		private final StatsHistogram httpTimeMicros = new StatsHistogram();
+		private final StatsHistogram bytesReceived = new StatsHistogram();
+		private final StatsHistogram parseTimeMicros = new StatsHistogram();
+		private final StatsHistogram rowCount = new StatsHistogram();
+
+		public StatsHistogram getHttpTimeMicros() {
+			return httpTimeMicros;
+		}
+		public StatsHistogram getBytesReceived() {
+			return bytesReceived;
+		}
+		public StatsHistogram getParseTimeMicros() {
+			return parseTimeMicros;
+		}
+		public StatsHistogram getRowCount() {
+			return rowCount;
+		}
+	}
+
+	private MonitorStats(String monitorName) {
+		this.monitorName = monitorName;
+	}
+
+	/**
+	 * @param monitorName The name of the monitor
+	 * @return The statistics for that monitor, created on first use
+	 */
+	public static MonitorStats forMonitor(String monitorName) {
+		return allMonitorStats.computeIfAbsent(monitorName, name -> new MonitorStats(name));
+	}
+
+	/**
+	 * @return A snapshot of the statistics of all the monitors, in order of monitor name
+	 */
+	public static List<MonitorStats> getAllMonitorStats() {
+		List<MonitorStats> monitorStats = new ArrayList<MonitorStats>(allMonitorStats.values());
+		monitorStats.sort((stats1, stats2) -> stats1.monitorName.compareTo(stats2.monitorName));
+		return monitorStats;
+	}
+
+	/**
+	 * Record one SEMP request, including all its pages if it was paged.
+	 */
+	public void recordQuery(String sempQuery, long httpTimeNanos, long bytesReceived, long parseTimeNanos, long rowCount) {
+		QueryStats stats = queryStats.computeIfAbsent(describeQuery(sempQuery), description -> new QueryStats());
+		stats.httpTimeMicros.record(httpTimeNanos / 1000);
+		stats.bytesReceived.record(bytesReceived);
+		stats.parseTimeMicros.record(parseTimeNanos / 1000);
+		stats.rowCount.record(rowCount);
+	}
+
+	// Called by the SEMPClient for the time the monitor's thread spent waiting on SEMP requests
+	void addSEMPWaitTime(long waitTimeNanos) {
+		sempWaitTime += waitTimeNanos;
+	}
+
+	public void startCollect() {
+		collectStartTime = System.nanoTime();
+		publishStartTime = 0;
+		sempWaitTime = 0;
+	}
+
+	public void startPublish() {
+		publishStartTime = System.nanoTime();
+	}
+
+	public void endCollect() {
+		if (collectStartTime == 0) {
+			return;
+		}
+		long endTime = System.nanoTime();
+		if (publishStartTime == 0) {
+			publishStartTime = endTime;
+		}
+		collectTimeMicros.record((endTime - collectStartTime) / 1000);
+		transformTimeMicros.record((publishStartTime - collectStartTime - sempWaitTime) / 1000);
+		publishTimeMicros.record((endTime - publishStartTime) / 1000);
+		collectStartTime = 0;
+	}
+
+	/**
+	 * Mark the current collect as given up on or skipped. It is counted as aborted rather than recorded with the completed ones.
+	 */
+	public void abortCollect() {
+		abortedCollects.incrementAndGet();
+		collectStartTime = 0;
+	}
+
+	public String getMonitorName() {
+		return monitorName;
+	}
+
+	/**
+	 * @return A snapshot of the per-request statistics, in order of the request description
+	 */
+	public Map<String, QueryStats> getQueryStats() {
+		Map<String, QueryStats> snapshot = new LinkedHashMap<String, QueryStats>();
+		queryStats.keySet().stream().sorted().forEach(description -> snapshot.put(description, queryStats.get(description)));
+		return snapshot;
+	}
+
+	public StatsHistogram getCollectTimeMicros() {
+		return collectTimeMicros;
+	}
+
+	public StatsHistogram getTransformTimeMicros() {
+		return transformTimeMicros;
+	}
+
+	public StatsHistogram getPublishTimeMicros() {
+		return publishTimeMicros;
+	}
+
+	public long getAbortedCollects() {
+		return abortedCollects.get();
+	}
+
+	// Element names in the request that are either empty or self-closing, e.g. <detail></detail> or <stats/>
+	private static final Pattern EMPTY_ELEMENT = Pattern.compile("<([\\w-]+)\\s*(/>|>\\s*</\\1>)");
+	private static final Pattern FIRST_ELEMENT = Pattern.compile("<([\\w-]+)");
+
+	/**
+	 * Describe a SEMP request in a few words, from the command and its options.
+	 * e.g. <rpc><show><queue><name>*</name><detail/></queue></show></rpc> is described as "show queue detail".
+	 * Paged requests are described the same way as the first page, since only the values of their elements differ.
+	 */
+	public static String describeQuery(String sempQuery) {
+
+		int showStart = sempQuery.indexOf("<show>");
+		int showEnd = sempQuery.lastIndexOf("</show>");
+		if (showStart < 0 || showEnd < showStart) {
+			return SEMPResponseCache.normalise(sempQuery);
+		}
+		String command = sempQuery.substring(showStart + "<show>".length(), showEnd);
+
+		StringBuilder description = new StringBuilder("show");
+		int commandStart = -1;
+		Matcher firstElement = FIRST_ELEMENT.matcher(command);
+		if (firstElement.find()) {
+			description.append(' ').append(firstElement.group(1));
+			commandStart = firstElement.start();
+		}
+		Matcher emptyElement = EMPTY_ELEMENT.matcher(command);
+		while (emptyElement.find()) {
+			// The command itself may be empty, e.g. <service></service>, and the paging elements say nothing about what was asked for
+			if (emptyElement.start() != commandStart && !"count".equals(emptyElement.group(1))) {
+				description.append(' ').append(emptyElement.group(1));
+			}
+		}
+		return description.toString();
+	}
+}
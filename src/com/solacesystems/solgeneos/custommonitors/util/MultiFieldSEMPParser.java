@@ -60,6 +60,11 @@ public class MultiFieldSEMPParser extends SampleSEMPParser {
     	
     }
 
+    @Override
+    protected boolean isCollectingText() {
+    	return buildField;
+    }
+
     // characters() method is called when character data is found by SAXParser inside an element. 
     // Note that SAX parser may divide the data into multiple chunks and call characters() method multiple times 
     // Thats why we are using StringBuilder to keep this data for each element of interest using append() method.
@@ -73,6 +78,11 @@ public class MultiFieldSEMPParser extends SampleSEMPParser {
     	}
     }
        
+	@Override
+	public int getRowCount() {
+		return fieldsMap.size();
+	}
+
 	public HashMap<String, String> getFieldsMap() {
 		// Return the table without the column names. (To facilitate further processing of the table contents before publishing it.)
 		return this.fieldsMap;
@@ -33,6 +33,7 @@ public class MultiRecordSEMPParser extends SampleSEMPParser {
 	    
 	private Vector<Object> tableContent;
 	private ArrayList<String> tableRow;
+	private static final int INITIAL_TABLE_CAPACITY = 10;
     
     public MultiRecordSEMPParser(String elementName) throws ParserConfigurationException, SAXException {
     	super();
@@ -50,8 +51,8 @@ public class MultiRecordSEMPParser extends SampleSEMPParser {
     	// Clear the StringBuilder
     	sbElementContent.delete(0, sbElementContent.length());
     	
-    	// Reinitialise the tableContent object
-    	tableContent = new Vector<Object>();
+    	// Reinitialise the tableContent object, sized for as many rows as the last response had
+    	tableContent = new Vector<Object>(Math.max(INITIAL_TABLE_CAPACITY, (tableContent == null) ? 0 : tableContent.size()));
 
 	}
 	
@@ -113,11 +114,16 @@ public class MultiRecordSEMPParser extends SampleSEMPParser {
     	} 
     	else if (createRows)
     	{
-    		tableRow.add(sbElementContent.toString());	// String builder will be cleared the next time an element of interest starts
+    		tableRow.add(getColumnValue(qualifiedName, sbElementContent));	// String builder will be cleared the next time an element of interest starts
     	}
     	
     }
 
+    @Override
+    protected boolean isCollectingText() {
+    	return createRows;
+    }
+
     // characters() method is called when character data is found by SAXParser inside an element. 
     // Note that SAX parser may divide the data into multiple chunks and call characters() method multiple times 
     // Thats why we are using StringBuilder to keep this data for each element of interest using append() method.
@@ -137,6 +143,11 @@ public class MultiRecordSEMPParser extends SampleSEMPParser {
 		return tableContent;
 	}
 
+	@Override
+	public int getRowCount() {
+		return tableContent.size();
+	}
+
 	public List<String> getColumnNames() {
 		// Return the column names so it can added before publishing the content
 		return this.columnNames;
@@ -0,0 +1,338 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+/**
+ * Sums and counts over the columns of a SEMP response, such as the totals a monitor shows as its headlines.
+ *
+ * Once set on a parser with setRowAggregator(), the parser gives it the value of each column of interest as the
+ * column ends, and it adds the row to its totals when the row ends, only if the row filters keep the row.
+ * So the totals are ready as soon as the response is parsed, with no further passes over the table.
+ *
+ * The totals can also be kept per group, e.g. per VPN, as well as for the response as a whole. Grouped by more than one
+ * column, e.g. by VPN and client profile, the totals are an index of the rows by those columns, to look up the totals
+ * of each group straight away rather than filter the rows again for every group.
+ */
+public class RowAggregator {
+
+	private static enum Type {
+		COUNT,
+		SUM,
+		DECIMAL_SUM,
+		COUNT_IF,
+		COUNT_IF_EQUALS,
+	}
+
+	// The aggregates in the order they were added, and for each its type, column and condition
+	private final LinkedHashMap<String, Integer> aggregateIndexes = new LinkedHashMap<String, Integer>();
+	private final ArrayList<Type> types = new ArrayList<Type>();
+	private final ArrayList<LongPredicate> conditions = new ArrayList<LongPredicate>();
+	private final ArrayList<String> equalsValues = new ArrayList<String>();
+
+	// For each column element name, which aggregates use its value
+	private final HashMap<String, int[]> aggregatesByColumn = new HashMap<String, int[]>();
+
+	// The value of each aggregate for the row being parsed, only added to the totals when the row ends
+	private long[] rowLongs = new long[0];
+	private double[] rowDoubles = new double[0];
+
+	// If the totals are also kept per group, the columns whose values are the group and their values in the row being parsed
+	static final private String GROUP_NAME_DELIMITER = "?";
+	private final LinkedHashMap<String, Integer> groupByColumnIndexes = new LinkedHashMap<String, Integer>();
+	private String[] rowGroupValues = new String[0];
+	private final ArrayList<InternPool> groupValuePools = new ArrayList<InternPool>();
+	private final StringBuilder rowGroupBuilder = new StringBuilder();
+	private String rowGroup = "";
+	private final InternPool groupPool = new InternPool(InternPool.DEFAULT_MAX_SIZE);
+
+	private Totals totals = new Totals();
+	private final LinkedHashMap<String, Totals> groupTotals = new LinkedHashMap<String, Totals>();
+
+	private class Totals {
+		long[] longs = new long[types.size()];
+		double[] doubles = new double[types.size()];
+
+		void add(long[] longValues, double[] doubleValues) {
+			for (int aggregate = 0; aggregate < longs.length; aggregate++) {
+				longs[aggregate] += longValues[aggregate];
+				doubles[aggregate] += doubleValues[aggregate];
+			}
+		}
+	}
+
+	/**
+	 * Count the rows.
+	 */
+	public void addCount(String name) {
+		add(name, Type.COUNT, null, null, null);
+	}
+
+	/**
+	 * Sum a column of whole numbers.
+	 */
+	public void addSum(String name, String columnElementName) {
+		add(name, Type.SUM, columnElementName, null, null);
+	}
+
+	/**
+	 * Sum a column of decimal numbers.
+	 */
+	public void addDecimalSum(String name, String columnElementName) {
+		add(name, Type.DECIMAL_SUM, columnElementName, null, null);
+	}
+
+	/**
+	 * Count the rows whose whole number value of a column meets the condition. A row without the column is tested as 0.
+	 */
+	public void addCountIf(String name, String columnElementName, LongPredicate condition) {
+		add(name, Type.COUNT_IF, columnElementName, condition, null);
+	}
+
+	/**
+	 * Count the rows whose value of a column is the given value, ignoring case.
+	 */
+	public void addCountIfEquals(String name, String columnElementName, String value) {
+		add(name, Type.COUNT_IF_EQUALS, columnElementName, null, value);
+	}
+
+	private void add(String name, Type type, String columnElementName, LongPredicate condition, String equalsValue) {
+		if (aggregateIndexes.containsKey(name)) {
+			throw new IllegalArgumentException("An aggregate named '" + name + "' has already been added");
+		}
+		int aggregate = types.size();
+		aggregateIndexes.put(name, aggregate);
+		types.add(type);
+		conditions.add(condition);
+		equalsValues.add(equalsValue);
+		if (columnElementName != null) {
+			int[] aggregates = aggregatesByColumn.get(columnElementName);
+			aggregates = (aggregates == null) ? new int[1] : Arrays.copyOf(aggregates, aggregates.length + 1);
+			aggregates[aggregates.length - 1] = aggregate;
+			aggregatesByColumn.put(columnElementName, aggregates);
+		}
+		rowLongs = new long[types.size()];
+		rowDoubles = new double[types.size()];
+		clear();
+	}
+
+	/**
+	 * Also keep the totals per distinct value of the given column, e.g. "message-vpn" for totals per VPN.
+	 */
+	public void setGroupByColumn(String columnElementName) {
+		setGroupByColumns(Arrays.asList(columnElementName));
+	}
+
+	/**
+	 * Also keep the totals per distinct combination of the values of the given columns, e.g. "message-vpn" and
+	 * "profile" for totals per client profile. The group of each is named by getGroupName() of those values.
+	 */
+	public void setGroupByColumns(List<String> columnElementNames) {
+		groupByColumnIndexes.clear();
+		groupValuePools.clear();
+		for (String columnElementName : columnElementNames) {
+			groupByColumnIndexes.put(columnElementName, groupByColumnIndexes.size());
+			groupValuePools.add(new InternPool(InternPool.DEFAULT_MAX_SIZE));
+		}
+		rowGroupValues = new String[columnElementNames.size()];
+		clear();
+	}
+
+	/**
+	 * @param groupByValues The values of the columns the totals are grouped by, in the same order
+	 * @return The name of the group of the rows with those values
+	 */
+	public static String getGroupName(String... groupByValues) {
+		return String.join(GROUP_NAME_DELIMITER, groupByValues);
+	}
+
+	/**
+	 * Zero the totals for the next response. Done by the parser when it starts parsing a response.
+	 */
+	public void clear() {
+		totals = new Totals();
+		groupTotals.clear();
+		resetRow();
+	}
+
+	private void resetRow() {
+		Arrays.fill(rowLongs, 0);
+		Arrays.fill(rowDoubles, 0);
+		for (int aggregate = 0; aggregate < types.size(); aggregate++) {
+			// A row always counts, the conditional counts are tested as the row's columns come
+			if (types.get(aggregate) == Type.COUNT) {
+				rowLongs[aggregate] = 1;
+			}
+			else if (types.get(aggregate) == Type.COUNT_IF && conditions.get(aggregate).test(0)) {
+				rowLongs[aggregate] = 1;
+			}
+		}
+		rowGroup = "";
+		Arrays.fill(rowGroupValues, "");
+	}
+
+	/**
+	 * @return A new aggregator with the same aggregates and grouping, for a parser parsing one part of a response
+	 */
+	RowAggregator newEmptyCopy() {
+		RowAggregator copy = new RowAggregator();
+		copy.aggregateIndexes.putAll(aggregateIndexes);
+		copy.types.addAll(types);
+		copy.conditions.addAll(conditions);
+		copy.equalsValues.addAll(equalsValues);
+		copy.aggregatesByColumn.putAll(aggregatesByColumn);
+		copy.rowLongs = new long[types.size()];
+		copy.rowDoubles = new double[types.size()];
+		copy.setGroupByColumns(new ArrayList<String>(groupByColumnIndexes.keySet()));
+		return copy;
+	}
+
+	/**
+	 * Add the totals of the rows another aggregator had, e.g. of one part of a response parsed in parallel, as if
+	 * those rows had come after the rows this one had. Any new groups are added after the groups this one had.
+	 */
+	void addTotals(RowAggregator other) {
+		totals.add(other.totals.longs, other.totals.doubles);
+		for (Map.Entry<String, Totals> otherGroup : other.groupTotals.entrySet()) {
+			String groupName = groupPool.intern(otherGroup.getKey());
+			Totals group = groupTotals.get(groupName);
+			if (group == null) {
+				group = new Totals();
+				groupTotals.put(groupName, group);
+			}
+			group.add(otherGroup.getValue().longs, otherGroup.getValue().doubles);
+		}
+	}
+
+	/**
+	 * Called by the parser as each column of a row ends.
+	 */
+	void collect(String columnElementName, CharSequence text) {
+		if (!groupByColumnIndexes.isEmpty()) {
+			Integer groupByColumn = groupByColumnIndexes.get(columnElementName);
+			if (groupByColumn != null) {
+				rowGroupValues[groupByColumn] = groupValuePools.get(groupByColumn).intern(text);
+			}
+		}
+		int[] aggregates = aggregatesByColumn.get(columnElementName);
+		if (aggregates == null) {
+			return;
+		}
+		for (int aggregate : aggregates) {
+			switch (types.get(aggregate)) {
+			case SUM:
+				rowLongs[aggregate] = SEMPNumbers.parseLong(text);
+				break;
+			case DECIMAL_SUM:
+				rowDoubles[aggregate] = SEMPNumbers.parseDouble(text);
+				break;
+			case COUNT_IF:
+				rowLongs[aggregate] = conditions.get(aggregate).test(SEMPNumbers.parseLong(text)) ? 1 : 0;
+				break;
+			case COUNT_IF_EQUALS:
+				rowLongs[aggregate] = contentEqualsIgnoreCase(equalsValues.get(aggregate), text) ? 1 : 0;
+				break;
+			default:
+			}
+		}
+	}
+
+	/**
+	 * Called by the parser as each row ends, with whether the row is kept.
+	 */
+	void endRow(boolean accepted) {
+		if (accepted) {
+			totals.add(rowLongs, rowDoubles);
+			if (!groupByColumnIndexes.isEmpty()) {
+				rowGroup = getRowGroup();
+				Totals group = groupTotals.get(rowGroup);
+				if (group == null) {
+					group = new Totals();
+					groupTotals.put(rowGroup, group);
+				}
+				group.add(rowLongs, rowDoubles);
+			}
+		}
+		resetRow();
+	}
+
+	// The group of the row being parsed, only made into a new String the first time the group is seen
+	private String getRowGroup() {
+		if (rowGroupValues.length == 1) {
+			return groupPool.intern(rowGroupValues[0]);
+		}
+		rowGroupBuilder.setLength(0);
+		for (int groupByColumn = 0; groupByColumn < rowGroupValues.length; groupByColumn++) {
+			if (groupByColumn > 0) {
+				rowGroupBuilder.append(GROUP_NAME_DELIMITER);
+			}
+			rowGroupBuilder.append(rowGroupValues[groupByColumn]);
+		}
+		return groupPool.intern(rowGroupBuilder);
+	}
+
+	/**
+	 * @return The count or whole number sum of the rows of the last parsed response
+	 */
+	public long getLong(String name) {
+		return totals.longs[getIndex(name)];
+	}
+
+	/**
+	 * @return The decimal sum of the rows of the last parsed response
+	 */
+	public double getDouble(String name) {
+		return totals.doubles[getIndex(name)];
+	}
+
+	/**
+	 * @return The count or whole number sum of the rows of the group, 0 if the group had no rows
+	 */
+	public long getLong(String group, String name) {
+		Totals groupTotal = groupTotals.get(group);
+		return (groupTotal == null) ? 0 : groupTotal.longs[getIndex(name)];
+	}
+
+	/**
+	 * @return The decimal sum of the rows of the group, 0 if the group had no rows
+	 */
+	public double getDouble(String group, String name) {
+		Totals groupTotal = groupTotals.get(group);
+		return (groupTotal == null) ? 0 : groupTotal.doubles[getIndex(name)];
+	}
+
+	/**
+	 * @return The groups of the last parsed response, in the order they were first seen
+	 */
+	public Set<String> getGroups() {
+		return groupTotals.keySet();
+	}
+
+	private int getIndex(String name) {
+		Integer aggregate = aggregateIndexes.get(name);
+		if (aggregate == null) {
+			throw new IllegalArgumentException("No aggregate named '" + name + "'");
+		}
+		return aggregate;
+	}
+
+	private static boolean contentEqualsIgnoreCase(String value, CharSequence text) {
+		if (value.length() != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char a = value.charAt(i);
+			char b = text.charAt(i);
+			if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b) && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
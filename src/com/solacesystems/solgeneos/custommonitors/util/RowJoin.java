@@ -0,0 +1,126 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * The rows of several SEMP responses about the same things, e.g. the details and the stats of each client, joined into
+ * the rows of one table by their key, such as the RowUID.
+ *
+ * Each joined row is written straight into the columns wanted, in the order wanted, with each column taken from the
+ * first of the responses that has it. So the columns the responses have in common, such as the RowUID and name, are
+ * only taken once, and the rows of the responses are neither copied nor changed on the way.
+ */
+public class RowJoin {
+
+	// The element names of the columns of the joined rows, in their order
+	private final List<String> columnNames;
+	private String missingValue = "";
+
+	// For each column of the joined rows, which response and which of its columns it is taken from, -1 if none has it
+	private int[] sourceTables;
+	private int[] sourceColumns;
+	private int tableCount = 0;
+
+	/**
+	 * @param columnNames The element names of the columns of the joined rows, in the order they are to be published
+	 */
+	public RowJoin(List<String> columnNames) {
+		this.columnNames = new ArrayList<String>(columnNames);
+		sourceTables = new int[columnNames.size()];
+		sourceColumns = new int[columnNames.size()];
+		Arrays.fill(sourceTables, -1);
+		Arrays.fill(sourceColumns, -1);
+	}
+
+	/**
+	 * What to put in a column that none of the responses has, or whose response has no row for the key. Empty unless set.
+	 */
+	public void setMissingValue(String missingValue) {
+		this.missingValue = missingValue;
+	}
+
+	/**
+	 * Work out which response each column is taken from, once the column names of the responses are known.
+	 *
+	 * @param tablesColumnNames The column names of each response, in the order the rows of the responses are given
+	 */
+	@SafeVarargs
+	public final void setTableColumnNames(List<String>... tablesColumnNames) {
+		tableCount = tablesColumnNames.length;
+		for (int column = 0; column < columnNames.size(); column++) {
+			sourceTables[column] = -1;
+			sourceColumns[column] = -1;
+			for (int table = 0; table < tableCount; table++) {
+				int sourceColumn = tablesColumnNames[table].indexOf(columnNames.get(column));
+				if (sourceColumn >= 0) {
+					sourceTables[column] = table;
+					sourceColumns[column] = sourceColumn;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The columns of the joined rows that none of the responses has
+	 */
+	public List<String> getMissingColumns() {
+		List<String> missingColumns = new ArrayList<String>();
+		for (int column = 0; column < columnNames.size(); column++) {
+			if (sourceTables[column] < 0) {
+				missingColumns.add(columnNames.get(column));
+			}
+		}
+		return missingColumns;
+	}
+
+	/**
+	 * @param rows The row of each response for the same key, in the same order as their column names were set.
+	 * Null if a response has no row for the key.
+	 * @return The joined row
+	 */
+	@SafeVarargs
+	public final ArrayList<String> joinRow(List<String>... rows) {
+		if (rows.length != tableCount) {
+			throw new IllegalArgumentException("Expected the rows of " + tableCount + " responses, not " + rows.length);
+		}
+		ArrayList<String> joinedRow = new ArrayList<String>(columnNames.size());
+		for (int column = 0; column < sourceTables.length; column++) {
+			int table = sourceTables[column];
+			List<String> row = (table < 0) ? null : rows[table];
+			joinedRow.add((row == null || sourceColumns[column] >= row.size()) ? missingValue : row.get(sourceColumns[column]));
+		}
+		return joinedRow;
+	}
+
+	/**
+	 * Join the responses by the key their rows are held by, e.g. as from getData() of the parsers.
+	 *
+	 * @param tables The rows of each response by their key, in the same order as their column names were set. There is
+	 * a joined row for each row of the first response, in the order of its keys, but only if all the other responses
+	 * also have a row for its key. (A client that disconnected between the responses, say, is left out.)
+	 * @return The joined rows
+	 */
+	@SafeVarargs
+	public final Vector<ArrayList<String>> join(Map<String, ? extends List<String>>... tables) {
+		Vector<ArrayList<String>> joinedRows = new Vector<ArrayList<String>>(tables[0].size());
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<String>[] rows = new List[tables.length];
+		for (Map.Entry<String, ? extends List<String>> entry : tables[0].entrySet()) {
+			rows[0] = entry.getValue();
+			boolean allTables = true;
+			for (int table = 1; table < tables.length && allTables; table++) {
+				rows[table] = tables[table].get(entry.getKey());
+				allTables = rows[table] != null;
+			}
+			if (allTables) {
+				joinedRows.add(joinRow(rows));
+			}
+		}
+		return joinedRows;
+	}
+}
@@ -0,0 +1,108 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * The rows of a table split by the value of one of their columns, e.g. by Message VPN for a dataview per VPN.
+ *
+ * Each row is put in its group as the table is gone through once, rather than the whole table being filtered again
+ * for each group. Each group keeps its row numbers in table order, and can rank its rows as they are added, keeping
+ * only the top rows of the group the same as TopKRows does for a whole table.
+ * (The totals per group are kept by a RowAggregator with setGroupByColumn().)
+ */
+public class RowPartitioner {
+
+	private static final int INITIAL_PARTITION_CAPACITY = 16;
+
+	private final int rankLimit;
+	private final boolean highestFirst;
+
+	// The groups in the order they were first seen
+	private final LinkedHashMap<String, Partition> partitions = new LinkedHashMap<String, Partition>();
+
+	private class Partition {
+		int[] rows = new int[INITIAL_PARTITION_CAPACITY];
+		int size = 0;
+		final TopKRows ranker = new TopKRows(rankLimit, highestFirst);
+
+		void add(int row) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = row;
+		}
+	}
+
+	/**
+	 * @param rankLimit How many rows of each group to keep ranked
+	 * @param highestFirst Whether the rows with the highest keys rank first, rather than the lowest
+	 */
+	public RowPartitioner(int rankLimit, boolean highestFirst) {
+		this.rankLimit = rankLimit;
+		this.highestFirst = highestFirst;
+	}
+
+	/**
+	 * Forget the groups and their rows, for the next response.
+	 */
+	public void clear() {
+		partitions.clear();
+	}
+
+	/**
+	 * Add a row to its group, without ranking it.
+	 *
+	 * @param group The value of the column the rows are split by
+	 * @param row The row number in the table
+	 */
+	public void add(String group, int row) {
+		getPartition(group).add(row);
+	}
+
+	/**
+	 * Add a row to its group, and offer it to the group's ranking.
+	 *
+	 * @param group The value of the column the rows are split by
+	 * @param row The row number in the table
+	 * @param key What the row is ranked by within its group, NaN to leave it out of the ranking
+	 */
+	public void add(String group, int row, double key) {
+		Partition partition = getPartition(group);
+		partition.add(row);
+		partition.ranker.offer(row, key);
+	}
+
+	private Partition getPartition(String group) {
+		Partition partition = partitions.get(group);
+		if (partition == null) {
+			partition = new Partition();
+			partitions.put(group, partition);
+		}
+		return partition;
+	}
+
+	/**
+	 * @return The groups, in the order their first rows were added
+	 */
+	public Set<String> getGroups() {
+		return partitions.keySet();
+	}
+
+	/**
+	 * @return The row numbers of the rows of the group, in the order they were added. Empty if the group has none.
+	 */
+	public int[] getRows(String group) {
+		Partition partition = partitions.get(group);
+		return (partition == null) ? new int[0] : Arrays.copyOf(partition.rows, partition.size);
+	}
+
+	/**
+	 * @return The top ranked rows of the group, at most the rank limit of them, or null if the group has no rows
+	 */
+	public TopKRows getRanker(String group) {
+		Partition partition = partitions.get(group);
+		return (partition == null) ? null : partition.ranker;
+	}
+}
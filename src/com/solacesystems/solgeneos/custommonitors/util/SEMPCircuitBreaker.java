@@ -0,0 +1,185 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+/**
+ * Circuit breaker for the SEMP requests to one broker, shared by all the monitors polling that broker.
+ *
+ * The outcome and latency of every request is recorded, and judged a window of requests at a time:
+ * <ul>
+ * <li>If too many requests in the window failed, the breaker opens and all monitors skip their polls until it
+ * has been open for a while. It then half-opens and lets the light monitors poll again as a probe. (A heavy monitor
+ * probes only if no other monitor has for as long again, so a broker polled by heavy monitors alone is still probed.)
+ * If a probe request fails the breaker opens again, for twice as long each time.</li>
+ * <li>If the requests were slow, the heavy monitors (e.g. the ones fetching every queue in detail) are stretched
+ * to only poll every 2nd sample, then every 4th, up to every {@link #MAX_STRETCH_FACTOR}th sample.</li>
+ * <li>Each healthy window halves the stretch, so the heavy monitors come back to their full polling rate gradually.
+ * A breaker that has just closed after being open starts fully stretched for the same reason.</li>
+ * </ul>
+ */
+public class SEMPCircuitBreaker {
+
+	public static enum State {
+		CLOSED,
+		STRETCHED,
+		OPEN,
+		HALF_OPEN,
+	}
+
+	// How many requests are judged together
+	static final public int WINDOW_SIZE = 10;
+
+	// How many requests have to succeed while half-open before the breaker closes again
+	static final public int PROBE_SUCCESSES_TO_CLOSE = 3;
+
+	// The most polls a heavy monitor is stretched to, and the longest the breaker is kept open for
+	static final public int MAX_STRETCH_FACTOR = 8;
+	static final public long MAX_OPEN_MS = 600000;
+
+	private final String brokerName;
+	private final int errorRateThreshold;
+	private final long latencyThresholdMs;
+	private final long baseOpenMs;
+
+	private State state = State.CLOSED;
+	private int stretchFactor = 1;
+
+	// The requests in the current window
+	private int windowRequests = 0;
+	private int windowFailures = 0;
+	private long windowLatencyMs = 0;
+
+	// While open, how long for and until when. While half-open, how many probe requests have succeeded and when a
+	// monitor was last let through to probe.
+	private long openMs;
+	private long openUntil = 0;
+	private int probeSuccesses = 0;
+	private long lastProbeTime = 0;
+
+	/**
+	 * @param brokerName The broker the requests are sent to, for display
+	 * @param errorRateThreshold The percentage of failed requests in a window that opens the breaker
+	 * @param latencyThresholdMs The average request latency in a window that stretches the heavy monitors
+	 * @param openMs How long the breaker stays open the first time it opens
+	 */
+	public SEMPCircuitBreaker(String brokerName, int errorRateThreshold, long latencyThresholdMs, long openMs) {
+		this.brokerName = brokerName;
+		this.errorRateThreshold = errorRateThreshold;
+		this.latencyThresholdMs = latencyThresholdMs;
+		this.baseOpenMs = openMs;
+		this.openMs = openMs;
+	}
+
+	/**
+	 * Record the outcome of a SEMP request to the broker.
+	 *
+	 * @param failed Whether the request failed, including timing out or being aborted
+	 * @param latencyMs How long the broker took to respond, or to fail
+	 */
+	public synchronized void recordRequest(boolean failed, long latencyMs) {
+
+		if (state == State.OPEN) {
+			// A straggler from before the breaker opened, it has already been counted
+			return;
+		}
+		if (state == State.HALF_OPEN) {
+			if (failed) {
+				open(Math.min(openMs * 2, MAX_OPEN_MS));
+			}
+			else if (++probeSuccesses >= PROBE_SUCCESSES_TO_CLOSE) {
+				// Closed again, but bring the heavy monitors back gradually
+				state = State.STRETCHED;
+				stretchFactor = MAX_STRETCH_FACTOR;
+				openMs = baseOpenMs;
+				resetWindow();
+			}
+			return;
+		}
+
+		windowRequests++;
+		windowLatencyMs += latencyMs;
+		if (failed) {
+			windowFailures++;
+		}
+		if (windowRequests < WINDOW_SIZE) {
+			return;
+		}
+
+		// Judge the window
+		if (windowFailures * 100 >= errorRateThreshold * windowRequests) {
+			open(openMs);
+		}
+		else if (windowLatencyMs / windowRequests >= latencyThresholdMs) {
+			stretchFactor = Math.min(stretchFactor * 2, MAX_STRETCH_FACTOR);
+			state = State.STRETCHED;
+		}
+		else {
+			stretchFactor = Math.max(stretchFactor / 2, 1);
+			state = (stretchFactor > 1) ? State.STRETCHED : State.CLOSED;
+		}
+		resetWindow();
+	}
+
+	/**
+	 * @param heavyMonitor Whether the monitor asking is one of the heavy monitors
+	 * @return How many samples the monitor should poll once every, or 0 if it should not poll at all at the moment
+	 */
+	public synchronized int getPollInterval(boolean heavyMonitor) {
+
+		long now = System.currentTimeMillis();
+		if (state == State.OPEN && now >= openUntil) {
+			state = State.HALF_OPEN;
+			probeSuccesses = 0;
+			lastProbeTime = now;
+		}
+		switch (state) {
+		case OPEN:
+			return 0;
+		case HALF_OPEN:
+			// The light monitors probe the broker. A heavy monitor only does if none has for as long as the breaker was
+			// open, as otherwise a broker only polled by heavy monitors would never be probed and never close again.
+			if (heavyMonitor && now - lastProbeTime < openMs) {
+				return 0;
+			}
+			lastProbeTime = now;
+			return 1;
+		default:
+			return heavyMonitor ? stretchFactor : 1;
+		}
+	}
+
+	public String getBrokerName() {
+		return brokerName;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return The state of the breaker and what it means for the monitors, for display as a headline
+	 */
+	public synchronized String describeState() {
+		switch (state) {
+		case OPEN:
+			return State.OPEN + " - all monitors paused for " + (openMs / 1000) + " secs";
+		case HALF_OPEN:
+			return State.HALF_OPEN + " - heavy monitors paused while the broker is probed";
+		case STRETCHED:
+			return State.STRETCHED + " - heavy monitors polling every " + stretchFactor + " samples";
+		default:
+			return State.CLOSED.toString();
+		}
+	}
+
+	private void open(long forMs) {
+		state = State.OPEN;
+		openMs = forMs;
+		openUntil = System.currentTimeMillis() + forMs;
+		resetWindow();
+	}
+
+	private void resetWindow() {
+		windowRequests = 0;
+		windowFailures = 0;
+		windowLatencyMs = 0;
+	}
+}
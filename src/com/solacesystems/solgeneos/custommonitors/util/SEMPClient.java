@@ -0,0 +1,628 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
+import com.solacesystems.solgeneos.solgeneosagent.UserPropertiesConfig;
+
+/**
+ * SEMP over HTTP client used by all the custom monitors running in the agent.
+ *
+ * Each monitor creates its own instance of this class, but the HTTP connections to the broker are held in one
+ * agent-wide pool and are kept alive between polls. This avoids a new TCP connection and authentication
+ * handshake for every SEMP request, and caps the number of concurrent connections opened to each broker.
+ */
+public class SEMPClient implements MonitorConstants {
+
+	// How many connections can be opened to the management port of a single broker, and in total across brokers
+	static final public int MAX_CONNECTIONS_PER_BROKER = 4;
+	static final public int MAX_CONNECTIONS_TOTAL = 20;
+
+	// How many records to ask for in each page of a paged request
+	static final public int DEFAULT_PAGE_SIZE = 500;
+
+	// How long to keep an idle connection open if the broker does not say in its Keep-Alive response header
+	static final public long DEFAULT_KEEP_ALIVE_MS = 60000;
+
+	// How long to wait for a connection to the broker to be established, and for each read of its response,
+	// if not set in the monitor's properties file
+	static final public int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+	static final public int DEFAULT_READ_TIMEOUT_MS = 20000;
+
+	// How long all the SEMP requests of one collect can take in total, if not set in the monitor's properties file.
+	// (Kept under the shortest sampling interval of the monitors.)
+	static final public int DEFAULT_COLLECT_DEADLINE_MS = 25000;
+
+	// When the circuit breaker for a broker steps in, if not set in the SEMP client properties file
+	static final public int DEFAULT_BREAKER_ERROR_RATE = 50;
+	static final public long DEFAULT_BREAKER_LATENCY_MS = 5000;
+	static final public long DEFAULT_BREAKER_OPEN_MS = 60000;
+
+	// The connection pool shared by all monitors, and one http client per broker and user on top of it
+	private static PoolingClientConnectionManager connectionManager;
+	private static final HashMap<String, DefaultHttpClient> httpClients = new HashMap<String, DefaultHttpClient>();
+
+	// Responses that can be reused by any monitor sending the same request, if enabled in the properties file
+	private static SEMPResponseCache responseCache;
+
+	// One circuit breaker per broker, shared by all the monitors polling it, unless disabled in the properties file
+	private static final HashMap<String, SEMPCircuitBreaker> circuitBreakers = new HashMap<String, SEMPCircuitBreaker>();
+	private static boolean circuitBreakerEnabled = true;
+	private static int breakerErrorRate = DEFAULT_BREAKER_ERROR_RATE;
+	private static long breakerLatencyMs = DEFAULT_BREAKER_LATENCY_MS;
+	private static long breakerOpenMs = DEFAULT_BREAKER_OPEN_MS;
+
+	// Threads to run SEMP requests on when a monitor sends several at once. Idle threads are let go after a minute.
+	private static final ExecutorService asyncExecutor = createAsyncExecutor();
+
+	// Aborts the requests still outstanding when a collect runs past its deadline
+	private static final ScheduledThreadPoolExecutor deadlineTimer = createDeadlineTimer();
+
+	private final String monitorName;
+	private final HttpHost target;
+	private final String clientKey;
+	private final DefaultHttpClient httpClient;
+	private final AuthCache authCache;
+
+	// The timeouts for this monitor's requests, a value of 0 means no timeout
+	private final int connectTimeoutMs;
+	private final int readTimeoutMs;
+	private final int collectDeadlineMs;
+
+	// When the current collect has to be finished by, or 0 if there is no deadline
+	private volatile long collectDeadline = 0;
+
+	// The circuit breaker for the broker, and whether this monitor is one that it should hold back first
+	private final SEMPCircuitBreaker circuitBreaker;
+	private final boolean heavyMonitor;
+
+	// The XML parser the monitor's responses are parsed with
+	private final SampleSEMPParser.Engine parserEngine;
+	// Whether the largest responses are split between their rows and the parts parsed at the same time
+	private final boolean parallelParse;
+	private int samplesSinceLastPoll = 0;
+
+	// The statistics of the monitor using this client
+	private final MonitorStats monitorStats;
+
+	// What was measured while sending one request and all of its pages
+	private static class QueryMeasurements {
+		private long httpTime = 0;
+		private long bytesReceived = 0;
+		private long parseTime = 0;
+	}
+
+	/**
+	 * Create a SEMP client for a monitor.
+	 *
+	 * @param monitorName The name of the monitor using this client
+	 * @param host The management IP address or hostname of the broker
+	 * @param port The management port of the broker
+	 * @param username The management username
+	 * @param password The management password
+	 */
+	public SEMPClient(String monitorName, String host, int port, String username, String password) {
+		this.monitorName = monitorName;
+		this.target = new HttpHost(host, port);
+		this.clientKey = target.toHostString() + "?" + username;
+		this.httpClient = getSharedHttpClient(target, username, password);
+		this.monitorStats = MonitorStats.forMonitor(monitorName);
+
+		// Are there timeouts for this monitor's requests in its config file?
+		UserPropertiesConfig monitorPropsConfig = SolGeneosAgent.onlyInstance.
+				getUserPropertiesConfig(MONITOR_PROPERTIES_FILE_NAME_PREFIX + monitorName + MONITOR_PROPERTIES_FILE_NAME_SUFFIX);
+		this.connectTimeoutMs = getIntProperty(monitorPropsConfig, "connecttimeoutms", DEFAULT_CONNECT_TIMEOUT_MS);
+		this.readTimeoutMs = getIntProperty(monitorPropsConfig, "readtimeoutms", DEFAULT_READ_TIMEOUT_MS);
+		this.collectDeadlineMs = getIntProperty(monitorPropsConfig, "collectdeadlinems", DEFAULT_COLLECT_DEADLINE_MS);
+
+		// Which XML parser should this monitor's responses be parsed with?
+		this.parserEngine = getEngineProperty(monitorPropsConfig);
+		this.parallelParse = monitorPropsConfig != null && monitorPropsConfig.getProperties() != null &&
+				Boolean.parseBoolean(monitorPropsConfig.getProperties().getProperty("parallelparse", "false"));
+
+		// Is this monitor heavy enough on the broker to poll less often when the broker is under stress?
+		this.heavyMonitor = monitorPropsConfig != null && monitorPropsConfig.getProperties() != null &&
+				Boolean.parseBoolean(monitorPropsConfig.getProperties().getProperty("heavymonitor", "false"));
+		this.circuitBreaker = getCircuitBreaker(target);
+
+		// Send the credentials with the first request rather than waiting to be challenged for them each time
+		this.authCache = new BasicAuthCache();
+		this.authCache.put(target, new BasicScheme());
+	}
+
+	private static int getIntProperty(UserPropertiesConfig propsConfig, String propertyName, int defaultValue) {
+		if (propsConfig != null && propsConfig.getProperties() != null && propsConfig.getProperties().get(propertyName) != null) {
+			return Integer.parseInt(propsConfig.getProperties().get(propertyName).toString());
+		}
+		return defaultValue;
+	}
+
+	private static SampleSEMPParser.Engine getEngineProperty(UserPropertiesConfig propsConfig) {
+		if (propsConfig != null && propsConfig.getProperties() != null && propsConfig.getProperties().get("parserengine") != null) {
+			return SampleSEMPParser.Engine.valueOf(propsConfig.getProperties().get("parserengine").toString().trim().toUpperCase());
+		}
+		return SampleSEMPParser.Engine.SAX;
+	}
+
+	private static synchronized DefaultHttpClient getSharedHttpClient(HttpHost target, String username, String password) {
+
+		if (connectionManager == null) {
+			connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_BROKER);
+			connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+
+			// Are there agent-wide properties for the SEMP client in its config file?
+			UserPropertiesConfig clientPropsConfig = SolGeneosAgent.onlyInstance.
+					getUserPropertiesConfig(SEMP_CLIENT_PROPERTIES_FILE_NAME);
+			if (clientPropsConfig != null && clientPropsConfig.getProperties() != null) {
+				if (clientPropsConfig.getProperties().get("cachettlms") != null) {
+					long cacheTtlMs = Long.parseLong(clientPropsConfig.getProperties().get("cachettlms").toString());
+					if (cacheTtlMs > 0) {
+						responseCache = new SEMPResponseCache(cacheTtlMs);
+					}
+				}
+				if (clientPropsConfig.getProperties().get("circuitbreaker") != null) {
+					circuitBreakerEnabled = Boolean.parseBoolean(clientPropsConfig.getProperties().get("circuitbreaker").toString());
+				}
+				breakerErrorRate = getIntProperty(clientPropsConfig, "breakererrorrate", DEFAULT_BREAKER_ERROR_RATE);
+				breakerLatencyMs = getIntProperty(clientPropsConfig, "breakerlatencyms", (int) DEFAULT_BREAKER_LATENCY_MS);
+				breakerOpenMs = getIntProperty(clientPropsConfig, "breakeropenms", (int) DEFAULT_BREAKER_OPEN_MS);
+			}
+		}
+
+		String clientKey = target.toHostString() + "?" + username;
+		DefaultHttpClient client = httpClients.get(clientKey);
+
+		if (client == null) {
+			client = new DefaultHttpClient(connectionManager);
+
+			// set connection credential
+			client.getCredentialsProvider().setCredentials(
+					new AuthScope(target.getHostName(), target.getPort()),
+					new UsernamePasswordCredentials(username, password));
+
+			// Keep connections alive for as long as the broker allows, or the default if it does not say
+			client.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+				public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+					HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+					while (it.hasNext()) {
+						HeaderElement he = it.nextElement();
+						if (he.getValue() != null && "timeout".equalsIgnoreCase(he.getName())) {
+							try {
+								return Long.parseLong(he.getValue()) * 1000;
+							} catch (NumberFormatException e) {
+								// Ignore and use the default
+							}
+						}
+					}
+					return DEFAULT_KEEP_ALIVE_MS;
+				}
+			});
+			httpClients.put(clientKey, client);
+		}
+		return client;
+	}
+
+	// Called after the shared http client is created, so the properties file has been read
+	private static synchronized SEMPCircuitBreaker getCircuitBreaker(HttpHost target) {
+
+		if (!circuitBreakerEnabled) {
+			return null;
+		}
+		return circuitBreakers.computeIfAbsent(target.toHostString(),
+				brokerName -> new SEMPCircuitBreaker(brokerName, breakerErrorRate, breakerLatencyMs, breakerOpenMs));
+	}
+
+	/**
+	 * @return The circuit breakers of all the brokers being polled, in order of broker name
+	 */
+	public static synchronized List<SEMPCircuitBreaker> getCircuitBreakers() {
+		List<SEMPCircuitBreaker> breakers = new ArrayList<SEMPCircuitBreaker>(circuitBreakers.values());
+		breakers.sort((breaker1, breaker2) -> breaker1.getBrokerName().compareTo(breaker2.getBrokerName()));
+		return breakers;
+	}
+
+	/**
+	 * Send a SEMP request to the broker and parse the response with the supplied parser.
+	 *
+	 * @param sempQuery The SEMP request XML
+	 * @param sempParser The parser to process the response
+	 * @throws Exception If the request fails or the response could not be parsed
+	 */
+	public void submitSEMPQuery(String sempQuery, SampleSEMPParser sempParser) throws Exception {
+		long startTime = System.nanoTime();
+		try {
+			querySEMP(sempQuery, sempParser, 0);
+		} finally {
+			monitorStats.addSEMPWaitTime(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Send a SEMP request that could return a large number of records, asking for them a page at a time.
+	 * Each page is fed into the same parser, which ends up holding the records from all the pages as if they
+	 * had been returned in a single response.
+	 *
+	 * @param sempQuery The SEMP request XML, without any count element
+	 * @param sempParser The parser to process the response pages
+	 * @param pageSize The maximum number of records to request in each page
+	 * @throws Exception If any of the requests fail or a response could not be parsed
+	 */
+	public void submitSEMPQueryPaged(String sempQuery, SampleSEMPParser sempParser, int pageSize) throws Exception {
+		long startTime = System.nanoTime();
+		try {
+			querySEMP(sempQuery, sempParser, pageSize);
+		} finally {
+			monitorStats.addSEMPWaitTime(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Send a SEMP request in the background, so that several requests can be outstanding at the same time.
+	 * The parser must not be used until the request has completed, see {@link #waitForAll(Future...)}.
+	 *
+	 * @param sempQuery The SEMP request XML
+	 * @param sempParser The parser to process the response
+	 * @return The pending result of the request
+	 */
+	public Future<Void> submitSEMPQueryAsync(final String sempQuery, final SampleSEMPParser sempParser) {
+		return asyncExecutor.submit(() -> {
+			querySEMP(sempQuery, sempParser, 0);
+			return null;
+		});
+	}
+
+	/**
+	 * Send a paged SEMP request in the background, see {@link #submitSEMPQueryPaged(String, SampleSEMPParser, int)}.
+	 *
+	 * @param sempQuery The SEMP request XML, without any count element
+	 * @param sempParser The parser to process the response pages
+	 * @param pageSize The maximum number of records to request in each page
+	 * @return The pending result of the request
+	 */
+	public Future<Void> submitSEMPQueryPagedAsync(final String sempQuery, final SampleSEMPParser sempParser, final int pageSize) {
+		return asyncExecutor.submit(() -> {
+			querySEMP(sempQuery, sempParser, pageSize);
+			return null;
+		});
+	}
+
+	/**
+	 * Wait for all the background requests to complete. Even if one fails, all the others are waited for before
+	 * returning, so none of the parsers are still in use by a background request.
+	 *
+	 * @param pendingQueries The pending results of the requests
+	 * @throws Exception The failure of the first request that did not complete successfully
+	 */
+	public void waitForAll(Future<?>... pendingQueries) throws Exception {
+
+		long startTime = System.nanoTime();
+		Exception firstFailure = null;
+
+		try {
+			for (Future<?> pendingQuery : pendingQueries) {
+				try {
+					pendingQuery.get();
+				} catch (ExecutionException e) {
+					if (firstFailure == null) {
+						firstFailure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+		} finally {
+			monitorStats.addSEMPWaitTime(System.nanoTime() - startTime);
+		}
+		if (firstFailure != null) {
+			throw firstFailure;
+		}
+	}
+
+	/**
+	 * Mark the start of a collect, which starts the clock on the collect deadline. Any request that is still
+	 * outstanding when the deadline passes is aborted and fails with a {@link SEMPCollectAbortedException}.
+	 *
+	 * @throws SEMPCollectAbortedException If the circuit breaker for the broker says this monitor should skip this sample
+	 */
+	public void startCollect() throws SEMPCollectAbortedException {
+		monitorStats.startCollect();
+		collectDeadline = (collectDeadlineMs > 0) ? System.currentTimeMillis() + collectDeadlineMs : 0;
+
+		// Should this monitor hold off polling the broker this time?
+		if (circuitBreaker != null) {
+			int pollInterval = circuitBreaker.getPollInterval(heavyMonitor);
+			if (pollInterval == 0 || ++samplesSinceLastPoll < pollInterval) {
+				throw new SEMPCollectAbortedException("Skipped polling the broker, circuit breaker is " + circuitBreaker.describeState());
+			}
+			samplesSinceLastPoll = 0;
+		}
+	}
+
+	/**
+	 * @return The statistics of the monitor using this client, for it to mark the phases of its collect
+	 */
+	public MonitorStats getMonitorStats() {
+		return monitorStats;
+	}
+
+	// Send the request, following the more-cookie of each response if it is to be paged, then record the statistics for it
+	private void querySEMP(String sempQuery, SampleSEMPParser sempParser, int pageSize) throws Exception {
+
+		QueryMeasurements measurements = new QueryMeasurements();
+
+		if (pageSize > 0) {
+			String pageQuery = addPageSize(sempQuery, pageSize);
+			boolean firstPage = true;
+
+			// Each response carries the request for the next page in its more-cookie, until the last page
+			while (pageQuery != null) {
+				executeSEMPQuery(pageQuery, sempParser, firstPage, measurements);
+				pageQuery = sempParser.getMoreCookie();
+				firstPage = false;
+			}
+		}
+		else {
+			executeSEMPQuery(sempQuery, sempParser, true, measurements);
+		}
+		monitorStats.recordQuery(sempQuery, measurements.httpTime, measurements.bytesReceived,
+				measurements.parseTime, sempParser.getRowCount());
+	}
+
+	private static ExecutorService createAsyncExecutor() {
+
+		final AtomicInteger threadCount = new AtomicInteger();
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONNECTIONS_TOTAL, MAX_CONNECTIONS_TOTAL,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				runnable -> {
+					// Should not stop the agent from shutting down
+					Thread thread = new Thread(runnable, "SEMPClient-async-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+				runnable -> {
+					Thread thread = new Thread(runnable, "SEMPClient-deadline");
+					thread.setDaemon(true);
+					return thread;
+				});
+		// Most requests finish well within the deadline, so do not keep their cancelled aborts around
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	// How long is left before the collect deadline, or Long.MAX_VALUE if there is no deadline
+	private long getRemainingCollectTimeMs() {
+		long deadline = collectDeadline;
+		return (deadline > 0) ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+	}
+
+	private SEMPCollectAbortedException collectDeadlineExceeded(Throwable cause) {
+		return new SEMPCollectAbortedException("SEMP requests did not complete within the collect deadline of "
+				+ collectDeadlineMs + " ms", cause);
+	}
+
+	// Insert the count of records to return as the last elements of the command, e.g. <queue>...<count/><num-elements>500</num-elements></queue>
+	static String addPageSize(String sempQuery, int pageSize) {
+		int endOfShow = sempQuery.lastIndexOf("</show>");
+		int endOfCommand = (endOfShow > 0) ? sempQuery.lastIndexOf("</", endOfShow - 1) : -1;
+		if (endOfCommand < 0) {
+			throw new IllegalArgumentException("Unable to add a page size to the SEMP request: " + sempQuery);
+		}
+		return sempQuery.substring(0, endOfCommand) +
+				"<count/><num-elements>" + pageSize + "</num-elements>" +
+				sempQuery.substring(endOfCommand);
+	}
+
+	private void executeSEMPQuery(String sempQuery, SampleSEMPParser sempParser, boolean firstPage,
+			QueryMeasurements measurements) throws Exception {
+
+		sempParser.setEngine(parserEngine);
+		sempParser.setParallelParse(parallelParse ? ForkJoinPool.commonPool() : null, SampleSEMPParser.DEFAULT_PARALLEL_PARSE_MIN_BYTES);
+		if (responseCache != null) {
+			// The response could be shared with other monitors, so it is held in memory and parsed from there
+			// (Waiting on the same request sent for another monitor counts towards this monitor's collect deadline.)
+			long startTime = System.nanoTime();
+			byte[] respBody;
+			try {
+				respBody = responseCache.get(clientKey + "?" + SEMPResponseCache.normalise(sempQuery),
+						() -> postSEMPQuery(sempQuery, null, firstPage, null), getRemainingCollectTimeMs());
+			} catch (TimeoutException e) {
+				throw collectDeadlineExceeded(e);
+			}
+			measurements.httpTime += System.nanoTime() - startTime;
+			measurements.bytesReceived += respBody.length;
+
+			if (respBody.length > 0) {
+				startTime = System.nanoTime();
+				sempParser.parse(new ByteArrayInputStream(respBody), firstPage);
+				measurements.parseTime += System.nanoTime() - startTime;
+			}
+		}
+		else {
+			postSEMPQuery(sempQuery, sempParser, firstPage, measurements);
+		}
+	}
+
+	// Send the request to the broker. If there is a parser the response is streamed into it and measured,
+	// otherwise the response body is read and returned.
+	private byte[] postSEMPQuery(String sempQuery, SampleSEMPParser sempParser, boolean firstPage,
+			QueryMeasurements measurements) throws Exception {
+
+		// Do not start another request if the collect has already run out of time
+		long remainingTimeMs = getRemainingCollectTimeMs();
+		if (remainingTimeMs <= 0) {
+			throw collectDeadlineExceeded(null);
+		}
+
+		// Any connections the broker would have timed out by now are not worth trying to reuse
+		connectionManager.closeExpiredConnections();
+
+		HttpPost post = new HttpPost(HTTP_REQUEST_URI);
+		post.setHeader(HEADER_CONTENT_TYPE_UTF8);
+		post.setEntity(new ByteArrayEntity(sempQuery.getBytes("UTF-8")));
+
+		// The timeouts are set on each request, as the http client for the broker is shared with other monitors
+		HttpParams params = post.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, (int) Math.min(connectTimeoutMs, remainingTimeMs));
+		HttpConnectionParams.setSoTimeout(params, (int) Math.min(readTimeoutMs, remainingTimeMs));
+		ScheduledFuture<?> deadlineAbort = null;
+		if (remainingTimeMs < Long.MAX_VALUE) {
+			// Waiting for a pooled connection to become free counts towards the deadline too
+			params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, remainingTimeMs);
+			// The read timeout only limits each read, so abort the request outright if it is still going at the deadline
+			deadlineAbort = deadlineTimer.schedule(() -> post.abort(), remainingTimeMs, TimeUnit.MILLISECONDS);
+		}
+
+		HttpContext context = new BasicHttpContext();
+		context.setAttribute(ClientContext.AUTH_CACHE, authCache);
+
+		byte[] respBody = new byte[0];
+
+		long startTime = System.nanoTime();
+		long responseTime = -1;
+		boolean breakerRecorded = false;
+		try {
+			HttpResponse response = httpClient.execute(target, post, context);
+			HttpEntity entity = response.getEntity();
+			responseTime = System.nanoTime() - startTime;
+			if (measurements != null) {
+				measurements.httpTime += responseTime;
+			}
+			StatusLine statusLine = response.getStatusLine();
+			if (statusLine.getStatusCode() != 200) {
+				throw new Exception("Error occurred while sending request: " + statusLine.getStatusCode()
+						+ " - " + statusLine.getReasonPhrase());
+			}
+			// The broker has responded, so whatever happens to the response from here, e.g. failing to parse it, is
+			// down to this monitor and not held against the broker for all the other monitors polling it
+			if (circuitBreaker != null) {
+				circuitBreaker.recordRequest(false, responseTime / 1000000);
+			}
+			breakerRecorded = true;
+			if (entity != null) {
+				if (sempParser != null) {
+					// Parse the response as it arrives rather than reading it all into memory first.
+					// (So the parse time includes the time taken to receive the body after the headers.)
+					CountingInputStream respBodyStream = new CountingInputStream(entity.getContent());
+					startTime = System.nanoTime();
+					sempParser.parse(respBodyStream, firstPage);
+					measurements.parseTime += System.nanoTime() - startTime;
+					measurements.bytesReceived += respBodyStream.getCount();
+				}
+				else {
+					respBody = EntityUtils.toByteArray(entity);
+				}
+			}
+			// Read anything left over so the connection can go back in the pool for reuse
+			EntityUtils.consume(entity);
+		} catch (Exception e) {
+			// Connection is in an unknown state, close it rather than return it to the pool
+			post.abort();
+			if (getRemainingCollectTimeMs() <= 0) {
+				throw collectDeadlineExceeded(e);
+			}
+			throw e;
+		} finally {
+			if (deadlineAbort != null) {
+				deadlineAbort.cancel(false);
+			}
+			// The latency of a failed request is how long until the request failed
+			if (circuitBreaker != null && !breakerRecorded) {
+				circuitBreaker.recordRequest(true, ((responseTime >= 0) ? responseTime : System.nanoTime() - startTime) / 1000000);
+			}
+		}
+		return respBody;
+	}
+
+	// Counts the bytes of the response as they are read by the parser
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int bytesRead = super.read(b, off, len);
+			if (bytesRead > 0) {
+				count += bytesRead;
+			}
+			return bytesRead;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	public String getMonitorName() {
+		return monitorName;
+	}
+}
@@ -0,0 +1,19 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+/**
+ * Thrown when a monitor's SEMP requests are given up on part way through a collect, e.g. when they have run
+ * past the collect deadline. Any requests still outstanding have been aborted by the time this is thrown,
+ * so the monitor can go on to mark its views as stale.
+ */
+public class SEMPCollectAbortedException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public SEMPCollectAbortedException(String message) {
+		super(message);
+	}
+
+	public SEMPCollectAbortedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
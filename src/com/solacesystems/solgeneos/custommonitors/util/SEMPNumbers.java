@@ -0,0 +1,64 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+/**
+ * Reading the numbers of a SEMP response straight from the text of their elements, for the classes that keep them typed,
+ * total them and rank the rows as they are parsed.
+ */
+final class SEMPNumbers {
+
+	private SEMPNumbers() {
+	}
+
+	// What parseLongOrNotANumber() returns for text that is not a whole number. (No SEMP value is this number.)
+	static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+	/**
+	 * @return The whole number, or 0 if the text is not one
+	 */
+	static long parseLong(CharSequence text) {
+		long value = parseLongOrNotANumber(text);
+		return (value == NOT_A_NUMBER) ? 0 : value;
+	}
+
+	/**
+	 * @return The whole number, or NOT_A_NUMBER if the text is not one, for a caller that keeps such text as it is
+	 */
+	static long parseLongOrNotANumber(CharSequence text) {
+		// Parse the digits straight from the text, as nearly all the numbers in a SEMP response are plain whole numbers
+		int length = text.length();
+		boolean negative = length > 0 && text.charAt(0) == '-';
+		int start = negative ? 1 : 0;
+		// Any longer and it might overflow, so leave it to the slower way
+		if (length > start && length - start <= 18) {
+			long value = 0;
+			int i = start;
+			for (; i < length; i++) {
+				char c = text.charAt(i);
+				if (c < '0' || c > '9') {
+					break;
+				}
+				value = value * 10 + (c - '0');
+			}
+			if (i == length) {
+				return negative ? -value : value;
+			}
+		}
+		// Anything else the slower way
+		try {
+			return Long.parseLong(text.toString().trim());
+		} catch (NumberFormatException e) {
+			return NOT_A_NUMBER;
+		}
+	}
+
+	/**
+	 * @return The decimal number, or 0 if the text is not one
+	 */
+	static double parseDouble(CharSequence text) {
+		try {
+			return Double.parseDouble(text.toString());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
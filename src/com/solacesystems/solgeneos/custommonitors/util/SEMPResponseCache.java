@@ -0,0 +1,93 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Short lived cache of SEMP responses shared by all the monitors in the agent.
+ *
+ * When two monitors send the same request within the time-to-live, the broker is only asked once and both
+ * monitors are given the same response. A request that is already on its way to the broker is not sent again,
+ * the second monitor waits for the response to the first.
+ */
+public class SEMPResponseCache {
+
+	private final long ttlMs;
+
+	// The responses, or the responses still to come, keyed by broker and normalised request
+	private final ConcurrentHashMap<String, CachedResponse> responses = new ConcurrentHashMap<String, CachedResponse>();
+
+	private static class CachedResponse {
+		// Set once the response has been received, until then the entry is in-flight
+		private volatile long expiryTime = Long.MAX_VALUE;
+		private final CompletableFuture<byte[]> respBody = new CompletableFuture<byte[]>();
+	}
+
+	/**
+	 * @param ttlMs How long in milliseconds a response can be reused after it was received
+	 */
+	public SEMPResponseCache(long ttlMs) {
+		this.ttlMs = ttlMs;
+	}
+
+	/**
+	 * Get the response to a request, only sending it to the broker if there is no usable cached response
+	 * and it is not already on its way.
+	 *
+	 * @param key The broker and the normalised request
+	 * @param fetcher Sends the request to the broker and returns the response body
+	 * @param maxWaitMs How long to wait for a response already on its way for another caller, Long.MAX_VALUE for no limit
+	 * @return The response body
+	 * @throws TimeoutException If the response on its way for another caller did not come within maxWaitMs
+	 * @throws Exception If sending the request failed, for this caller or the caller it was waiting on
+	 */
+	public byte[] get(String key, Callable<byte[]> fetcher, long maxWaitMs) throws Exception {
+
+		long now = System.currentTimeMillis();
+		CachedResponse newEntry = new CachedResponse();
+		CachedResponse entry = responses.compute(key,
+				(k, existing) -> (existing == null || existing.expiryTime <= now) ? newEntry : existing);
+
+		if (entry == newEntry) {
+			// This caller is the one to go to the broker, any others asking in the meantime wait for it
+			try {
+				byte[] respBody = fetcher.call();
+				entry.expiryTime = System.currentTimeMillis() + ttlMs;
+				entry.respBody.complete(respBody);
+			} catch (Throwable e) {
+				// Do not keep the failure around, the next caller should try again. (Errors too, such as running out of
+				// memory buffering the response, or the callers waiting on it would wait forever.)
+				responses.remove(key, entry);
+				entry.respBody.completeExceptionally(e);
+				throw e;
+			}
+			evictExpired();
+		}
+
+		try {
+			return (maxWaitMs == Long.MAX_VALUE) ? entry.respBody.get() : entry.respBody.get(Math.max(maxWaitMs, 0), TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+		}
+	}
+
+	private void evictExpired() {
+		long now = System.currentTimeMillis();
+		responses.values().removeIf(entry -> entry.expiryTime <= now);
+	}
+
+	/**
+	 * Reduce a SEMP request to a form that is the same for requests that only differ in formatting,
+	 * e.g. the tabs and whitespace between elements.
+	 */
+	public static String normalise(String sempQuery) {
+		return sempQuery.replaceAll(">\\s+<", "><").trim();
+	}
+}
@@ -0,0 +1,174 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a SEMP response between its rows, for a parser to parse the parts in parallel.
+ *
+ * Each part is made a SEMP response of its own, so it can be parsed the same as a whole one: the bytes before the
+ * first row, the rows of the part, and the bytes after the last row. The rows are found by scanning the tags of the
+ * response for the row elements, counting the depth of the tags the same as the parsers do, without decoding any of
+ * the text in between.
+ */
+final class SEMPRowSplitter {
+
+	private SEMPRowSplitter() {
+	}
+
+	/**
+	 * @param response The bytes of the whole response
+	 * @param rowsElementName The name of the row elements, matched ignoring case as the parsers do
+	 * @param minimumDepth How deep the row elements are at least, the first element of that name at least this deep
+	 * being the first row, and the other rows being the elements of that name at the same depth
+	 * @return Where each row starts, and after those where the last row ends. Null if the response has no rows.
+	 */
+	static int[] findRowBoundaries(byte[] response, String rowsElementName, int minimumDepth) {
+
+		byte[] name = rowsElementName.getBytes(StandardCharsets.UTF_8);
+		int[] rowStarts = new int[64];
+		int rowCount = 0;
+		int lastRowEnd = -1;
+		int rowDepth = -1;
+		int depth = 0;
+		int pos = 0;
+		while (true) {
+			int start = indexOf(response, '<', pos);
+			if (start < 0 || start + 1 >= response.length) {
+				break;
+			}
+			byte next = response[start + 1];
+			if (next == '!' || next == '?') {
+				// Comments, CDATA sections and the XML declaration
+				pos = skipDeclaration(response, start);
+				if (pos < 0) {
+					break;
+				}
+				continue;
+			}
+			int end = indexOf(response, '>', start + 1);
+			if (end < 0) {
+				break;
+			}
+			if (next == '/') {
+				if (depth == rowDepth && matchesName(response, start + 2, end, name)) {
+					lastRowEnd = end + 1;
+				}
+				depth--;
+			}
+			else {
+				depth++;
+				boolean emptyElement = response[end - 1] == '/';
+				if (((rowDepth < 0) ? depth >= minimumDepth : depth == rowDepth)
+						&& matchesName(response, start + 1, emptyElement ? end - 1 : end, name)) {
+					rowDepth = depth;
+					if (rowCount == rowStarts.length) {
+						rowStarts = Arrays.copyOf(rowStarts, rowCount * 2);
+					}
+					rowStarts[rowCount++] = start;
+					if (emptyElement) {
+						lastRowEnd = end + 1;
+					}
+				}
+				if (emptyElement) {
+					depth--;
+				}
+			}
+			pos = end + 1;
+		}
+		if (rowCount == 0 || lastRowEnd < rowStarts[rowCount - 1]) {
+			return null;
+		}
+		int[] rowBoundaries = Arrays.copyOf(rowStarts, rowCount + 1);
+		rowBoundaries[rowCount] = lastRowEnd;
+		return rowBoundaries;
+	}
+
+	/**
+	 * @param rowBoundaries Where each row starts and the last row ends, as returned by findRowBoundaries()
+	 * @param partCount How many parts to split the rows into, at most the number of rows
+	 * @return Where each part starts and the last part ends, each part with about the same number of bytes
+	 */
+	static int[] splitEvenly(int[] rowBoundaries, int partCount) {
+
+		int rowCount = rowBoundaries.length - 1;
+		int first = rowBoundaries[0];
+		long length = rowBoundaries[rowCount] - first;
+		int[] partBoundaries = new int[partCount + 1];
+		int row = 0;
+		for (int part = 1; part < partCount; part++) {
+			long target = first + length * part / partCount;
+			// At least one row in this part, and leave at least one for each part after it
+			row++;
+			while (row < rowCount - (partCount - part) && rowBoundaries[row] < target) {
+				row++;
+			}
+			partBoundaries[part] = rowBoundaries[row];
+		}
+		partBoundaries[0] = first;
+		partBoundaries[partCount] = rowBoundaries[rowCount];
+		return partBoundaries;
+	}
+
+	private static int skipDeclaration(byte[] response, int start) {
+		if (startsWith(response, start, "<!--")) {
+			int end = indexOf(response, "-->", start + 4);
+			return (end < 0) ? -1 : end + 3;
+		}
+		if (startsWith(response, start, "<![CDATA[")) {
+			int end = indexOf(response, "]]>", start + 9);
+			return (end < 0) ? -1 : end + 3;
+		}
+		int end = indexOf(response, '>', start + 1);
+		return (end < 0) ? -1 : end + 1;
+	}
+
+	// Whether the element name of the tag, up to any whitespace, is the name, ignoring case
+	private static boolean matchesName(byte[] response, int start, int end, byte[] name) {
+		int nameEnd = start;
+		while (nameEnd < end && response[nameEnd] != ' ' && response[nameEnd] != '\t' && response[nameEnd] != '\n' && response[nameEnd] != '\r') {
+			nameEnd++;
+		}
+		if (nameEnd - start != name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			byte a = response[start + i];
+			byte b = name[i];
+			if (a != b && Character.toLowerCase((char) a) != Character.toLowerCase((char) b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] response, char c, int from) {
+		for (int i = from; i < response.length; i++) {
+			if (response[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] response, String s, int from) {
+		for (int i = from; i <= response.length - s.length(); i++) {
+			if (startsWith(response, i, s)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(byte[] response, int start, String s) {
+		if (start + s.length() > response.length) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (response[start + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,12 +1,30 @@
 // Renamed from original source: SampleSEMPParser.java in package com.solacesystems.solgeneos.sample.util
 package com.solacesystems.solgeneos.custommonitors.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.solacesystems.common.semp.SEMPSAXParser;
 
@@ -15,15 +33,544 @@ import com.solacesystems.common.semp.SEMPSAXParser;
  */
 public abstract class SampleSEMPParser extends SEMPSAXParser {
 
+	/**
+	 * The XML parser a response is parsed with. All produce the same tables, STAX reads past the sections the parser
+	 * ignores without passing their contents to it, BYTES does too and only decodes the text the parser collects.
+	 */
+	public static enum Engine {
+		SAX,
+		STAX,
+		BYTES,
+	}
+	
+	private Engine engine = Engine.SAX;
+	// Kept from one response to the next, as it keeps the element names it has decoded
+	private ByteSEMPEngine byteEngine;
+	// The pooled values of the interned columns, kept from one response to the next
+	private final HashMap<String, InternPool> internPools = new HashMap<String, InternPool>();
+	// The row filters, by the column they test, and the values of those columns in the row being parsed
+	private final LinkedHashMap<String, Predicate<String>> rowFilters = new LinkedHashMap<String, Predicate<String>>();
+	private final HashMap<String, String> rowFilterValues = new HashMap<String, String>();
+	// The columns a row must have to be kept, and which of them the row being parsed has had
+	private final HashSet<String> requiredRowColumns = new HashSet<String>();
+	private final HashSet<String> requiredRowColumnsSeen = new HashSet<String>();
+	// How many rows of the response the filters dropped
+	private int rejectedRowCount = 0;
+	// The sums and counts kept up to date as each row is parsed, if the monitor wants any
+	private RowAggregator rowAggregator = null;
+	// The rows ranked as they are parsed, if the monitor only shows the top few
+	private TopKRows rowRanker = null;
+	
+	// Responses at least this long are split between their rows, if parsing in parallel at all
+	static final public int DEFAULT_PARALLEL_PARSE_MIN_BYTES = 1024 * 1024;
+	// The pool the parts of a response are parsed on, null if parsing each response as a whole
+	private ForkJoinPool parallelParsePool = null;
+	private int parallelParseMinBytes = DEFAULT_PARALLEL_PARSE_MIN_BYTES;
+	// A parser for each part of a response, kept from one response to the next
+	private final ArrayList<SampleSEMPParser> chunkParsers = new ArrayList<SampleSEMPParser>();
+	
 	public SampleSEMPParser() throws ParserConfigurationException, SAXException {
 		super();
 	}
 
+	@Override
+	protected void initializeParser(String str) {
+		super.initializeParser(str);
+		// Nothing left over from a row of a response that was not parsed to the end
+		rowFilterValues.clear();
+		requiredRowColumnsSeen.clear();
+		rejectedRowCount = 0;
+		if (rowAggregator != null) {
+			rowAggregator.clear();
+		}
+		if (rowRanker != null) {
+			rowRanker.clear();
+		}
+	}
+
 	public void parse(String respBodyString) throws Exception {
         initializeParser(respBodyString);
-        StringBuffer respBodyBuffer = new StringBuffer(respBodyString);
-        StringReader strreader = new StringReader(respBodyBuffer.toString());
-        mSAXParser.parse(new InputSource(strreader), this);
+        mSAXParser.parse(new InputSource(new StringReader(respBodyString)), this);
         processResponse();              
     }
+
+	// If the response is one page of a larger result, the request to send for the next page
+	private String moreCookie = null;
+	private final MoreCookieFilter moreCookieFilter = new MoreCookieFilter();
+	
+	/**
+	 * Parse the response as it is read from the stream, such as the content of the HTTP response entity.
+	 * The response is never held in memory as a whole, only the records extracted from it are.
+	 * 
+	 * @param respBodyStream The stream to read the SEMP response from
+	 */
+	public void parse(InputStream respBodyStream) throws Exception {
+		parse(respBodyStream, true);
+	}
+	
+	/**
+	 * Parse one page of a paged SEMP response. The first page clears any records held from a previous response,
+	 * any following pages add their records to those already parsed.
+	 * 
+	 * @param respBodyStream The stream to read the SEMP response from
+	 * @param firstPage Whether this is the first (or only) page of the response
+	 */
+	public void parse(InputStream respBodyStream, boolean firstPage) throws Exception {
+		if (firstPage) {
+			initializeParser("");
+		}
+		moreCookie = null;
+		if (parallelParsePool != null) {
+			// The parts can only be found with the whole response in hand. What is left to parse here is the response
+			// without its rows if they were parsed in parts, otherwise the whole response.
+			byte[] response = readFully(respBodyStream);
+			respBodyStream = (response.length >= parallelParseMinBytes) ? parseInParallel(response) : null;
+			if (respBodyStream == null) {
+				respBodyStream = new ByteArrayInputStream(response);
+			}
+		}
+		if (engine == Engine.STAX) {
+			StAXSEMPEngine.parse(respBodyStream, moreCookieFilter, this);
+		}
+		else if (engine == Engine.BYTES) {
+			if (byteEngine == null) {
+				byteEngine = new ByteSEMPEngine();
+			}
+			byteEngine.parse(respBodyStream, moreCookieFilter, this);
+		}
+		else {
+			mSAXParser.parse(new InputSource(respBodyStream), moreCookieFilter);
+		}
+		processResponse();
+	}
+	
+	private static byte[] readFully(InputStream respBodyStream) throws Exception {
+		ByteArrayOutputStream response = new ByteArrayOutputStream(64 * 1024);
+		byte[] buffer = new byte[64 * 1024];
+		int length;
+		while ((length = respBodyStream.read(buffer)) >= 0) {
+			response.write(buffer, 0, length);
+		}
+		return response.toByteArray();
+	}
+	
+	/**
+	 * Parse large responses in parts, split between their rows and parsed on the pool at the same time, rather than
+	 * as they are read from the stream. The rows of the parts are added to this parser's tables in the order they
+	 * were in the response, so the tables, aggregator and ranker end up as if the response had been parsed as a whole.
+	 * Only for parsers that can make a parser for each part, others parse the whole response as before.
+	 * 
+	 * @param pool The pool to parse the parts on, e.g. ForkJoinPool.commonPool(), or null to parse responses as a whole
+	 * @param minResponseBytes Responses shorter than this are parsed as a whole, as not worth splitting
+	 */
+	public void setParallelParse(ForkJoinPool pool, int minResponseBytes) {
+		this.parallelParsePool = pool;
+		this.parallelParseMinBytes = minResponseBytes;
+	}
+	
+	/**
+	 * @return A new parser for the parts of a response, parsing the same rows and columns as this one, or null if this
+	 * parser cannot parse in parallel
+	 */
+	protected SampleSEMPParser newChunkParser() throws Exception {
+		return null;
+	}
+	
+	/**
+	 * @return The element name of the rows the response is split between
+	 */
+	protected String getRowsElementName() {
+		return null;
+	}
+	
+	/**
+	 * @return How deep the row elements are at least, counting the same as the parser does
+	 */
+	protected int getRowsMinimumDepth() {
+		return 0;
+	}
+	
+	/**
+	 * Set up a parser made by newChunkParser() to parse a part of the response, e.g. starting from the column names
+	 * this parser has found so far. The row filters, interned columns, aggregator and ranker are already set up.
+	 */
+	protected void prepareChunkParser(SampleSEMPParser chunkParser) {
+	}
+	
+	/**
+	 * Add the rows a parser made by newChunkParser() has just parsed to the end of this parser's tables.
+	 */
+	protected void appendChunkRows(SampleSEMPParser chunkParser) {
+	}
+	
+	// Parse the rows of the response in parts, returning the rest of the response, or null if not split after all
+	private InputStream parseInParallel(byte[] response) throws Exception {
+		int partCount = parallelParsePool.getParallelism() + 1;
+		if (getRowsElementName() == null) {
+			return null;
+		}
+		int[] rowBoundaries = SEMPRowSplitter.findRowBoundaries(response, getRowsElementName(), getRowsMinimumDepth());
+		if (rowBoundaries == null || rowBoundaries.length - 1 < 2) {
+			return null;
+		}
+		partCount = Math.min(partCount, rowBoundaries.length - 1);
+		while (chunkParsers.size() < partCount) {
+			SampleSEMPParser chunkParser = newChunkParser();
+			if (chunkParser == null) {
+				return null;
+			}
+			chunkParsers.add(chunkParser);
+		}
+		
+		// Each part is a response of its own, with the bytes before the first row and after the last row of the whole
+		int[] partBoundaries = SEMPRowSplitter.splitEvenly(rowBoundaries, partCount);
+		ArrayList<InputStream> partStreams = new ArrayList<InputStream>(partCount);
+		ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(partCount);
+		for (int part = 0; part < partCount; part++) {
+			SampleSEMPParser chunkParser = chunkParsers.get(part);
+			chunkParser.configureAsChunkParser(this);
+			prepareChunkParser(chunkParser);
+			InputStream partStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+					new ByteArrayInputStream(response, 0, partBoundaries[0]),
+					new ByteArrayInputStream(response, partBoundaries[part], partBoundaries[part + 1] - partBoundaries[part]),
+					new ByteArrayInputStream(response, partBoundaries[partCount], response.length - partBoundaries[partCount]))));
+			partStreams.add(partStream);
+			tasks.add((part == 0) ? null : parallelParsePool.submit(() -> {
+				chunkParser.parse(partStream, true);
+				return null;
+			}));
+		}
+		
+		// The first part on this thread while the others are parsed on the pool, then wait for them all either way
+		Exception failure = null;
+		try {
+			chunkParsers.get(0).parse(partStreams.get(0), true);
+		} catch (Exception e) {
+			failure = e;
+		}
+		for (int part = 1; part < partCount; part++) {
+			try {
+				tasks.get(part).get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		
+		// In the order of the response, as if parsed as a whole
+		for (int part = 0; part < partCount; part++) {
+			SampleSEMPParser chunkParser = chunkParsers.get(part);
+			int rowOffset = getRowCount();
+			appendChunkRows(chunkParser);
+			rejectedRowCount += chunkParser.rejectedRowCount;
+			if (rowAggregator != null) {
+				rowAggregator.addTotals(chunkParser.rowAggregator);
+			}
+			if (rowRanker != null) {
+				rowRanker.addRows(chunkParser.rowRanker, rowOffset);
+			}
+		}
+		
+		// The rest, with the more-cookie if there is one, still goes through this parser as usual
+		return new SequenceInputStream(new ByteArrayInputStream(response, 0, partBoundaries[0]),
+				new ByteArrayInputStream(response, partBoundaries[partCount], response.length - partBoundaries[partCount]));
+	}
+	
+	// Parse the same as the parser the response is being parsed for, starting from nothing for each part
+	private void configureAsChunkParser(SampleSEMPParser parser) {
+		engine = parser.engine;
+		rowFilters.clear();
+		rowFilters.putAll(parser.rowFilters);
+		requiredRowColumns.clear();
+		requiredRowColumns.addAll(parser.requiredRowColumns);
+		if (!internPools.keySet().equals(parser.internPools.keySet())) {
+			internPools.clear();
+			for (Map.Entry<String, InternPool> internPool : parser.internPools.entrySet()) {
+				internPools.put(internPool.getKey(), new InternPool(internPool.getValue().getMaxSize()));
+			}
+		}
+		rowAggregator = (parser.rowAggregator == null) ? null : parser.rowAggregator.newEmptyCopy();
+		rowRanker = (parser.rowRanker == null) ? null : parser.rowRanker.newEmptyCopy();
+	}
+	
+	/**
+	 * Keep one copy of each distinct value of the given columns, rather than a new String for every row on every poll.
+	 * For columns with few distinct values that repeat from one poll to the next, like VPN names, "Up"/"Down" or
+	 * client profile names.
+	 * 
+	 * @param columnElementNames The element names of the columns
+	 */
+	public void setInternedColumns(List<String> columnElementNames) {
+		setInternedColumns(columnElementNames, InternPool.DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * @param columnElementNames The element names of the columns
+	 * @param maxValuesPerColumn How many distinct values to keep for each column at most, any others are not interned
+	 */
+	public void setInternedColumns(List<String> columnElementNames, int maxValuesPerColumn) {
+		internPools.clear();
+		for (String columnElementName : columnElementNames) {
+			internPools.put(columnElementName, new InternPool(maxValuesPerColumn));
+		}
+	}
+	
+	/**
+	 * @return The value of a column element as collected, interned if it is one of the interned columns
+	 */
+	protected String getColumnValue(String columnElementName, StringBuilder elementContent) {
+		InternPool internPool = internPools.isEmpty() ? null : internPools.get(columnElementName);
+		return (internPool == null) ? elementContent.toString() : internPool.intern(elementContent);
+	}
+
+	/**
+	 * Only keep the rows whose value of the given column is accepted. The test is made when the row element ends,
+	 * and a row that fails it is dropped there, never being added to the tables the parser returns.
+	 * A row without the column is tested with an empty value. Filters added for the same column must all accept the row.
+	 *
+	 * @param columnElementName The element name of one of the columns being parsed
+	 * @param accept The test for the value of that column
+	 */
+	public void addRowFilter(String columnElementName, Predicate<String> accept) {
+		rowFilters.merge(columnElementName, accept, Predicate::and);
+	}
+
+	/**
+	 * Only keep the rows that have all the given columns, e.g. as a response from a Standby broker leaves some out.
+	 *
+	 * @param columnElementNames The element names of the columns
+	 */
+	public void setRequiredRowColumns(List<String> columnElementNames) {
+		requiredRowColumns.clear();
+		requiredRowColumns.addAll(columnElementNames);
+		requiredRowColumnsSeen.clear();
+	}
+
+	public void clearRowFilters() {
+		rowFilters.clear();
+		rowFilterValues.clear();
+		requiredRowColumns.clear();
+		requiredRowColumnsSeen.clear();
+	}
+
+	/**
+	 * Keep the sums and counts of the aggregator up to date as each row of a response is parsed, over the rows the
+	 * row filters keep. The aggregator is given the values of the columns being parsed, so can only use those.
+	 */
+	public void setRowAggregator(RowAggregator rowAggregator) {
+		this.rowAggregator = rowAggregator;
+	}
+
+	public RowAggregator getRowAggregator() {
+		return rowAggregator;
+	}
+
+	/**
+	 * Rank the rows the row filters keep as each is parsed, keeping only the top rows by the key set on the ranker
+	 * with setKeyColumns(). The ranker holds the row numbers of those rows in the parsed table.
+	 */
+	public void setRowRanker(TopKRows rowRanker) {
+		this.rowRanker = rowRanker;
+	}
+
+	public TopKRows getRowRanker() {
+		return rowRanker;
+	}
+
+	/**
+	 * Called as each column of a row ends, to keep its value if a row filter tests it and pass it to the aggregator
+	 * and ranker.
+	 *
+	 * @param value The value of the column, or null if not taken from the builder yet
+	 */
+	protected void collectRowColumn(String columnElementName, String value, StringBuilder elementContent) {
+		if (rowAggregator != null) {
+			rowAggregator.collect(columnElementName, (value != null) ? value : elementContent);
+		}
+		if (rowRanker != null) {
+			rowRanker.collect(columnElementName, (value != null) ? value : elementContent);
+		}
+		if (!rowFilters.isEmpty() && rowFilters.containsKey(columnElementName)) {
+			rowFilterValues.put(columnElementName, (value != null) ? value : getColumnValue(columnElementName, elementContent));
+		}
+		if (!requiredRowColumns.isEmpty() && requiredRowColumns.contains(columnElementName)) {
+			requiredRowColumnsSeen.add(columnElementName);
+		}
+	}
+
+	/**
+	 * Called as each row ends, to test the column values collected for it and add the row to the aggregator and ranker
+	 * if it passes. Resets them for the next row either way.
+	 *
+	 * @param row The row number the row has, or will have if it passes, in the parsed table
+	 * @return Whether the row passes all the row filters
+	 */
+	protected boolean completeRow(int row) {
+		boolean accepted = isRowAccepted();
+		if (rowAggregator != null) {
+			rowAggregator.endRow(accepted);
+		}
+		if (rowRanker != null) {
+			rowRanker.endRow(accepted, row);
+		}
+		return accepted;
+	}
+
+	private boolean isRowAccepted() {
+		if (rowFilters.isEmpty() && requiredRowColumns.isEmpty()) {
+			return true;
+		}
+		boolean accepted = requiredRowColumnsSeen.size() == requiredRowColumns.size();
+		if (accepted) {
+			for (Map.Entry<String, Predicate<String>> filter : rowFilters.entrySet()) {
+				String value = rowFilterValues.get(filter.getKey());
+				if (!filter.getValue().test((value != null) ? value : "")) {
+					accepted = false;
+					break;
+				}
+			}
+		}
+		rowFilterValues.clear();
+		requiredRowColumnsSeen.clear();
+		if (!accepted) {
+			rejectedRowCount++;
+		}
+		return accepted;
+	}
+
+	/**
+	 * @return How many rows of the last parsed response were dropped by the row filters
+	 */
+	public int getRejectedRowCount() {
+		return rejectedRowCount;
+	}
+	
+	public Engine getEngine() {
+		return engine;
+	}
+	
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * @return Whether the parser is skipping over the section started by the last element it was given.
+	 * If so, the STAX engine does not pass it the contents of that section, only its end element.
+	 */
+	protected boolean isSkippingSection() {
+		return false;
+	}
+	
+	/**
+	 * @return Whether the parser would keep any text passed to it at the moment, e.g. it is in a row of a table.
+	 * If not, the BYTES engine does not decode the text.
+	 */
+	protected boolean isCollectingText() {
+		return true;
+	}
+	
+	// The more-cookie is collected whatever the parser is doing
+	boolean isCollectingTextOrMoreCookie() {
+		return moreCookieFilter.inMoreCookie || isCollectingText();
+	}
+	
+	/**
+	 * @return The SEMP request to get the next page of the last parsed response, or null if it was the last page.
+	 */
+	public String getMoreCookie() {
+		return moreCookie;
+	}
+	
+	/**
+	 * @return How many records the parser is holding from the last parsed response, for the monitor statistics.
+	 */
+	public int getRowCount() {
+		return 0;
+	}
+	
+	// The more-cookie element in a paged response contains the full request to send for the next page.
+	// This handler captures that request and keeps the rest of the response flowing to the parser as usual,
+	// so the nested elements of the request are never mistaken for records.
+	private class MoreCookieFilter extends DefaultHandler {
+		
+		static final private String MORE_COOKIE_ELEMENT_NAME = "more-cookie";
+		
+		private StringBuilder sbMoreCookie = new StringBuilder();
+		private boolean inMoreCookie = false;
+		
+		@Override
+		public void startDocument() throws SAXException {
+			inMoreCookie = false;
+			SampleSEMPParser.this.startDocument();
+		}
+		
+		@Override
+		public void endDocument() throws SAXException {
+			SampleSEMPParser.this.endDocument();
+		}
+		
+		@Override
+		public void startElement(String uri, String localName, String qualifiedName, Attributes attributes) throws SAXException {
+			if (inMoreCookie) {
+				sbMoreCookie.append('<').append(qualifiedName);
+				for (int i = 0; i < attributes.getLength(); i++) {
+					sbMoreCookie.append(' ').append(attributes.getQName(i)).append("=\"");
+					appendEscaped(attributes.getValue(i));
+					sbMoreCookie.append('"');
+				}
+				sbMoreCookie.append('>');
+			}
+			else if (MORE_COOKIE_ELEMENT_NAME.equals(qualifiedName)) {
+				inMoreCookie = true;
+				sbMoreCookie.setLength(0);
+			}
+			else {
+				SampleSEMPParser.this.startElement(uri, localName, qualifiedName, attributes);
+			}
+		}
+		
+		@Override
+		public void endElement(String uri, String localName, String qualifiedName) throws SAXException {
+			if (inMoreCookie) {
+				if (MORE_COOKIE_ELEMENT_NAME.equals(qualifiedName)) {
+					inMoreCookie = false;
+					String cookie = sbMoreCookie.toString().trim();
+					moreCookie = cookie.isEmpty() ? null : cookie;
+				}
+				else {
+					sbMoreCookie.append("</").append(qualifiedName).append('>');
+				}
+			}
+			else {
+				SampleSEMPParser.this.endElement(uri, localName, qualifiedName);
+			}
+		}
+		
+		@Override
+		public void characters(char ch[], int start, int length) throws SAXException {
+			if (inMoreCookie) {
+				appendEscaped(new String(ch, start, length));
+			}
+			else {
+				SampleSEMPParser.this.characters(ch, start, length);
+			}
+		}
+		
+		private void appendEscaped(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				switch (c) {
+				case '<': sbMoreCookie.append("&lt;"); break;
+				case '>': sbMoreCookie.append("&gt;"); break;
+				case '&': sbMoreCookie.append("&amp;"); break;
+				case '"': sbMoreCookie.append("&quot;"); break;
+				default: sbMoreCookie.append(c);
+				}
+			}
+		}
+	}
 }
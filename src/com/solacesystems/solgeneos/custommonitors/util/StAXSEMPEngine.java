@@ -0,0 +1,95 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parses a SEMP response with a StAX pull parser (XMLStreamReader) instead of SAX, for the parsers configured with
+ * {@link SampleSEMPParser.Engine#STAX}.
+ *
+ * The parsers are written as SAX handlers, so the events pulled from the reader are passed on to them as the same
+ * startElement/endElement/characters calls SAX would make, and they produce the same tables either way. The difference
+ * is in the sections the parser ignores: as soon as a parser reports it is skipping the element just started, the whole
+ * subtree is read past without a single call to the parser, and only its end element is passed on.
+ */
+class StAXSEMPEngine {
+
+	// SEMP responses have no DTD and no namespaces, and the parsers expect the text of an element in as few chunks as possible
+	private static final XMLInputFactory inputFactory = createInputFactory();
+
+	// The parsers do not look at attributes
+	private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+
+	/**
+	 * @param respBodyStream The stream to read the SEMP response from
+	 * @param handler Where to pass the events on to, the parser itself or a filter in front of it
+	 * @param sempParser The parser, asked after each start element whether it is skipping that element's subtree
+	 */
+	static void parse(InputStream respBodyStream, DefaultHandler handler, SampleSEMPParser sempParser) throws Exception {
+
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(respBodyStream);
+		try {
+			handler.startDocument();
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String qualifiedName = getQualifiedName(reader);
+					handler.startElement("", "", qualifiedName, NO_ATTRIBUTES);
+					if (sempParser.isSkippingSection()) {
+						skipSubtree(reader);
+						handler.endElement("", "", qualifiedName);
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					handler.endElement("", "", getQualifiedName(reader));
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				default:
+					// Nothing in a SEMP response the parsers need
+				}
+			}
+			handler.endDocument();
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	// Read up to and including the end of the element just started
+	private static void skipSubtree(XMLStreamReader reader) throws Exception {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static String getQualifiedName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		return (prefix == null || prefix.isEmpty()) ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+	}
+}
@@ -0,0 +1,42 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.solacesystems.solgeneos.solgeneosagent.SolGeneosAgent;
+import com.solacesystems.solgeneos.solgeneosagent.monitor.View;
+
+/**
+ * Marks a monitor's dataviews as stale when a collect could not be completed.
+ *
+ * The table content of each view is left as it was last published, but the headlines are replaced with the
+ * monitor's global headlines and a "Data Status" headline that says why the data is stale. The next successful
+ * collect publishes its headlines as usual, which clears the stale status.
+ */
+public class StaleViews {
+
+	/**
+	 * @param viewMap The monitor's views
+	 * @param globalHeadlines The headlines the monitor puts on all its views
+	 * @param reason Why the collect did not complete
+	 */
+	public static void markStale(TreeMap<String, View> viewMap, Map<String, Object> globalHeadlines, String reason) {
+
+		LinkedHashMap<String, Object> headlines = new LinkedHashMap<String, Object>();
+		headlines.putAll(globalHeadlines);
+		headlines.put("Last Attempt Time", SolGeneosAgent.onlyInstance.getCurrentTimeString());
+		headlines.put("Data Status", "Stale - " + reason);
+
+    	if (viewMap != null && viewMap.size() > 0) {
+    		for (Iterator<String> viewIt = viewMap.keySet().iterator(); viewIt.hasNext();)
+    		{
+    			View view = viewMap.get(viewIt.next());
+    			if (view.isActive()) {
+    				view.setHeadlines(headlines);
+    			}
+    		}
+    	}
+	}
+}
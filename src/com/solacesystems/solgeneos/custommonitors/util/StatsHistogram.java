@@ -0,0 +1,87 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+/**
+ * A fixed size histogram of long values, cheap enough to update on every SEMP request.
+ *
+ * Values are counted into buckets that are a quarter of a power of two wide, so percentiles are reported to within
+ * 25% of the actual value whatever the range of values recorded, without keeping the values themselves.
+ */
+public class StatsHistogram {
+
+	// 4 buckets for the values 0 to 3, then 4 buckets for each power of two up to Long.MAX_VALUE
+	static final private int SUB_BUCKETS = 4;
+	static final private int BUCKET_COUNT = SUB_BUCKETS + (62 * SUB_BUCKETS);
+
+	private final long[] buckets = new long[BUCKET_COUNT];
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+	private long last = 0;
+
+	public synchronized void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets[bucketIndex(value)]++;
+		count++;
+		sum += value;
+		max = Math.max(max, value);
+		last = value;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized long getLast() {
+		return last;
+	}
+
+	public synchronized double getMean() {
+		return (count > 0) ? (double) sum / count : 0;
+	}
+
+	/**
+	 * @param percentile The percentile to get, e.g. 95 for the value 95% of the recorded values are at or below
+	 * @return The upper bound of the bucket the percentile falls in, but no more than the largest value recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets[i];
+			if (seen >= rank && buckets[i] > 0) {
+				return Math.min(bucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// Which power of two, and then which quarter of it
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+		return SUB_BUCKETS + ((exponent - 2) * SUB_BUCKETS) + subBucket;
+	}
+
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = ((index - SUB_BUCKETS) / SUB_BUCKETS) + 2;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - 2);
+		long width = 1L << (exponent - 2);
+		return lowerBound + width - 1;
+	}
+}
@@ -1,9 +1,12 @@
 package com.solacesystems.solgeneos.custommonitors.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -47,6 +50,13 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	private List<String> columnElementNamesLevel2;
 	private boolean parseLevel2 = false;
 	
+	// The element names above, hashed once so each SAX event looks up its element name in constant time rather than scanning the lists
+	private HashSet<String> columnElementNameSet;
+	private HashSet<String> ignoreElementNameSet;
+	private HashSet<String> columnElementNameSetLevel2;
+	// Any element name that is part of the level 2 element name starts a level 2 row, e.g. both "clients" and "client"
+	private HashSet<String> rowsElementNameSetLevel2;
+	
 	// Boolean to track where in the parsing things are
 	private boolean createRows = false;
 	// Boolean to track if column names determined already
@@ -70,11 +80,22 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	// Table content with the individual rows populated as the parsing progresses
 	private Vector<ArrayList<String>> tableContent;
 	private ArrayList<String> tableRow;
+	private static final int INITIAL_TABLE_CAPACITY = 10;
+	
+	// If the monitor has given the typed columns it wants, the level 1 rows are parsed into this table instead of the row lists above
+	private ColumnarTable columnarTable;
+	private int columnarRow;
+	private int columnarRowUIDColumn = -1;
 	
-	// Table and rows for the nested level 2
-	private LinkedHashMap<String, Object> tableMapLevel2 = new LinkedHashMap<String, Object>();
-	private Vector<ArrayList<String>> tableContentLevel2;
+	// Table and rows for the nested level 2, rebuilt for each response and only for the level 1 rows that are kept.
+	// The level 2 rows of all the level 1 rows are in the one list, each level 1 row's run of them starting where its number in the starts says.
+	private ArrayList<ArrayList<String>> tableContentLevel2 = new ArrayList<ArrayList<String>>();
+	private int[] rowStartsLevel2 = new int[INITIAL_TABLE_CAPACITY + 1];
+	private int parentRowCountLevel2 = 0;
+	private int rowStartLevel2 = 0;
 	private ArrayList<String> tableRowLevel2;
+	// The row number of each level 1 row kept, by its RowUID, to look up its level 2 rows
+	private LinkedHashMap<String, Integer> parentRowsLevel2 = new LinkedHashMap<String, Integer>();
 	
 	// Save the information in a hash map as another way to access the data. (Say if some merging of multiple queries is required.)
 	private HashMap<String, ArrayList<String>> responseData;
@@ -84,6 +105,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
     	this.rowsElementName = rowsElementName;
     	this.columnElementNames = columnElementNames;
     	this.ignoreElementNames = ignoreElementNames;
+    	hashElementNames();
     }
     
     public TargetedMultiRecordSEMPParser(String rowsElementName, List<String> columnElementNames, List<String> ignoreElementNames, 
@@ -95,6 +117,21 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
     	this.rowsElementNameLevel2 = rowsElementNameLevel2;
     	this.columnElementNamesLevel2 = columnElementNamesLevel2;
     	this.parseLevel2 = true;
+    	hashElementNames();
+    }
+    
+    private void hashElementNames() {
+    	columnElementNameSet = new HashSet<String>(columnElementNames);
+    	ignoreElementNameSet = new HashSet<String>(ignoreElementNames);
+    	if (parseLevel2) {
+    		columnElementNameSetLevel2 = new HashSet<String>(columnElementNamesLevel2);
+    		rowsElementNameSetLevel2 = new HashSet<String>();
+    		for (int start = 0; start < rowsElementNameLevel2.length(); start++) {
+    			for (int end = start + 1; end <= rowsElementNameLevel2.length(); end++) {
+    				rowsElementNameSetLevel2.add(rowsElementNameLevel2.substring(start, end));
+    			}
+    		}
+    	}
     }
     
 	@Override
@@ -114,11 +151,20 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
     	
     	currentSEMPDepth = 0;
     	
-    	// Reinitialise the tableContent object
-    	tableContent = new Vector<ArrayList<String>>();
+    	// Reinitialise the tableContent object, sized for as many rows as the last response had
+    	tableContent = new Vector<ArrayList<String>>(Math.max(INITIAL_TABLE_CAPACITY, (tableContent == null) ? 0 : tableContent.size()));
+    	if (columnarTable != null) {
+    		columnarTable.clear();
+    	}
     	
     	// Initialise the data hashmap
     	responseData = new LinkedHashMap<String, ArrayList<String>>();
+    	
+    	// Nothing kept of the level 2 rows of the last response, for level 1 rows that might no longer exist
+    	tableContentLevel2.clear();
+    	parentRowCountLevel2 = 0;
+    	rowStartLevel2 = 0;
+    	parentRowsLevel2.clear();
 	}
 	
 	// Useful SAX Parser Ref: https://www.journaldev.com/1198/java-sax-parser-example
@@ -146,20 +192,25 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 			{
 				// OK now the rows can start being saved for each time this element appears
 				createRows = true; // This will be switched to false each time we leave the section of interest in the XML
-				tableRow = new ArrayList<String>();
+				if (columnarTable != null) {
+					columnarRow = columnarTable.addRow();
+				}
+				else {
+					tableRow = new ArrayList<String>(columnElementNames.size() + 1);
+				}
 				
 				// Clear the UID generation components
 				rowUniqueIdName = "";
 		    	rowUniqueIdVpn = "";
 		    	
-		    	// At the beginning of a new L1 record, reset the table to hold the L2 records here.
+		    	// At the beginning of a new L1 record, its L2 records start after those of the rows before it.
 		    	if (this.parseLevel2) {
-					tableContentLevel2 = new Vector<ArrayList<String>>();
+					rowStartLevel2 = tableContentLevel2.size();
 		    	}
 				
 			}	    	
 			// Is this now the element for the skip section rows?
-			else if (ignoreElementNames.contains(qualifiedName))
+			else if (ignoreElementNameSet.contains(qualifiedName))
 			{	
 				skipSection = true; // Will be flipped to false when the end tag reached
 			}
@@ -170,7 +221,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 				{
 					
 					// Check if the tag is the start of nested level 2?
-					if (parseLevel2 && rowsElementNameLevel2.contains(qualifiedName)) {
+					if (parseLevel2 && rowsElementNameSetLevel2.contains(qualifiedName)) {
 						createL2Rows = true;
 						tableRowLevel2 = new ArrayList<String>();
 					}
@@ -179,7 +230,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 					// Test now to see if the columns are for the Level2 or not then act accordingly.
 					if (createL2Rows) {
 						// Now check if it is a column that we want from Level 2?
-						if (columnElementNamesLevel2.contains(qualifiedName))
+						if (columnElementNameSetLevel2.contains(qualifiedName))
 						{
 							// Then this new element start is a sub-element that should be treated as a new column entry
 							sbElementContent.delete(0, sbElementContent.length());
@@ -193,7 +244,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 					else {
 					
 						// Now check if it is a column that we want from Level 1?
-						if (columnElementNames.contains(qualifiedName))
+						if (columnElementNameSet.contains(qualifiedName))
 						{
 							// Then this new element start is a sub-element that should be treated as a new column entry
 							sbElementContent.delete(0, sbElementContent.length());
@@ -238,21 +289,40 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	    		
 	    		// Add the UID to the start of the row...
 	    		rowUID = this.rowUniqueIdName.trim() + rowUIDDelim + this.rowUniqueIdVpn.trim();
-	    		tableRow.add(0, rowUID);
-	    		
-	    		// Add the new row as it currently stands to the table
-	    		tableContent.add(tableRow);
-	    		
-	    		// Add the row to the HashMap version too, keyed by the VPN name
-	    		responseData.put(rowUID, tableRow);
+	    		boolean rowAccepted = completeRow((columnarTable != null) ? columnarRow : tableContent.size());
+	    		if (!rowAccepted) {
+	    			// Dropped by a row filter, so goes no further. (Only the typed table already holds it, so take it back off.)
+	    			if (columnarTable != null) {
+	    				columnarTable.removeLastRow();
+	    			}
+	    		}
+	    		else if (columnarTable != null) {
+	    			// The row is complete in the typed table already, just needs its UID
+	    			if (columnarRowUIDColumn >= 0) {
+	    				columnarTable.setValue(columnarRowUIDColumn, columnarRow, rowUID);
+	    			}
+	    		}
+	    		else {
+		    		tableRow.add(0, rowUID);
+		    		
+		    		// Add the new row as it currently stands to the table
+		    		tableContent.add(tableRow);
+		    		
+		    		// Add the row to the HashMap version too, keyed by the VPN name
+		    		responseData.put(rowUID, tableRow);
+	    		}
 	    		
 		    	// At the end of a new L1 record. If L2 table was being created, stop now
 		    	if (parseLevel2) {
 		    		createL2Rows = false;
 	    			
-	    			// Add the sub-table to the map with RowUID as the key
-					tableMapLevel2.put(rowUID, tableContentLevel2);
-					// tableContentLevel2 will be reinitialised on next L2 start
+	    			// Mark where the row's L2 records end, or if the row was dropped, drop them too
+		    		if (rowAccepted) {
+		    			parentRowsLevel2.put(rowUID, addParentRowLevel2(rowStartLevel2, tableContentLevel2.size()));
+		    		}
+		    		else {
+		    			tableContentLevel2.subList(rowStartLevel2, tableContentLevel2.size()).clear();
+		    		}
 		    	}
 
 	    		
@@ -274,7 +344,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	    			
 	    		}
 	    	} 
-	    	else if (ignoreElementNames.contains(qualifiedName))
+	    	else if (ignoreElementNameSet.contains(qualifiedName))
 	    	{
 	    		// End of a section we didn't care for but it's over now so stop skipping.
 	    		skipSection = false;
@@ -282,7 +352,7 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	    	else if (createRows && !skipSection)
 	    	{	
 	    		// Check if the tag is the end of nested level 2?
-				if (parseLevel2 && rowsElementNameLevel2.contains(qualifiedName)) {
+				if (parseLevel2 && rowsElementNameSetLevel2.contains(qualifiedName)) {
 					// Do not treat any further elements found by startElement as being columns
 					createL2Rows = false;
 					
@@ -301,33 +371,56 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 				
 				if (createL2Rows) {
 					// Now check if it is a column that we want from Level 2?
-					if (columnElementNamesLevel2.contains(qualifiedName))
+					if (columnElementNameSetLevel2.contains(qualifiedName))
 					{
-						tableRowLevel2.add(sbElementContent.toString());	// String builder will be cleared the next time an element of interest starts
+						tableRowLevel2.add(getColumnValue(qualifiedName, sbElementContent));	// String builder will be cleared the next time an element of interest starts
 					}		    		
 				}
 				else {
 					// Now check if it is a column that we want?
-					if (columnElementNames.contains(qualifiedName))
+					String value = null;
+					if (columnElementNameSet.contains(qualifiedName))
 					{
-						tableRow.add(sbElementContent.toString());	// String builder will be cleared the next time an element of interest starts
+						if (columnarTable != null) {
+							// Parsed to the column's type straight from the builder, if it is one of the typed columns at all
+							int column = columnarTable.getSchema().getColumnIndex(qualifiedName);
+							if (column >= 0) {
+								columnarTable.setValue(column, columnarRow, sbElementContent);
+							}
+						}
+						else {
+							value = getColumnValue(qualifiedName, sbElementContent);
+							tableRow.add(value);	// String builder will be cleared the next time an element of interest starts
+						}
+						collectRowColumn(qualifiedName, value, sbElementContent);
 					}
 		    		
 		    		// Collect the components needed to build up the UID for the row. 
 					// Not in the above if-statement as theoretically could make up UID with other fields not used in final columns display. Like other natural unique IDs.
+					// (The same String as the column value, if it was added as a column.)
 		    		if (qualifiedName.equalsIgnoreCase(sempNameTag)) 
 		    		{
-		    			this.rowUniqueIdName = sbElementContent.toString();
+		    			this.rowUniqueIdName = (value != null) ? value : getColumnValue(qualifiedName, sbElementContent);
 		    		}
 		    		if (qualifiedName.equalsIgnoreCase(sempVpnTag)) 
 		    		{
-		    			this.rowUniqueIdVpn = sbElementContent.toString();
+		    			this.rowUniqueIdVpn = (value != null) ? value : getColumnValue(qualifiedName, sbElementContent);
 		    		}
 				}
 	    	}
     	}
     }
 
+    @Override
+    protected boolean isSkippingSection() {
+    	return skipSection;
+    }
+
+    @Override
+    protected boolean isCollectingText() {
+    	return createRows && !skipSection;
+    }
+
     // characters() method is called when character data is found by SAXParser inside an element. 
     // Note that SAX parser may divide the data into multiple chunks and call characters() method multiple times 
     // Thats why we are using StringBuilder to keep this data for each element of interest using append() method.
@@ -341,11 +434,101 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
     	}
     }
        
+	@Override
+	protected SampleSEMPParser newChunkParser() throws Exception {
+		TargetedMultiRecordSEMPParser chunkParser = parseLevel2
+				? new TargetedMultiRecordSEMPParser(rowsElementName, columnElementNames, ignoreElementNames, rowsElementNameLevel2, columnElementNamesLevel2)
+				: new TargetedMultiRecordSEMPParser(rowsElementName, columnElementNames, ignoreElementNames);
+		if (columnarTable != null) {
+			chunkParser.setColumnSchema(columnarTable.getSchema());
+		}
+		return chunkParser;
+	}
+
+	@Override
+	protected String getRowsElementName() {
+		return rowsElementName;
+	}
+
+	@Override
+	protected int getRowsMinimumDepth() {
+		return MINIMUM_SEMP_DEPTH;
+	}
+
+	@Override
+	protected void prepareChunkParser(SampleSEMPParser chunkParser) {
+		TargetedMultiRecordSEMPParser targetedChunkParser = (TargetedMultiRecordSEMPParser) chunkParser;
+		targetedChunkParser.sempVpnTag = sempVpnTag;
+		targetedChunkParser.sempNameTag = sempNameTag;
+		targetedChunkParser.rowUIDDelim = rowUIDDelim;
+		// Starts from the column names found so far, so only takes others the same as this parser would have
+		targetedChunkParser.columnNames = new ArrayList<String>(columnNames);
+		targetedChunkParser.columnNamesKnown = columnNamesKnown;
+		targetedChunkParser.columnNamesLevel2 = new ArrayList<String>(columnNamesLevel2);
+		targetedChunkParser.columnNamesKnownLevel2 = columnNamesKnownLevel2;
+	}
+
+	@Override
+	protected void appendChunkRows(SampleSEMPParser chunkParser) {
+		TargetedMultiRecordSEMPParser targetedChunkParser = (TargetedMultiRecordSEMPParser) chunkParser;
+		if (columnarTable != null) {
+			columnarTable.appendRows(targetedChunkParser.columnarTable);
+		}
+		else {
+			tableContent.addAll(targetedChunkParser.tableContent);
+			responseData.putAll(targetedChunkParser.responseData);
+		}
+		
+		// The column names of the first row with the most columns, as the rows of the part came after those so far
+		if (!columnNamesKnown || targetedChunkParser.columnNames.size() > columnNames.size()) {
+			columnNames = targetedChunkParser.columnNames;
+			columnNamesKnown = targetedChunkParser.columnNamesKnown;
+		}
+		if (!columnNamesKnownLevel2) {
+			columnNamesLevel2 = targetedChunkParser.columnNamesLevel2;
+			columnNamesKnownLevel2 = targetedChunkParser.columnNamesKnownLevel2;
+		}
+		
+		if (parseLevel2) {
+			// The L2 records and parent rows of the part, moved along by those before them
+			int recordOffset = tableContentLevel2.size();
+			int parentRowOffset = parentRowCountLevel2;
+			tableContentLevel2.addAll(targetedChunkParser.tableContentLevel2);
+			for (int parentRow = 0; parentRow < targetedChunkParser.parentRowCountLevel2; parentRow++) {
+				addParentRowLevel2(targetedChunkParser.rowStartsLevel2[parentRow] + recordOffset,
+						targetedChunkParser.rowStartsLevel2[parentRow + 1] + recordOffset);
+			}
+			for (Map.Entry<String, Integer> parentRow : targetedChunkParser.parentRowsLevel2.entrySet()) {
+				parentRowsLevel2.put(parentRow.getKey(), parentRow.getValue() + parentRowOffset);
+			}
+		}
+	}
+       
 	public Vector<ArrayList<String>> getTableContent() {
 		// Return the table without the column names. (To facilitate further processing of the table contents before publishing it.)
 		return tableContent;
 	}
 
+	@Override
+	public int getRowCount() {
+		return (columnarTable != null) ? columnarTable.getRowCount() : tableContent.size();
+	}
+	
+	/**
+	 * Parse the level 1 rows into a typed table from now on, rather than into the rows of getTableContent() and getData().
+	 * 
+	 * @param schema The columns to keep, in the order they are to be published, and their types
+	 */
+	public void setColumnSchema(ColumnSchema schema) {
+		columnarTable = new ColumnarTable(schema);
+		columnarRowUIDColumn = schema.getColumnIndex(rowUIDName);
+	}
+	
+	public ColumnarTable getColumnarTable() {
+		// Return the typed table, if a column schema was set
+		return columnarTable;
+	}
+
 	public List<String> getColumnNames() {
 		// Return the column names so it can added before publishing the content
 		return this.columnNames;
@@ -364,10 +547,30 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 		return tempTableContent;
 	}
 	
-	@SuppressWarnings("unchecked")
+	// The level 1 row just kept is the next row number, with its L2 records from start up to end
+	private int addParentRowLevel2(int start, int end) {
+		int parentRow = parentRowCountLevel2++;
+		if (parentRowCountLevel2 + 1 > rowStartsLevel2.length) {
+			rowStartsLevel2 = Arrays.copyOf(rowStartsLevel2, rowStartsLevel2.length * 2);
+		}
+		rowStartsLevel2[parentRow] = start;
+		rowStartsLevel2[parentRow + 1] = end;
+		return parentRow;
+	}
+	
 	public Vector<ArrayList<String>> getTableContentLevel2(String rowUID) {
 		// Return the table without the column names. (To facilitate further processing of the table contents before publishing it.)
-		return (Vector<ArrayList<String>>) tableMapLevel2.get(rowUID);
+		// Empty if the last response had no such row, e.g. when it was sent at the same time as another query that did.
+		Integer parentRow = parentRowsLevel2.get(rowUID);
+		return (parentRow == null) ? new Vector<ArrayList<String>>() : getTableContentLevel2(parentRow);
+	}
+	
+	/**
+	 * @param row The row number of the level 1 row, in the table content or the typed table
+	 * @return The level 2 rows of the level 1 row, without the column names
+	 */
+	public Vector<ArrayList<String>> getTableContentLevel2(int row) {
+		return new Vector<ArrayList<String>>(tableContentLevel2.subList(rowStartsLevel2[row], rowStartsLevel2[row + 1]));
 	}
 
 	public List<String> getColumnNamesLevel2() {
@@ -384,7 +587,12 @@ public class TargetedMultiRecordSEMPParser extends SampleSEMPParser {
 	}
 	
 	public LinkedHashMap<String, Object> getTableMapLevel2 () {
-		return this.tableMapLevel2;
+		// Return the level 2 rows of each level 1 row of the last response, keyed by RowUID
+		LinkedHashMap<String, Object> tableMapLevel2 = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, Integer> parentRow : parentRowsLevel2.entrySet()) {
+			tableMapLevel2.put(parentRow.getKey(), getTableContentLevel2(parentRow.getValue()));
+		}
+		return tableMapLevel2;
 	}
 	
 	public String getRowUniqueIdName() {
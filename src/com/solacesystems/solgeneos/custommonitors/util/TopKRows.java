@@ -0,0 +1,246 @@
+package com.solacesystems.solgeneos.custommonitors.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The rows of a table that rank highest (or lowest) by a number worked out once for each row, e.g. the rows that make
+ * it into a dataview limited to its max rows.
+ *
+ * The rows are kept in a heap bounded at the limit, so however many rows are offered, only the limit are held and
+ * each offer costs at most log(limit). Rows with the same key come out in the order they were offered, the same as
+ * a stable sort of all the rows and then cutting it at the limit.
+ *
+ * Rows can be offered directly, or set on a parser with setRowRanker() along with the columns the key is worked out
+ * from, so that each row is ranked as it is parsed. Either way it is the row number in the table that is kept.
+ */
+public class TopKRows {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final boolean highestFirst;
+	private int limit;
+
+	// The heap, with the row ranking last at the root, as three parallel arrays. Grown as rows are offered, up to the limit.
+	private double[] keys;
+	private long[] offerOrder;
+	private int[] rows;
+	private int size = 0;
+	private long offerCount = 0;
+
+	// If ranking as the rows are parsed, the columns of the key, their values in the row being parsed, and how the key is worked out from them
+	private final HashMap<String, Integer> keyColumnIndexes = new HashMap<String, Integer>();
+	private double[] rowKeyColumns = new double[0];
+	private ToDoubleFunction<double[]> keyFunction = null;
+
+	/**
+	 * @param limit How many rows to keep
+	 * @param highestFirst Whether the rows with the highest keys rank first, rather than the lowest
+	 */
+	public TopKRows(int limit, boolean highestFirst) {
+		this.highestFirst = highestFirst;
+		setLimit(limit);
+	}
+
+	/**
+	 * Change how many rows to keep, e.g. once the max rows of the monitor is known. Empties the rows kept so far.
+	 */
+	public void setLimit(int limit) {
+		this.limit = Math.max(limit, 0);
+		int capacity = Math.min(this.limit, INITIAL_CAPACITY);
+		keys = new double[capacity];
+		offerOrder = new long[capacity];
+		rows = new int[capacity];
+		clear();
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Rank the rows as they are parsed, by a key worked out from the values of some of their columns.
+	 *
+	 * @param columnElementNames The element names of the columns the key needs, all read as numbers
+	 * @param keyFunction Works out the key from the values of those columns, in the same order, a column the row does
+	 * not have being 0. A key of NaN leaves the row out of the ranking.
+	 */
+	public void setKeyColumns(List<String> columnElementNames, ToDoubleFunction<double[]> keyFunction) {
+		keyColumnIndexes.clear();
+		for (String columnElementName : columnElementNames) {
+			keyColumnIndexes.put(columnElementName, keyColumnIndexes.size());
+		}
+		rowKeyColumns = new double[columnElementNames.size()];
+		this.keyFunction = keyFunction;
+	}
+
+	/**
+	 * Forget the rows offered so far, for the next response. Done by the parser when it starts parsing a response.
+	 */
+	public void clear() {
+		size = 0;
+		offerCount = 0;
+		Arrays.fill(rowKeyColumns, 0);
+	}
+
+	/**
+	 * Offer a row, keeping it only if it ranks within the limit of those offered so far.
+	 *
+	 * @param row The row number in the table
+	 * @param key What the row is ranked by, NaN to leave it out
+	 */
+	public void offer(int row, double key) {
+		if (Double.isNaN(key)) {
+			return;
+		}
+		offer(row, key, offerCount++);
+	}
+
+	private void offer(int row, double key, long order) {
+		if (limit == 0) {
+			return;
+		}
+		if (size < limit) {
+			if (size == keys.length) {
+				int capacity = (int) Math.min((long) limit, 2L * size);
+				keys = Arrays.copyOf(keys, capacity);
+				offerOrder = Arrays.copyOf(offerOrder, capacity);
+				rows = Arrays.copyOf(rows, capacity);
+			}
+			keys[size] = key;
+			offerOrder[size] = order;
+			rows[size] = row;
+			siftUp(size++);
+		}
+		else if (ranksAfter(keys[0], offerOrder[0], key, order)) {
+			// Ranks ahead of the last of those kept, so takes its place
+			keys[0] = key;
+			offerOrder[0] = order;
+			rows[0] = row;
+			siftDown(0, size);
+		}
+	}
+
+	/**
+	 * @return A new ranker with the same limit and key, for a parser parsing one part of a response
+	 */
+	TopKRows newEmptyCopy() {
+		TopKRows copy = new TopKRows(limit, highestFirst);
+		copy.keyColumnIndexes.putAll(keyColumnIndexes);
+		copy.rowKeyColumns = new double[rowKeyColumns.length];
+		copy.keyFunction = keyFunction;
+		return copy;
+	}
+
+	/**
+	 * Offer the rows another ranker kept, e.g. of one part of a response parsed in parallel, as if they had been
+	 * offered after all the rows offered to this one so far.
+	 *
+	 * @param rowOffset What to add to the row numbers of the other ranker, to make them row numbers of this one's table
+	 */
+	void addRows(TopKRows other, int rowOffset) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.rows[i] + rowOffset, other.keys[i], offerCount + other.offerOrder[i]);
+		}
+		offerCount += other.offerCount;
+	}
+
+	/**
+	 * Called by the parser as each column of a row ends.
+	 */
+	void collect(String columnElementName, CharSequence text) {
+		Integer keyColumn = keyColumnIndexes.get(columnElementName);
+		if (keyColumn != null) {
+			rowKeyColumns[keyColumn] = SEMPNumbers.parseDouble(text);
+		}
+	}
+
+	/**
+	 * Called by the parser as each row ends, with whether the row is kept and if so its row number in the table.
+	 */
+	void endRow(boolean accepted, int row) {
+		if (accepted && keyFunction != null) {
+			offer(row, keyFunction.applyAsDouble(rowKeyColumns));
+		}
+		Arrays.fill(rowKeyColumns, 0);
+	}
+
+	/**
+	 * @return How many rows are kept, at most the limit
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The row numbers of the rows kept, first ranked first
+	 */
+	public int[] getRows() {
+		// Heap sort in place, each row ranking last in turn going to the end, so first ranked first
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		int[] rankedRows = Arrays.copyOf(rows, size);
+		// Reversed, last ranked first, the rows are a heap again for any further offers
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			swap(i, j);
+		}
+		return rankedRows;
+	}
+
+	// Whether the first row ranks after the second, ties going to the one offered first
+	private boolean ranksAfter(double key1, long order1, double key2, long order2) {
+		int compare = Double.compare(key1, key2);
+		if (compare == 0) {
+			return order1 > order2;
+		}
+		return highestFirst ? compare < 0 : compare > 0;
+	}
+
+	private boolean ranksAfter(int i, int j) {
+		return ranksAfter(keys[i], offerOrder[i], keys[j], offerOrder[j]);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!ranksAfter(i, parent)) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end) {
+				return;
+			}
+			if (child + 1 < end && ranksAfter(child + 1, child)) {
+				child++;
+			}
+			if (!ranksAfter(child, i)) {
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		long order = offerOrder[i];
+		offerOrder[i] = offerOrder[j];
+		offerOrder[j] = order;
+		int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+	}
+}
@@ -2,6 +2,7 @@ package com.solacesystems.solgeneos.custommonitors.util;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Vector;
@@ -31,6 +32,10 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 	// What is the name of the tag containing the sub-elements to skip?
 	private List<String> ignoreElementNames;
 	
+	// The element names above, hashed once so each SAX event looks up its element name in constant time rather than scanning the lists
+	private HashSet<String> columnElementNameSet;
+	private HashSet<String> ignoreElementNameSet;
+	
 	// Boolean to track where in the parsing things are
 	private boolean createRows = false;
 	// Boolean to track if column names determined already
@@ -49,6 +54,7 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 	// Table content with the individual rows populated as the parsing progresses
 	private Vector<Object> tableContent;
 	private ArrayList<String> tableRow;
+	private static final int INITIAL_TABLE_CAPACITY = 10;
 	
 	// Save the information in a hash map as another way to access the data. (Say if some merging of multiple queries is required.)
 	private HashMap<String, ArrayList<String>> responseData;
@@ -59,6 +65,8 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
     	this.rowsElementName = rowsElementName;
     	this.columnElementNames = columnElementNames;
     	this.ignoreElementNames = ignoreElementNames;
+    	this.columnElementNameSet = new HashSet<String>(columnElementNames);
+    	this.ignoreElementNameSet = new HashSet<String>(ignoreElementNames);
     }
     
 	@Override
@@ -77,8 +85,8 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
     	
     	currentSEMPDepth = 0;
     	
-    	// Initialise the tableContent object
-    	tableContent = new Vector<Object>();
+    	// Initialise the tableContent object, sized for as many rows as the last response had
+    	tableContent = new Vector<Object>(Math.max(INITIAL_TABLE_CAPACITY, (tableContent == null) ? 0 : tableContent.size()));
     	
     	// Initialise the data hashmap
     	responseData = new LinkedHashMap<String, ArrayList<String>>();
@@ -108,13 +116,13 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 			{
 				// OK now the rows can start being saved for each time this element appears
 				createRows = true; // This will be switched to false each time we leave the section of interest in the XML
-				tableRow = new ArrayList<String>();
+				tableRow = new ArrayList<String>(columnElementNames.size());
 				
 		    	vpnName = "";
 				
 			}	    	
 			// Is this now the element for the skip section rows?
-			else if (ignoreElementNames.contains(qualifiedName))
+			else if (ignoreElementNameSet.contains(qualifiedName))
 			{	
 				skipSection = true; // Will be flipped to false when the end tag reached
 			}
@@ -124,7 +132,7 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 				if (createRows && !skipSection) 
 				{
 					// Now check if it is a column that we want?
-					if (columnElementNames.contains(qualifiedName))
+					if (columnElementNameSet.contains(qualifiedName))
 					{
 						// Then this new element start is a sub-element that should be treated as a new column entry
 						sbElementContent.delete(0, sbElementContent.length());
@@ -159,18 +167,20 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 	    		// Do not treat any further elements found by startElement as being columns
 	    		createRows = false;
 	    		
-	    		// Add the new row as it currently stands to the table
-	    		tableContent.add(tableRow);
-	    		
-	    		// Add the row to the HashMap version too, keyed by the VPN name
-	    		responseData.put(vpnName, tableRow);
+	    		// Add the new row as it currently stands to the table, unless a row filter drops it
+	    		if (completeRow(tableContent.size())) {
+		    		tableContent.add(tableRow);
+		    		
+		    		// Add the row to the HashMap version too, keyed by the VPN name
+		    		responseData.put(vpnName, tableRow);
+	    		}
 	    		
 	    		if (!columnNamesKnown){
 	    			// One row fully processed so column names are known now.
 	        		columnNamesKnown = true;
 	    		}
 	    	} 
-	    	else if (ignoreElementNames.contains(qualifiedName))
+	    	else if (ignoreElementNameSet.contains(qualifiedName))
 	    	{
 	    		// End of a section we didn't care for but it's over now so stop skipping.
 	    		skipSection = false;
@@ -179,20 +189,33 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
 	    	{	
 	    		
 				// Now check if it is a column that we want?
-				if (columnElementNames.contains(qualifiedName))
+	    		String value = null;
+				if (columnElementNameSet.contains(qualifiedName))
 				{
-					tableRow.add(sbElementContent.toString());	// String builder will be cleared the next time an element of interest starts
+					value = getColumnValue(qualifiedName, sbElementContent);
+					tableRow.add(value);	// String builder will be cleared the next time an element of interest starts
+					collectRowColumn(qualifiedName, value, sbElementContent);
 				}
 	    		
-	    		// Collect the VPN name so it can be a key to the hash map 
+	    		// Collect the VPN name so it can be a key to the hash map. (The same String as the column value, if it is a column.)
 	    		if (qualifiedName.equalsIgnoreCase(SEMP_NAME_TAG)) 
 	    		{
-	    			vpnName = sbElementContent.toString();
+	    			vpnName = (value != null) ? value : getColumnValue(qualifiedName, sbElementContent);
 	    		}
 	    	}
     	}
     }
 
+    @Override
+    protected boolean isSkippingSection() {
+    	return skipSection;
+    }
+
+    @Override
+    protected boolean isCollectingText() {
+    	return createRows && !skipSection;
+    }
+
     // characters() method is called when character data is found by SAXParser inside an element. 
     // Note that SAX parser may divide the data into multiple chunks and call characters() method multiple times 
     // Thats why we are using StringBuilder to keep this data for each element of interest using append() method.
@@ -206,11 +229,50 @@ public class VPNRecordSEMPParser extends SampleSEMPParser {
     	}
     }
        
+	@Override
+	protected SampleSEMPParser newChunkParser() throws Exception {
+		return new VPNRecordSEMPParser(rowsElementName, columnElementNames, ignoreElementNames);
+	}
+
+	@Override
+	protected String getRowsElementName() {
+		return rowsElementName;
+	}
+
+	@Override
+	protected int getRowsMinimumDepth() {
+		return MINIMUM_SEMP_DEPTH;
+	}
+
+	@Override
+	protected void prepareChunkParser(SampleSEMPParser chunkParser) {
+		// Finds the column names only if this parser has not yet, the same as it would have
+		VPNRecordSEMPParser vpnChunkParser = (VPNRecordSEMPParser) chunkParser;
+		vpnChunkParser.columnNames = new ArrayList<String>(columnNames);
+		vpnChunkParser.columnNamesKnown = columnNamesKnown;
+	}
+
+	@Override
+	protected void appendChunkRows(SampleSEMPParser chunkParser) {
+		VPNRecordSEMPParser vpnChunkParser = (VPNRecordSEMPParser) chunkParser;
+		tableContent.addAll(vpnChunkParser.tableContent);
+		responseData.putAll(vpnChunkParser.responseData);
+		if (!columnNamesKnown && vpnChunkParser.columnNamesKnown) {
+			columnNames = vpnChunkParser.columnNames;
+			columnNamesKnown = true;
+		}
+	}
+       
 	public Vector<Object> getTableContent() {
 		// Return the table without the column names. (To facilitate further processing of the table contents before publishing it.)
 		return tableContent;
 	}
 
+	@Override
+	public int getRowCount() {
+		return tableContent.size();
+	}
+
 	public List<String> getColumnNames() {
 		// Return the column names so it can added before publishing the content
 		return this.columnNames;